@@ -0,0 +1,81 @@
+package com.maibot.multichat;
+
+import android.app.Instrumentation;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * ChatAdapter 单次 onBindViewHolder 的耗时，按用户、Bot、系统三种消息分别测量
+ *
+ * 渲染状态已在提交列表时预计算，与实际滚动时的情况一致。
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChatAdapterBindBenchmark {
+    private static final int USER = 0;
+    private static final int BOT = 1;
+    private static final int SYSTEM = 2;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private ChatAdapter adapter;
+    private FrameLayout parent;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        List<ChatMessage> messages = Arrays.asList(
+                new ChatMessage("今天有什么好玩的事情吗？", "用户", true, "#2196F3"),
+                new ChatMessage("我刚看完一部电影，结局真的太意外了，你们猜猜主角最后怎么样了～", "麦麦", false, "#FF6B9D"),
+                new ChatMessage("小智 加入了群聊", ChatMessage.SYSTEM_SENDER, false, "#999999"));
+
+        CountDownLatch committed = new CountDownLatch(1);
+        instrumentation.runOnMainSync(() -> {
+            parent = new FrameLayout(new ContextThemeWrapper(
+                    ApplicationProvider.getApplicationContext(), R.style.Theme_MultiAIChat));
+            adapter = new ChatAdapter();
+            adapter.submitList(messages, committed::countDown);
+        });
+        committed.await(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void bindUserMessage() {
+        measureBind(USER);
+    }
+
+    @Test
+    public void bindBotMessage() {
+        measureBind(BOT);
+    }
+
+    @Test
+    public void bindSystemMessage() {
+        measureBind(SYSTEM);
+    }
+
+    private void measureBind(int position) {
+        // 视图只能在主线程上操作
+        instrumentation.runOnMainSync(() -> {
+            ChatAdapter.MessageViewHolder holder =
+                    adapter.onCreateViewHolder(parent, adapter.getItemViewType(position));
+            BenchmarkState state = benchmarkRule.getState();
+            while (state.keepRunning()) {
+                adapter.onBindViewHolder(holder, position);
+            }
+        });
+    }
+}
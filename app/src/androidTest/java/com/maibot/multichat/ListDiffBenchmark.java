@@ -0,0 +1,135 @@
+package com.maibot.multichat;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.recyclerview.widget.DiffUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * 用 ChatAdapter 的 DIFF_CALLBACK 计算两份消息快照之间的差异
+ *
+ * 300 为常驻窗口的上限，5000 对应不做窗口裁剪时的长历史。
+ */
+@RunWith(Parameterized.class)
+public class ListDiffBenchmark {
+    private static final String[] NAMES = {"麦麦", "小智", "诗诗", "阿乐", "小月"};
+    private static final String[] COLORS = {"#FF6B9D", "#4A90E2", "#9B59B6", "#F39C12", "#E91E63"};
+    private static final int PAGE_SIZE = 50;
+
+    @Parameterized.Parameters(name = "history={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{300}, {5000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int historySize;
+    private List<ChatMessage> history;
+
+    public ListDiffBenchmark(int historySize) {
+        this.historySize = historySize;
+    }
+
+    @Before
+    public void setUp() {
+        history = new ArrayList<>(historySize);
+        long timestamp = System.currentTimeMillis() - historySize * 1000L;
+        for (int i = 0; i < historySize; i++) {
+            history.add(newMessage(i, timestamp + i * 1000L));
+        }
+    }
+
+    /**
+     * 新消息追加到末尾（最常见的情况）
+     */
+    @Test
+    public void appendOne() {
+        List<ChatMessage> updated = new ArrayList<>(history);
+        updated.add(newMessage(historySize, System.currentTimeMillis()));
+        measureDiff(history, updated);
+    }
+
+    /**
+     * 流式回复结束，最后一条消息被替换为最终内容
+     */
+    @Test
+    public void replaceLast() {
+        List<ChatMessage> updated = new ArrayList<>(history);
+        ChatMessage last = updated.get(updated.size() - 1);
+        updated.set(updated.size() - 1, new ChatMessage(last.getMessageId(), last.getContent() + "（完）",
+                last.getSenderName(), last.isUser(), last.getColor(), last.getTimestamp()));
+        measureDiff(history, updated);
+    }
+
+    /**
+     * 向上翻页：头部插入一页更早的消息，同时从尾部裁掉一页
+     */
+    @Test
+    public void prependPageAndEvict() {
+        List<ChatMessage> updated = new ArrayList<>(historySize);
+        long timestamp = history.get(0).getTimestamp() - PAGE_SIZE * 1000L;
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            updated.add(newMessage(-PAGE_SIZE + i, timestamp + i * 1000L));
+        }
+        updated.addAll(history.subList(0, historySize - PAGE_SIZE));
+        measureDiff(history, updated);
+    }
+
+    private void measureDiff(List<ChatMessage> oldList, List<ChatMessage> newList) {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            DiffUtil.calculateDiff(new SnapshotCallback(oldList, newList));
+        }
+    }
+
+    private static ChatMessage newMessage(int index, long timestamp) {
+        if (index % 3 == 0) {
+            return new ChatMessage("我们来聊聊周末的安排吧 #" + index, "用户", true, "#2196F3", timestamp);
+        }
+        int bot = Math.abs(index) % NAMES.length;
+        return new ChatMessage("好呀好呀，我想去公园散步，顺便拍点照片～ #" + index,
+                NAMES[bot], false, COLORS[bot], timestamp);
+    }
+
+    /**
+     * 与 ListAdapter 内部一致，把 ItemCallback 包装成针对两份列表的 Callback
+     */
+    private static class SnapshotCallback extends DiffUtil.Callback {
+        private final List<ChatMessage> oldList;
+        private final List<ChatMessage> newList;
+
+        SnapshotCallback(List<ChatMessage> oldList, List<ChatMessage> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return ChatAdapter.DIFF_CALLBACK.areItemsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return ChatAdapter.DIFF_CALLBACK.areContentsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.maibot.multichat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * LlmRateLimiter 与 JavaBotBackend 对本地模拟服务端的行为：429重试、并发上限和按Bot轮流放行
+ */
+@RunWith(AndroidJUnit4.class)
+public class LlmRateLimiterTest {
+    private static final String SSE_REPLY = "data: {\"choices\":[{\"delta\":{\"content\":\"你好\"}}]}\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"呀\"}}]}\n\n"
+            + "data: [DONE]\n\n";
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private JavaBotBackend backend;
+    private List<String> botIds;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (backend != null) {
+            backend.shutdown();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void retriesAfter429HonouringRetryAfter() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(sseResponse());
+
+        RecordingListener listener = start(1, 10, 4);
+        long start = SystemClock.uptimeMillis();
+        backend.send("1", "在吗", GroupContext.Snapshot.EMPTY, botIds);
+
+        assertTrue("未收到回合完成", listener.turnsDone.await(10, TimeUnit.SECONDS));
+        assertTrue("未等待 Retry-After 就重试", SystemClock.uptimeMillis() - start >= 1000);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(Collections.singletonList("你好呀"), listener.replies);
+    }
+
+    @Test
+    public void capsRequestsInFlight() throws InterruptedException {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int now = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(now, Math::max);
+                Thread.sleep(200);
+                inFlight.decrementAndGet();
+                return sseResponse();
+            }
+        });
+
+        RecordingListener listener = start(5, 100, 2);
+        backend.send("1", "大家好", GroupContext.Snapshot.EMPTY, botIds);
+
+        assertTrue("未收到所有Bot的回合完成", listener.turnsDone.await(10, TimeUnit.SECONDS));
+        assertEquals(5, server.getRequestCount());
+        assertTrue("同时进行的请求超过上限: " + maxInFlight.get(), maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void admitsBotsInTurn() throws InterruptedException {
+        LlmRateLimiter.Config config = new LlmRateLimiter.Config();
+        config.requestsPerSecond = 1000;
+        config.maxInFlight = 1;
+        LlmRateLimiter limiter = LlmRateLimiter.get(server.url("/").toString(), "fairness", config);
+
+        // 同一时刻只放行一个请求，先积压 bot_a 的6个请求，再加入 bot_b 的2个
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch admitted = new CountDownLatch(8);
+        CountDownLatch gate = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            String botId = i < 6 ? "bot_a" : "bot_b";
+            limiter.acquire(botId, permit -> {
+                order.add(botId);
+                admitted.countDown();
+                new Thread(() -> {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    permit.release();
+                }).start();
+            });
+        }
+        gate.countDown();
+
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        // 两个Bot交替放行，bot_b 不必等 bot_a 的积压全部发完
+        assertTrue("放行顺序不公平: " + order, order.lastIndexOf("bot_b") <= 4);
+    }
+
+    private RecordingListener start(int botCount, double requestsPerSecond, int maxInFlight)
+            throws InterruptedException {
+        LlmRateLimiter.Config config = new LlmRateLimiter.Config();
+        config.requestsPerSecond = requestsPerSecond;
+        config.maxInFlight = maxInFlight;
+        backend = new JavaBotBackend(server.url("/v1").toString(), "test-model", config, client);
+
+        List<BotInfo> roster = BotRoster.defaults(botCount);
+        botIds = new ArrayList<>();
+        for (BotInfo bot : roster) {
+            botIds.add(bot.id);
+        }
+        RecordingListener listener = new RecordingListener(botCount);
+        backend.initialize("test-key", roster, listener);
+        assertTrue(listener.initialized.await(5, TimeUnit.SECONDS));
+        return listener;
+    }
+
+    private static MockResponse sseResponse() {
+        return new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(SSE_REPLY);
+    }
+
+    private static class RecordingListener implements BotBackend.Listener {
+        final CountDownLatch initialized = new CountDownLatch(1);
+        final CountDownLatch turnsDone;
+        final List<String> replies = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingListener(int botCount) {
+            turnsDone = new CountDownLatch(botCount);
+        }
+
+        @Override
+        public void onBotReady(BotInfo bot) {}
+
+        @Override
+        public void onInitialized(List<BotInfo> bots) {
+            initialized.countDown();
+        }
+
+        @Override
+        public void onInitError(String error) {}
+
+        @Override
+        public void onReply(BotResponse response) {
+            replies.add(response.content);
+        }
+
+        @Override
+        public void onDelta(BotDelta delta) {}
+
+        @Override
+        public void onTurnDone(String botId, String turnId) {
+            turnsDone.countDown();
+        }
+
+        @Override
+        public void onSendError(String turnId, String error) {}
+    }
+}
@@ -0,0 +1,138 @@
+package com.maibot.multichat;
+
+import android.app.Instrumentation;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * MaiBotManager 把一个回合的事件分发给回调的开销（按回合分组、合并增量、统计Bot完成情况）
+ *
+ * Bot由 SyntheticBotBackend 提供，不加载Python；事件由 FakeBridge 按后端的推送顺序构造：
+ * 每个Bot若干段流式增量，随后是最终回复和回合完成通知，一个回合的事件在同一帧内交付。
+ */
+@RunWith(Parameterized.class)
+public class MaiBotManagerDispatchBenchmark {
+    private static final String TURN_ID = "1700000000000001";
+    private static final int DELTAS_PER_BOT = 8;
+
+    @Parameterized.Parameters(name = "bots={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{1}, {5}, {20}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private final int botCount;
+    private MaiBotManager manager;
+    private List<Object> turnEvents;
+
+    public MaiBotManagerDispatchBenchmark(int botCount) {
+        this.botCount = botCount;
+    }
+
+    @Before
+    public void setUp() throws InterruptedException {
+        SyntheticBotBackend.Config config = new SyntheticBotBackend.Config();
+        config.timeScale = 0;
+        manager = new MaiBotManager(new SyntheticBotBackend(config));
+
+        CountDownLatch ready = new CountDownLatch(1);
+        manager.initialize("", botCount, new NoopInitCallback() {
+            @Override
+            public void onSuccess(List<BotInfo> bots) {
+                ready.countDown();
+            }
+        });
+        ready.await(5, TimeUnit.SECONDS);
+        turnEvents = FakeBridge.turnEvents(TURN_ID, botCount, DELTAS_PER_BOT);
+    }
+
+    @Test
+    public void dispatchTurn() {
+        MaiBotManager.MessageCallback callback = new NoopMessageCallback();
+        instrumentation.runOnMainSync(() -> {
+            BenchmarkState state = benchmarkRule.getState();
+            while (state.keepRunning()) {
+                // 所有Bot都报告完成后回合即结束，下一轮重新登记同一回合
+                manager.trackTurn(TURN_ID, callback);
+                manager.dispatchEvents(turnEvents);
+            }
+        });
+    }
+
+    /**
+     * 按Python端推送的顺序构造一个回合的事件
+     */
+    private static class FakeBridge {
+        static String botId(int index) {
+            return "bot_" + index;
+        }
+
+        static List<Object> turnEvents(String turnId, int botCount, int deltasPerBot) {
+            List<Object> events = new ArrayList<>();
+            for (int i = 0; i < botCount; i++) {
+                String replyId = turnId + "_" + i;
+                for (int j = 0; j < deltasPerBot; j++) {
+                    BotDelta delta = new BotDelta();
+                    delta.bot_id = botId(i);
+                    delta.bot_name = "Bot" + i;
+                    delta.color = "#4A90E2";
+                    delta.reply_id = replyId;
+                    delta.turn_id = turnId;
+                    delta.content = "增量" + j;
+                    events.add(delta);
+                }
+
+                BotResponse response = new BotResponse();
+                response.bot_id = botId(i);
+                response.bot_name = "Bot" + i;
+                response.color = "#4A90E2";
+                response.content = "这是Bot" + i + "的完整回复";
+                response.reply_id = replyId;
+                response.turn_id = turnId;
+                events.add(response);
+                events.add(new MaiBotManager.TurnDoneEvent(botId(i), turnId));
+            }
+            return events;
+        }
+    }
+
+    private static class NoopInitCallback implements MaiBotManager.InitCallback {
+        @Override
+        public void onBotReady(BotInfo bot) {}
+
+        @Override
+        public void onSuccess(List<BotInfo> bots) {}
+
+        @Override
+        public void onError(String error) {}
+    }
+
+    private static class NoopMessageCallback implements MaiBotManager.MessageCallback {
+        @Override
+        public void onResponses(List<BotResponse> responses) {}
+
+        @Override
+        public void onDelta(BotDelta delta) {}
+
+        @Override
+        public void onBotFinished(String botId, int remainingBots) {}
+
+        @Override
+        public void onError(String error) {}
+    }
+}
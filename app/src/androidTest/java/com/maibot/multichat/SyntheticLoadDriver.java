@@ -0,0 +1,222 @@
+package com.maibot.multichat;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按脚本向 MaiBotManager 连续发出回合，并像 MainActivity 一样把回复交给 ChatAdapter
+ *
+ * 脚本由若干阶段组成，每个阶段以固定间隔发出若干组回合，每组连发 burst 个；
+ * 进行中的回合达到上限时整组推迟发出。驱动只在主线程上运行，所有回合结束后通过 Listener 返回统计结果。
+ */
+class SyntheticLoadDriver {
+    private static final int MAX_RESIDENT_MESSAGES = 300; // 与 MainActivity 的常驻窗口一致
+    private static final int MAX_IN_FLIGHT_TURNS = 8; // 不超过 MaiBotManager 为回合保留回调的数量
+    private static final long BACKOFF_MS = 10; // 进行中的回合已满时，隔一会儿再试
+
+    /**
+     * 脚本中的一个阶段
+     */
+    static class Phase {
+        final int groups;
+        final int burst;
+        final long intervalMs;
+
+        Phase(int groups, int burst, long intervalMs) {
+            this.groups = groups;
+            this.burst = burst;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    interface Listener {
+        void onFinished(Result result);
+    }
+
+    static class Result {
+        int turnsSent;
+        int turnsRejected;
+        int turnsCompleted;
+        int responses;
+        int deltas;
+        long elapsedMs;
+        long javaHeapBefore;
+        long javaHeapAfter;
+        long nativeHeapBefore;
+        long nativeHeapAfter;
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1, elapsedMs) / 1000.0;
+            return String.format(Locale.US,
+                    "回合 发出%d 拒绝%d 完成%d；回复%d 增量%d；耗时%.1fs，%.1f回合/s，%.1f回复/s；"
+                            + "Java堆 %dKB -> %dKB，Native堆 %dKB -> %dKB",
+                    turnsSent, turnsRejected, turnsCompleted, responses, deltas, seconds,
+                    turnsCompleted / seconds, responses / seconds,
+                    javaHeapBefore / 1024, javaHeapAfter / 1024,
+                    nativeHeapBefore / 1024, nativeHeapAfter / 1024);
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final MaiBotManager manager;
+    private final ChatAdapter adapter;
+    private final List<Phase> script;
+    private final List<ChatMessage> messages = new ArrayList<>();
+    private final Map<String, ChatMessage> streamingMessages = new HashMap<>();
+    private final Result result = new Result();
+    private Listener listener;
+    private int phaseIndex = 0;
+    private int groupsSent = 0;
+    private int inFlight = 0;
+    private boolean scriptDone = false;
+    private long startTime;
+
+    SyntheticLoadDriver(MaiBotManager manager, ChatAdapter adapter, List<Phase> script) {
+        this.manager = manager;
+        this.adapter = adapter;
+        this.script = script;
+    }
+
+    /**
+     * 开始执行脚本（需在主线程调用）
+     */
+    void start(Listener listener) {
+        this.listener = listener;
+        result.javaHeapBefore = usedJavaHeap();
+        result.nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+        startTime = SystemClock.uptimeMillis();
+        handler.post(this::sendGroup);
+    }
+
+    private void sendGroup() {
+        if (phaseIndex >= script.size()) {
+            scriptDone = true;
+            finishIfIdle();
+            return;
+        }
+
+        Phase phase = script.get(phaseIndex);
+        if (inFlight + phase.burst > MAX_IN_FLIGHT_TURNS) {
+            handler.postDelayed(this::sendGroup, BACKOFF_MS);
+            return;
+        }
+
+        for (int i = 0; i < phase.burst; i++) {
+            LoadCallback callback = new LoadCallback();
+            String turnId = manager.sendMessage("压测消息 " + result.turnsSent, callback);
+            result.turnsSent++;
+            if (turnId == null) {
+                result.turnsRejected++;
+            } else {
+                callback.tracked = true;
+                inFlight++;
+            }
+        }
+
+        if (++groupsSent >= phase.groups) {
+            phaseIndex++;
+            groupsSent = 0;
+        }
+        handler.postDelayed(this::sendGroup, phase.intervalMs);
+    }
+
+    private void finishIfIdle() {
+        if (!scriptDone || inFlight > 0 || listener == null) return;
+
+        result.elapsedMs = SystemClock.uptimeMillis() - startTime;
+        result.javaHeapAfter = usedJavaHeap();
+        result.nativeHeapAfter = Debug.getNativeHeapAllocatedSize();
+        Listener done = listener;
+        listener = null;
+        done.onFinished(result);
+    }
+
+    private static long usedJavaHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void submitMessages() {
+        // 与 MainActivity 一样只保留最新的一段消息
+        while (messages.size() > MAX_RESIDENT_MESSAGES) {
+            messages.remove(0);
+        }
+        adapter.submitList(new ArrayList<>(messages));
+    }
+
+    /**
+     * 与 MainActivity.TurnCallback 相同的处理：增量建气泡并追加，最终回复原地替换
+     */
+    private class LoadCallback implements MaiBotManager.MessageCallback {
+        boolean tracked = false; // 被拒绝的回合不计入进行中，也不会结束
+        private boolean finished = false;
+
+        @Override
+        public void onResponses(List<BotResponse> responses) {
+            result.responses += responses.size();
+            boolean changed = false;
+            for (BotResponse response : responses) {
+                ChatMessage streaming = response.reply_id != null
+                        ? streamingMessages.remove(response.reply_id) : null;
+                if (streaming == null) {
+                    messages.add(new ChatMessage(response.content, response.bot_name, false, response.color));
+                    changed = true;
+                    continue;
+                }
+                int index = messages.lastIndexOf(streaming);
+                if (index >= 0) {
+                    messages.set(index, new ChatMessage(streaming.getMessageId(), response.content,
+                            response.bot_name, false, response.color, streaming.getTimestamp()));
+                    changed = true;
+                }
+                adapter.finishStreaming(streaming.getMessageId());
+            }
+            if (changed) {
+                submitMessages();
+            }
+        }
+
+        @Override
+        public void onDelta(BotDelta delta) {
+            result.deltas++;
+            ChatMessage streaming = streamingMessages.get(delta.reply_id);
+            if (streaming != null) {
+                adapter.appendStreamingText(streaming, delta.content, delta.reset);
+                return;
+            }
+            streaming = new ChatMessage(delta.content, delta.bot_name, false, delta.color);
+            streamingMessages.put(delta.reply_id, streaming);
+            messages.add(streaming);
+            submitMessages();
+        }
+
+        @Override
+        public void onBotFinished(String botId, int remainingBots) {
+            if (remainingBots == 0) {
+                finish();
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            finish();
+        }
+
+        private void finish() {
+            if (!tracked || finished) return;
+            finished = true;
+            result.turnsCompleted++;
+            inFlight--;
+            finishIfIdle();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.maibot.multichat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 离线压测：50个模拟Bot，按脚本回放几千个回合，输出吞吐量、内存和各阶段延迟
+ *
+ * 结果写入日志（标签 SyntheticLoadTest），可用 adb logcat -s SyntheticLoadTest 查看。
+ * 模拟延迟压缩为真实值的 1/20，回放时间主要取决于主线程上的分发和列表刷新。
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyntheticLoadTest {
+    private static final String TAG = "SyntheticLoadTest";
+    private static final int BOT_COUNT = 50;
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private MaiBotManager manager;
+    private ChatAdapter adapter;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        SyntheticBotBackend.Config config = new SyntheticBotBackend.Config();
+        config.timeScale = 0.05;
+        config.replyProbability = 0.3;
+        manager = new MaiBotManager(new SyntheticBotBackend(config));
+
+        CountDownLatch ready = new CountDownLatch(1);
+        manager.initialize("", BOT_COUNT, new MaiBotManager.InitCallback() {
+            @Override
+            public void onBotReady(BotInfo bot) {}
+
+            @Override
+            public void onSuccess(List<BotInfo> bots) {
+                ready.countDown();
+            }
+
+            @Override
+            public void onError(String error) {}
+        });
+        assertTrue("模拟Bot初始化超时", ready.await(10, TimeUnit.SECONDS));
+
+        instrumentation.runOnMainSync(() -> adapter = new ChatAdapter());
+        LatencyMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        instrumentation.runOnMainSync(() -> manager.shutdown());
+    }
+
+    @Test
+    public void replayScript() throws InterruptedException {
+        List<SyntheticLoadDriver.Phase> script = Arrays.asList(
+                new SyntheticLoadDriver.Phase(200, 1, 50),   // 热身：逐个发出
+                new SyntheticLoadDriver.Phase(300, 4, 20),   // 连续输入：每组4个回合
+                new SyntheticLoadDriver.Phase(2000, 1, 0));  // 持续满载：进行中的回合一结束就发下一个
+
+        SyntheticLoadDriver.Result[] result = new SyntheticLoadDriver.Result[1];
+        CountDownLatch finished = new CountDownLatch(1);
+        instrumentation.runOnMainSync(() -> new SyntheticLoadDriver(manager, adapter, script).start(r -> {
+            result[0] = r;
+            finished.countDown();
+        }));
+
+        assertTrue("压测未在限定时间内完成", finished.await(30, TimeUnit.MINUTES));
+        Log.i(TAG, result[0].toString());
+        Log.i(TAG, "\n" + LatencyMetrics.report());
+        assertEquals(result[0].turnsSent - result[0].turnsRejected, result[0].turnsCompleted);
+    }
+}
@@ -0,0 +1,91 @@
+package com.maibot.multichat;
+
+import java.util.List;
+
+/**
+ * Bot后端：负责初始化Bot、把回合发给Bot、推送回复流和清空历史
+ *
+ * MaiBotManager 只依赖这个接口，回合管理、事件合并和回调分发都在 MaiBotManager 中完成。
+ * 默认实现是 PythonBotBackend（Chaquopy + maibot_bridge），
+ * JavaBotBackend 直接调用OpenAI兼容接口流式生成回复，
+ * SyntheticBotBackend 在进程内模拟Bot，用于离线压测。
+ */
+public interface BotBackend {
+
+    /**
+     * 后端事件监听器，可以在任意线程上回调，实现中不要做耗时操作
+     */
+    interface Listener {
+        /**
+         * 某个Bot初始化完成，此后即可开始聊天
+         */
+        void onBotReady(BotInfo bot);
+
+        /**
+         * 所有Bot初始化结束，bots 为成功初始化的Bot
+         */
+        void onInitialized(List<BotInfo> bots);
+
+        void onInitError(String error);
+
+        /**
+         * Bot的一条完整回复（reply_id 不为空时替换同一回复的流式气泡）
+         */
+        void onReply(BotResponse response);
+
+        /**
+         * 流式回复的增量文本
+         */
+        void onDelta(BotDelta delta);
+
+        /**
+         * Bot处理完了某个回合（已回复或决定不回复）
+         */
+        void onTurnDone(String botId, String turnId);
+
+        /**
+         * 已接受的回合未能发给Bot
+         */
+        void onSendError(String turnId, String error);
+    }
+
+    /**
+     * 按阵容异步初始化Bot，进度和之后的回复都通过 listener 推送
+     *
+     * 阵容中的Bot报告就绪后即可被选中，后端可以推迟到第一次被选中时才真正加载
+     */
+    void initialize(String apiKey, List<BotInfo> roster, Listener listener);
+
+    /**
+     * 把一个回合的消息发给 botIds 中的Bot（本回合选中的），积压过多而拒绝时返回 false
+     *
+     * context 是本回合开始前的群聊上下文（不含 message），这些Bot共用同一份；未选中的Bot不参与本回合
+     */
+    boolean send(String turnId, String message, GroupContext.Snapshot context, List<String> botIds);
+
+    /**
+     * 取消回合：中止各Bot对该回合的处理，之后不再推送该回合的回复
+     */
+    void cancel(String turnId);
+
+    void clearHistory();
+
+    /**
+     * 热更新LLM接入设置：之后发出的请求使用新的Key、地址、模型和限流参数，
+     * 进行中的请求（包括它们的重试）按原设置完成。Bot和聊天记录不受影响
+     */
+    void updateLlm(String apiKey, String baseUrl, String modelName, LlmRateLimiter.Config limits);
+
+    /**
+     * 热更新阵容：移除 removedIds 中的Bot（中止它们进行中的处理，之后不再推送它们的事件），
+     * 再加入 added 中的Bot，每个新Bot就绪时通过 listener.onBotReady 报告。其余Bot不受影响
+     */
+    void updateRoster(List<BotInfo> added, List<String> removedIds);
+
+    /**
+     * 系统内存紧张时释放可重建的缓存；sleepIdleBots 为 true 时让空闲的Bot休眠，下次被选中时再恢复
+     */
+    void trimMemory(boolean sleepIdleBots);
+
+    void shutdown();
+}
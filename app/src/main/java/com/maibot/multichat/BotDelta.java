@@ -0,0 +1,33 @@
+package com.maibot.multichat;
+
+/**
+ * 流式回复的一段增量文本，同一条回复的增量共享 reply_id
+ */
+public class BotDelta {
+    public String bot_id;
+    public String bot_name;
+    public String color;
+    public String reply_id;
+    public String turn_id;
+    public String content;
+    // 为true时表示回复重新生成，之前推送的内容作废
+    public boolean reset;
+
+    /**
+     * 合并同一回复的后续增量，用于把一帧内的多个增量合成一次界面更新
+     */
+    public BotDelta merge(BotDelta next) {
+        if (next.reset) {
+            return next;
+        }
+        BotDelta merged = new BotDelta();
+        merged.bot_id = bot_id;
+        merged.bot_name = bot_name;
+        merged.color = color;
+        merged.reply_id = reply_id;
+        merged.turn_id = turn_id;
+        merged.content = content + next.content;
+        merged.reset = reset;
+        return merged;
+    }
+}
@@ -0,0 +1,12 @@
+package com.maibot.multichat;
+
+/**
+ * Bot成员信息，id/name/color 与 maibot_bridge.get_bot_list 输出一致
+ */
+public class BotInfo {
+    public String id;
+    public String name;
+    public String color;
+    // 人设，只来自 BotRoster（Python端回传的Bot列表不带该字段）
+    public String personality;
+}
@@ -0,0 +1,70 @@
+package com.maibot.multichat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+
+/**
+ * Java与Python之间的二进制载荷编解码
+ *
+ * Python端用msgpack把记录列表打包成 [[字段1, 字段2, ...], ...] 的数组形式，
+ * 字段按位置排列、不携带键名。这里直接解码为 BotResponse / BotInfo，
+ * 不经过中间字符串，也不依赖反射。
+ * 字段顺序需与 maibot_bridge.py 中的 RESPONSE_FIELDS / BOT_INFO_FIELDS 保持一致，
+ * 记录中多出的字段会被跳过，便于两端分别升级。
+ */
+public final class BotPayloadCodec {
+    private BotPayloadCodec() {}
+
+    public static List<BotResponse> decodeResponses(byte[] payload) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(payload)) {
+            int count = unpacker.unpackArrayHeader();
+            List<BotResponse> responses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int fields = unpacker.unpackArrayHeader();
+                BotResponse response = new BotResponse();
+                response.bot_id = fields > 0 ? readString(unpacker) : null;
+                response.bot_name = fields > 1 ? readString(unpacker) : null;
+                response.color = fields > 2 ? readString(unpacker) : null;
+                response.content = fields > 3 ? readString(unpacker) : null;
+                response.reply_id = fields > 4 ? readString(unpacker) : null;
+                response.turn_id = fields > 5 ? readString(unpacker) : null;
+                skipFields(unpacker, fields - 6);
+                responses.add(response);
+            }
+            return responses;
+        }
+    }
+
+    public static List<BotInfo> decodeBotList(byte[] payload) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(payload)) {
+            int count = unpacker.unpackArrayHeader();
+            List<BotInfo> bots = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int fields = unpacker.unpackArrayHeader();
+                BotInfo bot = new BotInfo();
+                bot.id = fields > 0 ? readString(unpacker) : null;
+                bot.name = fields > 1 ? readString(unpacker) : null;
+                bot.color = fields > 2 ? readString(unpacker) : null;
+                skipFields(unpacker, fields - 3);
+                bots.add(bot);
+            }
+            return bots;
+        }
+    }
+
+    private static String readString(MessageUnpacker unpacker) throws IOException {
+        if (unpacker.tryUnpackNil()) {
+            return null;
+        }
+        return unpacker.unpackString();
+    }
+
+    private static void skipFields(MessageUnpacker unpacker, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            unpacker.skipValue();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.maibot.multichat;
+
+/**
+ * 单条Bot回复，字段与 maibot_bridge 的消息队列记录一致
+ */
+public class BotResponse {
+    public String bot_id;
+    public String bot_name;
+    public String color;
+    public String content;
+    // 对应流式回复的ID，不为空时这条消息替换该回复的流式气泡
+    public String reply_id;
+    // 所属对话回合，由 MaiBotManager.sendMessage 分配
+    public String turn_id;
+}
@@ -0,0 +1,154 @@
+package com.maibot.multichat;
+
+import android.content.SharedPreferences;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bot阵容：用户自定义的人设列表，人数不限于内置的五个
+ *
+ * 阵容以文本保存在偏好项 roster 中，每行一个Bot，格式为 "名字：性格"（也接受半角冒号），
+ * 空行和以 # 开头的行被忽略。Bot的ID和颜色都由名字决定（阵容中名字不重复），在阵容中间增删Bot时
+ * 其余Bot的ID不变：内置人设沿用 bot_0…bot_4 和原来的颜色，其它名字的ID取自名字的摘要，颜色按名字从调色板中取。
+ * 没有保存过阵容时使用内置人设的前 bot_count 个。
+ */
+public final class BotRoster {
+    // 偏好项名称与默认值
+    public static final String PREF_ROSTER = "roster";
+    public static final String PREF_MAX_FAN_OUT = "max_fan_out";
+    public static final int DEFAULT_MAX_FAN_OUT = 3;
+    public static final int MAX_FAN_OUT_LIMIT = 10;  // 设置页可选的每回合回复Bot数上限
+    public static final int MAX_SIZE = 50;           // 阵容人数上限
+
+    private static final String DEFAULT_PERSONALITY = "普通的群聊成员，说话随和自然";
+
+    // 内置人设，与 maibot_bridge 中的 DEFAULT_BOT_CONFIGS 一致
+    static final String[][] BUILT_IN = {
+            {"麦麦", "活泼可爱、充满个性的少女，喜欢用可爱的语气词", "#FF6B9D"},
+            {"小智", "理性严谨的技术专家，逻辑清晰，注重细节", "#4A90E2"},
+            {"诗诗", "温柔文艺的诗人，优雅含蓄，富有诗意", "#9B59B6"},
+            {"阿乐", "幽默风趣的段子手，善于活跃气氛", "#F39C12"},
+            {"小月", "温暖贴心的倾听者，善于理解和安慰", "#E91E63"},
+    };
+
+    private static final String[] PALETTE = {
+            "#FF6B9D", "#4A90E2", "#9B59B6", "#F39C12", "#E91E63", "#1ABC9C",
+            "#2ECC71", "#E67E22", "#3498DB", "#8E44AD", "#16A085", "#D35400",
+    };
+
+    private BotRoster() {}
+
+    /**
+     * 内置人设的前 count 个，超出部分生成通用成员（用于未设置阵容时和压测）
+     */
+    public static List<BotInfo> defaults(int count) {
+        List<BotInfo> roster = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i < BUILT_IN.length) {
+                roster.add(bot(BUILT_IN[i][0], BUILT_IN[i][1]));
+            } else {
+                roster.add(bot("成员" + (i + 1), DEFAULT_PERSONALITY));
+            }
+        }
+        return roster;
+    }
+
+    /**
+     * 读取保存的阵容，没有时使用内置人设
+     */
+    public static List<BotInfo> load(SharedPreferences prefs) {
+        String text = prefs.getString(PREF_ROSTER, null);
+        if (text != null) {
+            try {
+                List<BotInfo> roster = parse(text);
+                if (!roster.isEmpty()) {
+                    return roster;
+                }
+            } catch (IllegalArgumentException ignored) {
+                // 保存时已校验过，这里只是兜底
+            }
+        }
+        return defaults(prefs.getInt("bot_count", 3));
+    }
+
+    public static int maxFanOut(SharedPreferences prefs) {
+        return prefs.getInt(PREF_MAX_FAN_OUT, DEFAULT_MAX_FAN_OUT);
+    }
+
+    /**
+     * 解析阵容文本，重名的Bot只保留第一个；超过 MAX_SIZE 时抛出 IllegalArgumentException
+     */
+    public static List<BotInfo> parse(String text) {
+        List<BotInfo> roster = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String raw : text.split("\n")) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int colon = indexOfColon(line);
+            String name = (colon < 0 ? line : line.substring(0, colon)).trim();
+            String personality = colon < 0 ? "" : line.substring(colon + 1).trim();
+            if (name.isEmpty() || !names.add(name)) {
+                continue;
+            }
+            if (roster.size() >= MAX_SIZE) {
+                throw new IllegalArgumentException("阵容最多" + MAX_SIZE + "个Bot");
+            }
+            roster.add(bot(name, personality.isEmpty() ? DEFAULT_PERSONALITY : personality));
+        }
+        return roster;
+    }
+
+    public static String format(List<BotInfo> roster) {
+        StringBuilder sb = new StringBuilder();
+        for (BotInfo bot : roster) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(bot.name).append('：').append(bot.personality);
+        }
+        return sb.toString();
+    }
+
+    private static int indexOfColon(String line) {
+        int full = line.indexOf('：');
+        int half = line.indexOf(':');
+        if (full < 0) return half;
+        if (half < 0) return full;
+        return Math.min(full, half);
+    }
+
+    private static BotInfo bot(String name, String personality) {
+        BotInfo bot = new BotInfo();
+        bot.id = idFor(name);
+        bot.name = name;
+        bot.personality = personality;
+        bot.color = PALETTE[Math.floorMod(name.hashCode(), PALETTE.length)];
+        for (String[] builtIn : BUILT_IN) {
+            if (builtIn[0].equals(name)) {
+                bot.color = builtIn[2];
+                break;
+            }
+        }
+        return bot;
+    }
+
+    /**
+     * 由名字得到Bot的ID；MaiBot引擎按ID区分每个Bot的聊天流和记忆，同一个名字始终对应同一个ID
+     */
+    static String idFor(String name) {
+        for (int i = 0; i < BUILT_IN.length; i++) {
+            if (BUILT_IN[i][0].equals(name)) {
+                // 与 maibot_bridge 默认阵容的ID一致，已有的记忆不受影响
+                return "bot_" + i;
+            }
+        }
+        UUID digest = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+        return "bot_" + Long.toHexString(digest.getMostSignificantBits());
+    }
+}
@@ -0,0 +1,515 @@
+package com.maibot.multichat;
+
+import android.app.Service;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bot引擎的宿主：持有 MaiBotManager、回合队列、进行中的回合和流式回复，界面重建（旋转等）时不受影响
+ *
+ * MainActivity 启动并绑定本服务，通过 attach/detach 连接。最终回复在这里写入聊天记录，没有界面连接时也不会丢失；
+ * 未连接期间的系统消息、回复和提示缓存起来，下次 attach 时先恢复进行中的流式气泡，再按顺序重放。
+ * 界面退出（finish）时停止服务并关闭引擎。只在主线程上使用。
+ *
+ * 设置页保存后，本服务对比新旧设置只应用变化的部分：API Key、地址、模型或限流参数变化时后端原地切换LLM客户端，
+ * 阵容变化时只增删变动的Bot，Python运行时、已加载的插件和聊天记录都保留；只有切换Bot引擎时才重建后端并重新初始化。
+ */
+public class BotService extends Service {
+    private static final int MAX_JOIN_ANNOUNCEMENTS = 5; // 阵容不超过该人数时逐个提示Bot加入
+    private static final int MAX_BUFFERED_EVENTS = 500; // 未连接期间最多缓存的事件数，超出时丢弃最早的
+
+    /**
+     * 界面端，所有回调都在主线程上
+     */
+    interface Client {
+        /**
+         * 已写入聊天记录的系统消息，重新连接后随历史记录加载
+         */
+        void onSystemMessage(ChatMessage message);
+
+        /**
+         * 一条流式回复开始（或 attach 时恢复），bubble 的内容是目前已收到的文本
+         */
+        void onStreamStarted(ChatMessage bubble);
+
+        void onStreamDelta(long messageId, String content, boolean reset);
+
+        /**
+         * 流式回复没等到最终内容就结束了（回合取消或出错、超时、Bot被移出阵容），界面移除这些气泡
+         */
+        void onStreamsDropped(List<Long> messageIds);
+
+        /**
+         * 已写入聊天记录的最终回复；流式回复沿用气泡的ID，界面据此原地替换
+         */
+        void onReplies(List<ChatMessage> replies);
+
+        /**
+         * 进行中的回合或合并等待中的输入有变化
+         */
+        void onTurnStatusChanged();
+
+        void onToast(String text);
+    }
+
+    public class LocalBinder extends Binder {
+        BotService getService() {
+            return BotService.this;
+        }
+    }
+
+    /**
+     * 一条进行中的流式回复：气泡的ID、发送者、所属回合和目前收到的文本
+     */
+    private static class Stream {
+        final ChatMessage bubble;
+        final String turnId;
+        final String botId;
+        final StringBuilder text;
+
+        Stream(ChatMessage bubble, String turnId, String botId) {
+            this.bubble = bubble;
+            this.turnId = turnId;
+            this.botId = botId;
+            this.text = new StringBuilder(bubble.getContent());
+        }
+
+        ChatMessage snapshot() {
+            return new ChatMessage(bubble.getMessageId(), text.toString(), bubble.getSenderName(),
+                    false, bubble.getColor(), bubble.getTimestamp());
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private SharedPreferences prefs;
+    // 当前生效的设置，设置页保存后与新设置对比
+    private BotSettings settings;
+    private boolean settingsChanged = false;
+    // 一次保存会逐项回调，合并到下一个消息中一起处理；SharedPreferences 只持有弱引用，需要保存在字段中
+    private final SharedPreferences.OnSharedPreferenceChangeListener settingsListener = (preferences, key) -> {
+        if (settingsChanged) return;
+        settingsChanged = true;
+        mainHandler.post(this::applySettings);
+    };
+    private ChatHistoryStore historyStore;
+    private MaiBotManager botManager;
+    // botManager 所用的Bot引擎
+    private String engine;
+    private TurnQueue turnQueue;
+    // 进行中的回合ID -> 仍在处理的Bot数
+    private final Map<String, Integer> turnRemaining = new HashMap<>();
+    // 后端回复ID -> 进行中的流式回复，按开始顺序
+    private final Map<String, Stream> streams = new LinkedHashMap<>();
+    private final ArrayDeque<Consumer<Client>> pendingEvents = new ArrayDeque<>();
+    private Client client;
+    private int activeBotCount = 0;
+    private int maxFanOut = BotRoster.DEFAULT_MAX_FAN_OUT;
+    private boolean initializing = false;
+    private boolean initialized = false;
+    // 本批就绪的Bot是否逐个提示加入（初始化和热更新阵容时按人数决定）
+    private boolean announceJoins = false;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        prefs = getSharedPreferences("maibot_settings", MODE_PRIVATE);
+        settings = BotSettings.fromPrefs(prefs);
+        prefs.registerOnSharedPreferenceChangeListener(settingsListener);
+        historyStore = ChatHistoryStore.getInstance(this);
+        botManager = new MaiBotManager(createBackend());
+        turnQueue = new TurnQueue(this::dispatchTurn);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // 进程被杀后不自动重启，下次打开界面时重新初始化
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        prefs.unregisterOnSharedPreferenceChangeListener(settingsListener);
+        mainHandler.removeCallbacksAndMessages(null);
+        turnQueue.clear();
+        botManager.shutdown();
+        historyStore.flush();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        int stage = MemoryPressure.stageFor(level);
+        if (stage == MemoryPressure.NONE) return;
+
+        // 同一进程的 MainActivity 也会收到通知，界面部分由它自己处理，这里只处理Bot并记录一次
+        MemoryPressure.Sample before = MemoryPressure.sample();
+        if (stage >= MemoryPressure.RELEASE_CACHES) {
+            botManager.trimMemory(stage >= MemoryPressure.SLEEP_BOTS);
+        }
+        MemoryPressure.recordTrim(level, stage, before);
+    }
+
+    /**
+     * 连接界面：先恢复进行中的流式气泡，再重放未连接期间缓存的事件
+     */
+    void attach(Client client) {
+        this.client = client;
+        for (Stream stream : streams.values()) {
+            client.onStreamStarted(stream.snapshot());
+        }
+        while (!pendingEvents.isEmpty() && this.client == client) {
+            pendingEvents.removeFirst().accept(client);
+        }
+        client.onTurnStatusChanged();
+    }
+
+    void detach(Client client) {
+        if (this.client == client) {
+            this.client = null;
+        }
+    }
+
+    /**
+     * 发给界面；未连接时缓存起来，attach 时重放
+     */
+    private void emit(Consumer<Client> event) {
+        if (client != null) {
+            event.accept(client);
+            return;
+        }
+        pendingEvents.addLast(event);
+        while (pendingEvents.size() > MAX_BUFFERED_EVENTS) {
+            pendingEvents.removeFirst();
+        }
+    }
+
+    private BotBackend createBackend() {
+        engine = settings.backend;
+        if (SettingsActivity.BACKEND_SYNTHETIC.equals(settings.backend)) {
+            return new SyntheticBotBackend();
+        }
+        if (SettingsActivity.BACKEND_JAVA.equals(settings.backend)) {
+            return new JavaBotBackend(settings.baseUrl, settings.modelName, settings.limits);
+        }
+        return new PythonBotBackend(this, settings.baseUrl, settings.modelName, settings.limits);
+    }
+
+    /**
+     * 设置页保存后对比新旧设置，只应用变化的部分
+     */
+    private void applySettings() {
+        settingsChanged = false;
+        if (initializing) {
+            // 初始化结束后再对比，初始化用的还是旧设置
+            return;
+        }
+
+        BotSettings next = BotSettings.fromPrefs(prefs);
+        BotSettings.Diff diff = settings.diff(next);
+        settings = next;
+        // 还没初始化时下次按新设置初始化即可
+        if (!initialized || diff.isEmpty()) return;
+
+        if (diff.backendChanged) {
+            restartEngine();
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (diff.llmChanged) {
+            botManager.updateLlm(next.apiKey, next.baseUrl, next.modelName, next.limits);
+        }
+        if (diff.fanOutChanged) {
+            maxFanOut = next.maxFanOut;
+            botManager.setMaxFanOut(maxFanOut);
+        }
+        if (diff.rosterChanged()) {
+            List<String> removedIds = new ArrayList<>(diff.removedBots.size());
+            for (BotInfo bot : diff.removedBots) {
+                removedIds.add(bot.id);
+            }
+            activeBotCount = Math.max(0, activeBotCount - removedIds.size());
+            // 新加入的Bot就绪时由 onBotReady 计数并提示
+            announceJoins = diff.addedBots.size() <= MAX_JOIN_ANNOUNCEMENTS;
+            botManager.updateRoster(next.roster, diff.addedBots, removedIds);
+            if (removedIds.size() <= MAX_JOIN_ANNOUNCEMENTS) {
+                for (BotInfo bot : diff.removedBots) {
+                    emitSystemMessage(bot.name + " 离开了群聊");
+                }
+            }
+        }
+        LatencyMetrics.recordSince("settings.apply", start);
+        emitSystemMessage("设置已生效");
+    }
+
+    /**
+     * 切换Bot引擎：丢弃进行中的回合，换用新的后端重新初始化，聊天记录保留
+     */
+    private void restartEngine() {
+        for (String turnId : turnRemaining.keySet()) {
+            botManager.cancel(turnId);
+        }
+        turnRemaining.clear();
+        turnQueue.clear();
+        dropStreams(null, null);
+        initialized = false;
+        activeBotCount = 0;
+        notifyTurnStatus();
+        emitSystemMessage("Bot引擎已切换");
+        initializeIfNeeded();
+    }
+
+    boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * 按当前设置初始化Bot，已在初始化或已完成时不做任何事
+     */
+    void initializeIfNeeded() {
+        if (initializing || initialized) return;
+
+        initializing = true;
+        settings = BotSettings.fromPrefs(prefs);
+        if (!settings.backend.equals(engine)) {
+            // 设置中切换过Bot引擎，换用新的后端
+            botManager.shutdown();
+            botManager = new MaiBotManager(createBackend());
+        }
+        List<BotInfo> roster = settings.roster;
+        announceJoins = roster.size() <= MAX_JOIN_ANNOUNCEMENTS;
+        maxFanOut = settings.maxFanOut;
+        botManager.setMaxFanOut(maxFanOut);
+
+        emitSystemMessage("正在初始化" + roster.size() + "个AI Bot...");
+
+        botManager.initialize(settings.apiKey, roster, new MaiBotManager.InitCallback() {
+            @Override
+            public void onBotReady(BotInfo bot) {
+                // 第一个Bot就绪后就可以开始聊天，其余Bot陆续加入；热更新阵容时加入的Bot也从这里报告
+                initialized = true;
+                activeBotCount++;
+                if (announceJoins) {
+                    emitSystemMessage(bot.name + " 加入了群聊");
+                }
+            }
+
+            @Override
+            public void onSuccess(List<BotInfo> bots) {
+                initializing = false;
+                initialized = true;
+                activeBotCount = bots.size();
+                // 初始化期间保存的设置现在再对比
+                mainHandler.post(BotService.this::applySettings);
+                StringBuilder botNames = new StringBuilder("群聊成员：");
+                for (int i = 0; i < bots.size(); i++) {
+                    if (i > 0) botNames.append("、");
+                    botNames.append(bots.get(i).name);
+                }
+                emitSystemMessage(botNames.toString());
+                emitSystemMessage("初始化完成！开始聊天吧~");
+            }
+
+            @Override
+            public void onError(String error) {
+                initializing = false;
+                emitSystemMessage("初始化失败: " + error);
+                emit(c -> c.onToast("初始化失败，请检查设置"));
+            }
+        });
+    }
+
+    private void emitSystemMessage(String text) {
+        ChatMessage message = new ChatMessage(text, ChatMessage.SYSTEM_SENDER, false, ChatMessage.SYSTEM_COLOR);
+        historyStore.save(message);
+        emit(c -> c.onSystemMessage(message));
+    }
+
+    /**
+     * 提交一条用户输入，连续输入的几条会合并成一个回合
+     */
+    void submitInput(String text) {
+        turnQueue.submit(text);
+        notifyTurnStatus();
+    }
+
+    /**
+     * 还在处理进行中回合的Bot数（取各回合中的最大值）
+     */
+    int busyBotCount() {
+        int busyBots = 0;
+        for (int remaining : turnRemaining.values()) {
+            busyBots = Math.max(busyBots, remaining);
+        }
+        return busyBots;
+    }
+
+    boolean hasPendingInput() {
+        return turnQueue.hasPending();
+    }
+
+    /**
+     * 清空聊天时调用：停止进行中的回合，丢弃未发出的输入和流式回复，清空Bot的历史
+     */
+    void clearConversation() {
+        // 正在进行的回合已无意义，停止生成以免浪费token
+        for (String turnId : turnRemaining.keySet()) {
+            botManager.cancel(turnId);
+        }
+        turnRemaining.clear();
+        turnQueue.clear();
+        streams.clear();
+        pendingEvents.clear();
+        botManager.clearHistory();
+        notifyTurnStatus();
+    }
+
+    /**
+     * 丢弃等不到最终内容的流式回复并通知界面；turnId、botId 为 null 时不限
+     */
+    private void dropStreams(String turnId, String botId) {
+        List<Long> dropped = new ArrayList<>();
+        Iterator<Stream> it = streams.values().iterator();
+        while (it.hasNext()) {
+            Stream stream = it.next();
+            if ((turnId == null || turnId.equals(stream.turnId)) && (botId == null || botId.equals(stream.botId))) {
+                dropped.add(stream.bubble.getMessageId());
+                it.remove();
+            }
+        }
+        // 未连接时不需要通知，attach 时只恢复仍在进行的气泡
+        if (!dropped.isEmpty() && client != null) {
+            client.onStreamsDropped(dropped);
+        }
+    }
+
+    private void notifyTurnStatus() {
+        if (client != null) {
+            client.onTurnStatusChanged();
+        }
+    }
+
+    /**
+     * 把合并后的输入作为一个回合发给最相关的几个Bot（异步回复）
+     */
+    private boolean dispatchTurn(String text) {
+        TurnCallback callback = new TurnCallback();
+        String turnId = botManager.sendMessage(text, callback);
+        if (turnId == null) return false;
+
+        callback.turnId = turnId;
+        turnRemaining.put(turnId, Math.min(activeBotCount, maxFanOut));
+        notifyTurnStatus();
+        return true;
+    }
+
+    /**
+     * 单个回合的回调，回合在所有Bot都处理完（或出错）时结束
+     */
+    private class TurnCallback implements MaiBotManager.MessageCallback {
+        String turnId;
+
+        @Override
+        public void onResponses(List<BotResponse> responses) {
+            // 同一帧内到达的回复已合并成一批，且已在主线程上
+            List<ChatMessage> replies = new ArrayList<>(responses.size());
+            for (BotResponse response : responses) {
+                Stream stream = response.reply_id != null ? streams.remove(response.reply_id) : null;
+                ChatMessage reply;
+                if (stream != null) {
+                    // 沿用气泡的ID和时间，界面据此原地替换
+                    reply = new ChatMessage(
+                        stream.bubble.getMessageId(),
+                        response.content,
+                        response.bot_name,
+                        false,
+                        response.color,
+                        stream.bubble.getTimestamp()
+                    );
+                } else {
+                    reply = new ChatMessage(
+                        response.content,
+                        response.bot_name,
+                        false,
+                        response.color
+                    );
+                }
+                historyStore.save(reply);
+                replies.add(reply);
+            }
+            emit(c -> c.onReplies(replies));
+        }
+
+        @Override
+        public void onDelta(BotDelta delta) {
+            Stream stream = streams.get(delta.reply_id);
+            if (stream == null) {
+                if (delta.content.isEmpty()) return;
+
+                // 回复的第一段增量：新建一个气泡，之后的增量都追加到这里
+                stream = new Stream(new ChatMessage(delta.content, delta.bot_name, false, delta.color),
+                        turnId, delta.bot_id);
+                streams.put(delta.reply_id, stream);
+                if (client != null) {
+                    client.onStreamStarted(stream.bubble);
+                }
+                return;
+            }
+
+            if (delta.reset) {
+                stream.text.setLength(0);
+            }
+            stream.text.append(delta.content);
+            // 未连接时不缓存增量，attach 时按累积的文本恢复气泡
+            if (client != null) {
+                client.onStreamDelta(stream.bubble.getMessageId(), delta.content, delta.reset);
+            }
+        }
+
+        @Override
+        public void onBotFinished(String botId, int remainingBots) {
+            // 最终回复在完成之前送达，此时还在的是没有最终内容的回复
+            dropStreams(turnId, botId);
+            if (remainingBots == 0) {
+                finish();
+            } else if (turnRemaining.containsKey(turnId)) {
+                turnRemaining.put(turnId, remainingBots);
+                notifyTurnStatus();
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            emitSystemMessage("错误: " + error);
+            emit(c -> c.onToast("发送失败: " + error));
+            finish();
+        }
+
+        private void finish() {
+            dropStreams(turnId, null);
+            if (turnId != null && turnRemaining.remove(turnId) != null) {
+                turnQueue.onTurnFinished();
+                notifyTurnStatus();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.maibot.multichat;
+
+import android.content.SharedPreferences;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 设置页保存的Bot引擎设置的快照，用于在设置变化时只应用变动的部分
+ *
+ * 阵容按Bot ID（由名字决定）比较：名字、人设和颜色都没变的Bot保留（连同已加载的状态和聊天记录），
+ * 其余的先移除再按新设置加入，因此在阵容任意位置增删Bot时只影响增删的那几个。
+ */
+final class BotSettings {
+    // 偏好项名称与默认值
+    static final String PREF_BACKEND = "backend";
+    static final String PREF_API_KEY = "api_key";
+    static final String PREF_BASE_URL = "base_url";
+    static final String PREF_MODEL_NAME = "model_name";
+    static final String DEFAULT_BASE_URL = "https://api.deepseek.com";
+    static final String DEFAULT_MODEL_NAME = "deepseek-chat";
+
+    String backend;
+    String apiKey;
+    String baseUrl;
+    String modelName;
+    LlmRateLimiter.Config limits;
+    List<BotInfo> roster;
+    int maxFanOut;
+
+    /**
+     * 两次设置之间的差异
+     */
+    static final class Diff {
+        boolean backendChanged;
+        boolean llmChanged;      // API Key、地址、模型或限流参数
+        boolean fanOutChanged;
+        final List<BotInfo> addedBots = new ArrayList<>();
+        final List<BotInfo> removedBots = new ArrayList<>();
+
+        boolean rosterChanged() {
+            return !addedBots.isEmpty() || !removedBots.isEmpty();
+        }
+
+        boolean isEmpty() {
+            return !backendChanged && !llmChanged && !fanOutChanged && !rosterChanged();
+        }
+    }
+
+    static BotSettings fromPrefs(SharedPreferences prefs) {
+        BotSettings settings = new BotSettings();
+        settings.backend = prefs.getString(PREF_BACKEND, SettingsActivity.BACKEND_PYTHON);
+        settings.apiKey = prefs.getString(PREF_API_KEY, "");
+        settings.baseUrl = prefs.getString(PREF_BASE_URL, DEFAULT_BASE_URL);
+        settings.modelName = prefs.getString(PREF_MODEL_NAME, DEFAULT_MODEL_NAME);
+        settings.limits = LlmRateLimiter.Config.fromPrefs(prefs);
+        settings.roster = BotRoster.load(prefs);
+        settings.maxFanOut = BotRoster.maxFanOut(prefs);
+        return settings;
+    }
+
+    Diff diff(BotSettings next) {
+        Diff diff = new Diff();
+        diff.backendChanged = !backend.equals(next.backend);
+        diff.llmChanged = !apiKey.equals(next.apiKey)
+                || !baseUrl.equals(next.baseUrl)
+                || !modelName.equals(next.modelName)
+                || limits.requestsPerSecond != next.limits.requestsPerSecond
+                || limits.maxInFlight != next.limits.maxInFlight;
+        diff.fanOutChanged = maxFanOut != next.maxFanOut;
+
+        Map<String, BotInfo> previous = new LinkedHashMap<>();
+        for (BotInfo bot : roster) {
+            previous.put(bot.id, bot);
+        }
+        for (BotInfo bot : next.roster) {
+            BotInfo old = previous.remove(bot.id);
+            if (old != null && sameBot(old, bot)) continue;
+            if (old != null) {
+                diff.removedBots.add(old);
+            }
+            diff.addedBots.add(bot);
+        }
+        diff.removedBots.addAll(previous.values());
+        return diff;
+    }
+
+    private static boolean sameBot(BotInfo a, BotInfo b) {
+        return Objects.equals(a.name, b.name)
+                && Objects.equals(a.personality, b.personality)
+                && Objects.equals(a.color, b.color);
+    }
+}
@@ -0,0 +1,268 @@
+package com.maibot.multichat;
+
+import android.content.Context;
+import android.util.Log;
+import com.chaquo.python.PyObject;
+import com.chaquo.python.Python;
+import com.chaquo.python.android.AndroidPlatform;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+
+/**
+ * 桥接调度器：一个专用线程驱动 maibot_bridge 的常驻asyncio事件循环，
+ * 发送、轮询、清空等所有桥接调用都作为任务提交到该线程上执行。
+ *
+ * 任务按通道排队，每次只向事件循环投递一个任务，执行完再投递下一个，
+ * 这样排队的任务之间总会让出事件循环，正在生成回复的协程不会被饿死；
+ * 每次取任务时都从优先级最高的非空通道取，慢的维护任务不会挡住回复交付。
+ */
+class BridgeDispatcher {
+    private static final String TAG = "BridgeDispatcher";
+
+    /**
+     * 调度通道，按声明顺序优先级从高到低
+     */
+    enum Lane {
+        DELIVERY(4),     // 回复交付（兜底轮询）
+        SEND(32),        // 发送用户消息
+        MAINTENANCE(16); // 初始化、清空历史等
+
+        final int capacity; // 队列上限，满了之后拒绝新任务
+
+        Lane(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    private static final Object PYTHON_LOCK = new Object();
+
+    private final Context context;
+    private final Object lock = new Object();
+    // 按优先级（声明顺序）遍历
+    private final EnumMap<Lane, ArrayDeque<Runnable>> lanes = new EnumMap<>(Lane.class);
+    private final Runnable drainJob = this::drainOne;
+    private PyObject module;
+    private Exception loadError;
+    private boolean drainScheduled = false;
+    private boolean shutdown = false;
+    private boolean stopWhenDrained = false;
+
+    BridgeDispatcher(Context context) {
+        this.context = context;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * 启动Python环境（可在任意线程重复调用）
+     */
+    static Python startPython(Context context) {
+        synchronized (PYTHON_LOCK) {
+            if (!Python.isStarted()) {
+                Python.start(new AndroidPlatform(context));
+            }
+        }
+        return Python.getInstance();
+    }
+
+    /**
+     * 在后台线程上启动Python并导入桥接模块，之后调度线程加载模块时直接命中缓存
+     */
+    static void prewarm(Context context) {
+        Thread prewarmThread = new Thread(() -> {
+            try {
+                startPython(context).getModule("maibot_bridge");
+            } catch (Exception e) {
+                Log.e(TAG, "预热Python失败", e);
+            }
+        }, "PythonPrewarm");
+        prewarmThread.setDaemon(true);
+        prewarmThread.start();
+    }
+
+    public void start() {
+        Thread loopThread = new Thread(this::runLoop, "MaiBotBridge");
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    private void runLoop() {
+        PyObject bridge;
+        try {
+            // 在专用线程上启动Python并加载模块，避免阻塞调用方
+            bridge = startPython(context).getModule("maibot_bridge");
+        } catch (Exception e) {
+            Log.e(TAG, "加载maibot_bridge失败", e);
+            synchronized (lock) {
+                loadError = e;
+            }
+            // 让已提交的任务在当前线程上执行，由它们自己上报错误
+            drainInline();
+            return;
+        }
+
+        synchronized (lock) {
+            if (shutdown && !stopWhenDrained) {
+                clearLanes();
+                return;
+            }
+            module = bridge;
+            // 循环启动前提交的任务会在循环开始运行后依次执行
+            if (hasPendingJobs()) {
+                drainScheduled = true;
+                bridge.callAttr("submit_job", drainJob);
+            }
+        }
+
+        try {
+            bridge.callAttr("run_event_loop");
+        } catch (Exception e) {
+            Log.e(TAG, "事件循环异常退出", e);
+        }
+    }
+
+    /**
+     * 获取桥接模块，只应在已提交的任务中调用
+     */
+    public PyObject getModule() {
+        synchronized (lock) {
+            if (module == null) {
+                throw new IllegalStateException("maibot_bridge未加载", loadError);
+            }
+            return module;
+        }
+    }
+
+    /**
+     * 把任务提交到指定通道，通道已满或调度器已关闭时返回 false
+     */
+    public boolean submit(Lane lane, Runnable job) {
+        PyObject bridge;
+        synchronized (lock) {
+            if (shutdown) {
+                Log.w(TAG, "调度器已关闭，丢弃任务");
+                return false;
+            }
+            ArrayDeque<Runnable> queue = lanes.get(lane);
+            if (queue.size() >= lane.capacity) {
+                Log.w(TAG, lane + "通道已满，拒绝任务");
+                return false;
+            }
+            queue.add(job);
+
+            if (module == null && loadError == null) {
+                // 模块加载完成后统一投递
+                return true;
+            }
+            if (drainScheduled) {
+                return true;
+            }
+            drainScheduled = module != null;
+            bridge = module;
+        }
+
+        if (bridge == null) {
+            drainInline();
+        } else {
+            bridge.callAttr("submit_job", drainJob);
+        }
+        return true;
+    }
+
+    /**
+     * 在事件循环线程上执行优先级最高的一个任务，还有剩余时再投递下一次
+     */
+    private void drainOne() {
+        Runnable job;
+        synchronized (lock) {
+            job = pollNextJob();
+        }
+
+        if (job != null) {
+            runJob(job);
+        }
+
+        PyObject bridge;
+        boolean stop = false;
+        synchronized (lock) {
+            drainScheduled = hasPendingJobs();
+            if (!drainScheduled && stopWhenDrained) {
+                stopWhenDrained = false;
+                stop = true;
+            }
+            bridge = module;
+        }
+
+        if (stop) {
+            bridge.callAttr("stop_event_loop");
+        } else if (drainScheduled) {
+            bridge.callAttr("submit_job", drainJob);
+        }
+    }
+
+    private void drainInline() {
+        while (true) {
+            Runnable job;
+            synchronized (lock) {
+                job = pollNextJob();
+            }
+            if (job == null) return;
+            runJob(job);
+        }
+    }
+
+    private void runJob(Runnable job) {
+        try {
+            job.run();
+        } catch (Exception e) {
+            Log.e(TAG, "桥接任务执行失败", e);
+        }
+    }
+
+    private Runnable pollNextJob() {
+        for (ArrayDeque<Runnable> queue : lanes.values()) {
+            Runnable job = queue.poll();
+            if (job != null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasPendingJobs() {
+        for (ArrayDeque<Runnable> queue : lanes.values()) {
+            if (!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearLanes() {
+        for (ArrayDeque<Runnable> queue : lanes.values()) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * 停止事件循环，已提交的任务会先执行完
+     */
+    public void shutdown() {
+        PyObject bridge;
+        synchronized (lock) {
+            if (shutdown) return;
+            shutdown = true;
+            if (drainScheduled || (module == null && loadError == null && hasPendingJobs())) {
+                // 由最后一次投递的任务负责停止循环
+                stopWhenDrained = true;
+                return;
+            }
+            bridge = module;
+        }
+
+        if (bridge != null) {
+            bridge.callAttr("stop_event_loop");
+        }
+    }
+}
@@ -1,81 +1,224 @@
 package com.maibot.multichat;
 
-import android.graphics.Color;
-import android.view.Gravity;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
-public class ChatAdapter extends RecyclerView.Adapter<ChatAdapter.MessageViewHolder> {
-    private List<ChatMessage> messages;
-    private SimpleDateFormat timeFormat;
+/**
+ * 聊天列表适配器：以 ChatMessage.messageId 作为稳定ID，
+ * 每次提交的不可变快照在后台线程做差异计算，只刷新实际变化的条目
+ * 提交前先在后台线程预计算渲染状态，绑定时只做字段赋值
+ * 流式回复的增量文本不经过差异计算，直接以payload局部刷新对应气泡
+ */
+public class ChatAdapter extends ListAdapter<ChatMessage, ChatAdapter.MessageViewHolder> {
+    private static final Object PAYLOAD_STREAMING_TEXT = new Object();
 
-    public ChatAdapter(List<ChatMessage> messages) {
-        this.messages = messages;
-        this.timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+    static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK = new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.getMessageId() == newItem.getMessageId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.getContent().equals(newItem.getContent())
+                    && oldItem.getSenderIndex() == newItem.getSenderIndex();
+        }
+    };
+
+    private final MessageRenderer renderer = new MessageRenderer();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LatencyMetrics.Histogram bindTime = LatencyMetrics.histogram("ui.bind");
+    // 正在流式输出的消息ID -> 当前累积的文本（只在主线程访问）
+    private final Map<Long, StringBuilder> streamingText = new HashMap<>();
+    // 已收到最终内容、等待下一次提交生效后再移除的流式消息ID
+    private final Set<Long> finishingStreams = new HashSet<>();
+
+    public ChatAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public void submitList(@Nullable List<ChatMessage> list) {
+        submitList(list, null);
+    }
+
+    @Override
+    public void submitList(@Nullable List<ChatMessage> list, @Nullable Runnable commitCallback) {
+        // 最终内容随本次快照生效后，才移除对应的流式文本，避免中间帧闪回初始内容
+        Runnable callback = commitCallback;
+        if (!finishingStreams.isEmpty()) {
+            List<Long> finished = new ArrayList<>(finishingStreams);
+            callback = () -> {
+                for (Long messageId : finished) {
+                    streamingText.remove(messageId);
+                    finishingStreams.remove(messageId);
+                }
+                if (commitCallback != null) {
+                    commitCallback.run();
+                }
+            };
+        }
+
+        if (list == null) {
+            super.submitList(null, callback);
+            return;
+        }
+
+        // 渲染线程是单线程的，提交顺序与调用顺序一致
+        Runnable committed = callback;
+        renderer.getExecutor().execute(() -> {
+            renderer.prepare(list);
+            mainHandler.post(() -> ChatAdapter.super.submitList(list, committed));
+        });
+    }
+
+    /**
+     * 向流式消息追加增量文本，只局部刷新该气泡的正文
+     */
+    public void appendStreamingText(ChatMessage message, String text, boolean reset) {
+        long messageId = message.getMessageId();
+        StringBuilder builder = streamingText.get(messageId);
+        if (builder == null) {
+            builder = new StringBuilder(message.getContent());
+            streamingText.put(messageId, builder);
+        }
+        if (reset) {
+            builder.setLength(0);
+        }
+        builder.append(text);
+
+        int position = findPosition(messageId);
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position, PAYLOAD_STREAMING_TEXT);
+        }
+    }
+
+    /**
+     * 流式消息已被替换为最终内容，下一次提交生效后停止使用流式文本
+     */
+    public void finishStreaming(long messageId) {
+        if (streamingText.containsKey(messageId)) {
+            finishingStreams.add(messageId);
+        }
+    }
+
+    private int findPosition(long messageId) {
+        // 流式消息总在列表末尾附近，从后往前找
+        List<ChatMessage> current = getCurrentList();
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (current.get(i).getMessageId() == messageId) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return renderer.stateFor(getItem(position)).viewType;
     }
 
     @NonNull
     @Override
     public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        int layout;
+        if (viewType == MessageRenderer.TYPE_USER) {
+            layout = R.layout.item_message_user;
+        } else if (viewType == MessageRenderer.TYPE_SYSTEM) {
+            layout = R.layout.item_message_system;
+        } else {
+            layout = R.layout.item_message_bot;
+        }
+
         View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_message, parent, false);
+                .inflate(layout, parent, false);
         return new MessageViewHolder(view);
     }
 
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        // 第一页消息在创建ViewHolder之前就已预计算，排版参数在此先从一个正文TextView取得
+        View view = LayoutInflater.from(recyclerView.getContext())
+                .inflate(R.layout.item_message_bot, recyclerView, false);
+        TextView messageContent = view.findViewById(R.id.messageContent);
+        renderer.setTextParams(TextViewCompat.getTextMetricsParams(messageContent));
+    }
+
     @Override
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
-        ChatMessage message = messages.get(position);
-        holder.bind(message);
+        long start = System.nanoTime();
+        ChatMessage message = getItem(position);
+        holder.bind(message, renderer.stateFor(message));
+
+        StringBuilder streaming = streamingText.get(message.getMessageId());
+        if (streaming != null) {
+            holder.bindStreamingText(streaming);
+        }
+        bindTime.recordSince(start);
     }
 
     @Override
-    public int getItemCount() {
-        return messages.size();
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_STREAMING_TEXT)) {
+            StringBuilder streaming = streamingText.get(getItem(position).getMessageId());
+            if (streaming != null) {
+                holder.bindStreamingText(streaming);
+                return;
+            }
+        }
+        super.onBindViewHolder(holder, position, payloads);
     }
 
-    class MessageViewHolder extends RecyclerView.ViewHolder {
-        private LinearLayout messageContainer;
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getMessageId();
+    }
+
+    static class MessageViewHolder extends RecyclerView.ViewHolder {
         private TextView senderName;
         private TextView messageContent;
         private TextView messageTime;
 
         public MessageViewHolder(@NonNull View itemView) {
             super(itemView);
-            messageContainer = itemView.findViewById(R.id.messageContainer);
             senderName = itemView.findViewById(R.id.senderName);
             messageContent = itemView.findViewById(R.id.messageContent);
             messageTime = itemView.findViewById(R.id.messageTime);
         }
 
-        public void bind(ChatMessage message) {
+        public void bind(ChatMessage message, MessageRenderer.RenderState state) {
             senderName.setText(message.getSenderName());
-            messageContent.setText(message.getContent());
-            messageTime.setText(timeFormat.format(new Date(message.getTimestamp())));
-
-            try {
-                senderName.setTextColor(Color.parseColor(message.getColor()));
-            } catch (Exception e) {
-                senderName.setTextColor(Color.BLACK);
-            }
+            senderName.setTextColor(state.senderColor);
+            messageTime.setText(state.timeText);
 
-            LinearLayout.LayoutParams params = (LinearLayout.LayoutParams) messageContainer.getLayoutParams();
-            if (message.isUser()) {
-                params.gravity = Gravity.END;
-                messageContainer.setBackgroundResource(R.drawable.bg_message_user);
+            if (state.body instanceof PrecomputedTextCompat) {
+                TextViewCompat.setPrecomputedText(messageContent, (PrecomputedTextCompat) state.body);
             } else {
-                params.gravity = Gravity.START;
-                messageContainer.setBackgroundResource(R.drawable.bg_message_bot);
+                messageContent.setText(state.body);
             }
-            messageContainer.setLayoutParams(params);
+        }
+
+        public void bindStreamingText(CharSequence text) {
+            messageContent.setText(text);
         }
     }
 }
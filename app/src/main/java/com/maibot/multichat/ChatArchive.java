@@ -0,0 +1,150 @@
+package com.maibot.multichat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+
+/**
+ * 聊天记录存档格式：gzip 压缩的 msgpack 记录流
+ *
+ * 文件开头是 [FORMAT, VERSION] 数组，之后每条消息是一个按位置排列的数组
+ * [id, content, sender, isUser, color, timestamp]，直到文件结尾。msgpack 值自带长度，
+ * 读写都是逐条进行的，只占用固定大小的缓冲区，与记录条数无关。
+ * 读取时会跳过记录中多出的字段，便于以后追加字段。
+ */
+public final class ChatArchive {
+    public static final String FILE_EXTENSION = ".msgpack.gz";
+    public static final String MIME_TYPE = "application/gzip";
+
+    private static final String FORMAT = "maibot-chat";
+    private static final int VERSION = 1;
+    private static final int RECORD_FIELDS = 6;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ChatArchive() {}
+
+    /**
+     * 逐条写入消息，close 时写出 gzip 尾部并关闭通道
+     */
+    public static final class Writer implements Closeable {
+        private final MessagePacker packer;
+        private long count = 0;
+
+        public Writer(WritableByteChannel channel) throws IOException {
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) {
+                {
+                    // 最快档：文件比默认档大约两成，写入快一倍多，导出受限于磁盘而不是压缩
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            packer = MessagePack.newDefaultPacker(gzip);
+            packer.packArrayHeader(2);
+            packer.packString(FORMAT);
+            packer.packInt(VERSION);
+        }
+
+        public void write(long id, String content, String sender, boolean isUser, String color, long timestamp)
+                throws IOException {
+            packer.packArrayHeader(RECORD_FIELDS);
+            packer.packLong(id);
+            packer.packString(content);
+            packer.packString(sender);
+            packer.packBoolean(isUser);
+            if (color != null) {
+                packer.packString(color);
+            } else {
+                packer.packNil();
+            }
+            packer.packLong(timestamp);
+            count++;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            packer.close();
+        }
+    }
+
+    /**
+     * 逐条读取消息：每次 next() 返回 true 后，当前记录的字段可从公开字段中读取
+     */
+    public static final class Reader implements Closeable {
+        private final MessageUnpacker unpacker;
+
+        public long id;
+        public String content;
+        public String sender;
+        public boolean isUser;
+        public String color;
+        public long timestamp;
+
+        public Reader(ReadableByteChannel channel) throws IOException {
+            GZIPInputStream gzip;
+            try {
+                gzip = new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+            } catch (IOException e) {
+                channel.close();
+                throw new IOException("不是聊天记录存档", e);
+            }
+            unpacker = MessagePack.newDefaultUnpacker(gzip);
+            try {
+                int fields = unpacker.unpackArrayHeader();
+                if (fields < 2 || !FORMAT.equals(unpacker.unpackString())) {
+                    throw new IOException("不是聊天记录存档");
+                }
+                int version = unpacker.unpackInt();
+                if (version > VERSION) {
+                    throw new IOException("存档版本过新: " + version);
+                }
+                skipFields(fields - 2);
+            } catch (IOException | RuntimeException e) {
+                unpacker.close();
+                throw e instanceof IOException ? (IOException) e : new IOException("不是聊天记录存档", e);
+            }
+        }
+
+        /**
+         * 读取下一条记录，到达文件结尾时返回 false
+         */
+        public boolean next() throws IOException {
+            if (!unpacker.hasNext()) {
+                return false;
+            }
+            int fields = unpacker.unpackArrayHeader();
+            if (fields < RECORD_FIELDS) {
+                throw new IOException("存档记录字段不足: " + fields);
+            }
+            id = unpacker.unpackLong();
+            content = unpacker.unpackString();
+            sender = unpacker.unpackString();
+            isUser = unpacker.unpackBoolean();
+            color = unpacker.tryUnpackNil() ? null : unpacker.unpackString();
+            timestamp = unpacker.unpackLong();
+            skipFields(fields - RECORD_FIELDS);
+            return true;
+        }
+
+        private void skipFields(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                unpacker.skipValue();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            unpacker.close();
+        }
+    }
+}
@@ -0,0 +1,651 @@
+package com.maibot.multichat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地聊天记录存储（SQLite）
+ *
+ * 写入先进入内存队列，在后台线程上按批合并到一个事务中提交；
+ * 读取按消息ID分页，与写入在同一线程上执行，总能读到之前提交的消息。
+ * 消息ID随时间单调递增，因此按ID排序即按时间排序。
+ * 全文检索使用内存中的 SearchIndex：打开时在同一线程上分批从库中建立，之后每次提交写入时增量更新；
+ * 查询太短、没有可索引的片段时（例如一两个字母）改为在库中逐条比对。
+ * 导出、导入以 ChatArchive 格式逐批流式读写，每批是一个独立任务，期间的分页读取可以穿插执行。
+ */
+public class ChatHistoryStore extends SQLiteOpenHelper {
+    private static final String TAG = "ChatHistoryStore";
+    private static final String DB_NAME = "chat_history.db";
+    private static final int DB_VERSION = 1;
+    private static final long FLUSH_DELAY_MS = 300; // 写入合并窗口
+    private static final int FLUSH_BATCH_SIZE = 64; // 积压达到该数量时立即提交
+    private static final long FLUSH_RETRY_DELAY_MS = 1000; // 整批提交失败后的首次重试间隔，之后每次加倍
+    private static final int MAX_FLUSH_ATTEMPTS = 3; // 整批连续失败这么多次后改为逐条写入
+    private static final int INDEX_CHUNK_SIZE = 2000; // 建立索引时每批读取的消息数，批间可穿插分页读取
+    private static final int SEARCH_CANDIDATES = 2000; // 检索时最多核对的候选消息数
+    private static final int VERIFY_CHUNK_SIZE = 200;
+    private static final int ARCHIVE_CHUNK_SIZE = 1000; // 导出、导入时每批（每个事务）的消息数
+
+    private static final String TABLE = "messages";
+    private static final String COL_ID = "id";
+    private static final String COL_CONTENT = "content";
+    private static final String COL_SENDER = "sender";
+    private static final String COL_IS_USER = "is_user";
+    private static final String COL_COLOR = "color";
+    private static final String COL_TIMESTAMP = "timestamp";
+    private static final String INSERT_INTO = " INTO " + TABLE + " ("
+            + COL_ID + ", " + COL_CONTENT + ", " + COL_SENDER + ", " + COL_IS_USER + ", "
+            + COL_COLOR + ", " + COL_TIMESTAMP + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static ChatHistoryStore instance;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ChatHistoryStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+    private List<ChatMessage> pendingWrites = new ArrayList<>();
+    private boolean flushScheduled = false;
+    private boolean clearRequested = false; // 下一次提交前先清空表，之后保存的消息不会被清掉
+    // 以下只在 executor 线程上访问
+    private final SearchIndex searchIndex = new SearchIndex();
+    // 建立索引进行到的消息ID，ID不超过它的新写入直接加入索引，其余的留给后续批次；建完后为 Long.MAX_VALUE
+    private long indexedUpTo = 0;
+    private long indexStartNanos;
+    private int indexGeneration = 0; // 重建索引时递增，上一轮尚未执行的批次据此作废
+    private int failedFlushes = 0; // 整批提交连续失败的次数
+
+    public interface PageCallback {
+        /**
+         * 在主线程上回调，消息按时间从旧到新排列
+         */
+        void onPageLoaded(List<ChatMessage> page);
+    }
+
+    public interface ArchiveCallback {
+        /**
+         * 在主线程上回调；count 为导出的条数或新导入的条数（已存在的消息会跳过），error 不为 null 表示中途失败
+         */
+        void onFinished(long count, Exception error);
+    }
+
+    public interface SearchCallback {
+        /**
+         * 在主线程上回调，结果按时间从新到旧排列；complete 为 false 表示索引尚未建完，结果可能不全
+         */
+        void onResults(List<ChatMessage> results, boolean complete);
+    }
+
+    public static synchronized ChatHistoryStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatHistoryStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ChatHistoryStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        executor.execute(() -> {
+            indexStartNanos = System.nanoTime();
+            indexNextChunk(indexGeneration);
+        });
+    }
+
+    /**
+     * 把ID大于 indexedUpTo 的下一批消息加入索引，还有剩余时排队下一批
+     */
+    private void indexNextChunk(int generation) {
+        if (generation != indexGeneration) return;
+
+        int count = 0;
+        long lastId = indexedUpTo;
+        try (Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{COL_ID, COL_CONTENT, COL_SENDER, COL_IS_USER, COL_COLOR, COL_TIMESTAMP},
+                COL_ID + " > ?", new String[]{String.valueOf(indexedUpTo)},
+                null, null, COL_ID + " ASC", String.valueOf(INDEX_CHUNK_SIZE))) {
+            while (cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                int sender = SenderTable.intern(cursor.getString(2), cursor.getString(4), cursor.getInt(3) != 0);
+                searchIndex.add(lastId, cursor.getString(1), sender, cursor.getLong(5));
+                count++;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "建立检索索引失败", e);
+            count = 0;
+        }
+
+        if (count == INDEX_CHUNK_SIZE) {
+            indexedUpTo = lastId;
+            executor.execute(() -> indexNextChunk(generation));
+        } else {
+            indexedUpTo = Long.MAX_VALUE;
+            LatencyMetrics.recordSince("search.build_index", indexStartNanos);
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID + " INTEGER PRIMARY KEY, "
+                + COL_CONTENT + " TEXT NOT NULL, "
+                + COL_SENDER + " TEXT NOT NULL, "
+                + COL_IS_USER + " INTEGER NOT NULL, "
+                + COL_COLOR + " TEXT, "
+                + COL_TIMESTAMP + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_messages_timestamp ON " + TABLE + " (" + COL_TIMESTAMP + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    /**
+     * 保存消息（相同ID的消息会被覆盖），写入会合并后在后台提交
+     */
+    public void save(ChatMessage message) {
+        boolean flushNow;
+        boolean schedule;
+        synchronized (lock) {
+            pendingWrites.add(message);
+            flushNow = pendingWrites.size() >= FLUSH_BATCH_SIZE;
+            schedule = !flushScheduled;
+            flushScheduled = true;
+        }
+
+        if (flushNow) {
+            executor.execute(this::flushPending);
+        } else if (schedule) {
+            executor.schedule(this::flushPending, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即提交积压的写入（异步）
+     */
+    public void flush() {
+        executor.execute(this::flushPending);
+    }
+
+    /**
+     * 清空聊天记录，调用之前保存的消息一并丢弃，之后保存的保留
+     */
+    public void clearAll() {
+        synchronized (lock) {
+            pendingWrites = new ArrayList<>();
+            clearRequested = true;
+        }
+        // 已到期的提交可能排在前面，由它先清空表再写入
+        executor.execute(this::flushPending);
+    }
+
+    /**
+     * 加载最新的一页消息
+     */
+    public void loadLatest(int limit, PageCallback callback) {
+        loadBefore(Long.MAX_VALUE, limit, callback);
+    }
+
+    /**
+     * 加载ID小于 beforeId 的一页消息
+     */
+    public void loadBefore(long beforeId, int limit, PageCallback callback) {
+        loadPage(COL_ID + " < ?", beforeId, COL_ID + " DESC", limit, true, callback);
+    }
+
+    /**
+     * 加载ID大于 afterId 的一页消息
+     */
+    public void loadAfter(long afterId, int limit, PageCallback callback) {
+        loadPage(COL_ID + " > ?", afterId, COL_ID + " ASC", limit, false, callback);
+    }
+
+    /**
+     * 加载以 messageId 为中心的一页消息（用于从检索结果跳转），该消息在页中间
+     */
+    public void loadAround(long messageId, int limit, PageCallback callback) {
+        executor.execute(() -> {
+            flushPending();
+            List<ChatMessage> page = query(COL_ID + " <= ?", messageId, COL_ID + " DESC", limit / 2 + 1);
+            Collections.reverse(page);
+            page.addAll(query(COL_ID + " > ?", messageId, COL_ID + " ASC", limit - page.size()));
+            mainHandler.post(() -> callback.onPageLoaded(page));
+        });
+    }
+
+    private void loadPage(String selection, long boundId, String orderBy, int limit,
+                          boolean reverse, PageCallback callback) {
+        executor.execute(() -> {
+            flushPending();
+            List<ChatMessage> page = query(selection, boundId, orderBy, limit);
+            if (reverse) {
+                Collections.reverse(page);
+            }
+            mainHandler.post(() -> callback.onPageLoaded(page));
+        });
+    }
+
+    private List<ChatMessage> query(String selection, long boundId, String orderBy, int limit) {
+        List<ChatMessage> page = new ArrayList<>();
+        if (limit <= 0) {
+            return page;
+        }
+        try (Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{COL_ID, COL_CONTENT, COL_SENDER, COL_IS_USER, COL_COLOR, COL_TIMESTAMP},
+                selection, new String[]{String.valueOf(boundId)},
+                null, null, orderBy, String.valueOf(limit))) {
+            readMessages(cursor, page);
+        } catch (Exception e) {
+            Log.e(TAG, "加载聊天记录失败", e);
+        }
+        return page;
+    }
+
+    private static void readMessages(Cursor cursor, List<ChatMessage> out) {
+        while (cursor.moveToNext()) {
+            // 发送者字段经 SenderTable 去重，每行读出的字符串不会被消息长期持有
+            out.add(new ChatMessage(
+                    cursor.getLong(0),
+                    cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getInt(3) != 0,
+                    cursor.getString(4),
+                    cursor.getLong(5)));
+        }
+    }
+
+    /**
+     * 全文检索：senderName 为 null 时不限发送者，结果最多 limit 条，从新到旧排列
+     *
+     * 先用索引取出候选，再按原文核对（查询按空白拆成多个关键词，需全部作为字串出现，不区分大小写）。
+     */
+    public void search(String text, String senderName, long fromMillis, long toMillis, int limit,
+                       SearchCallback callback) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            flushPending();
+
+            List<String> keywords = new ArrayList<>();
+            for (String keyword : text.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+                if (!keyword.isEmpty()) {
+                    keywords.add(keyword);
+                }
+            }
+            if (!keywords.isEmpty() && !SearchIndex.isIndexable(text)) {
+                List<ChatMessage> results = scan(keywords, senderName, fromMillis, toMillis, limit);
+                LatencyMetrics.recordSince("search.total", start);
+                mainHandler.post(() -> callback.onResults(results, true));
+                return;
+            }
+
+            SearchIndex.Query query = new SearchIndex.Query();
+            query.text = text;
+            query.senders = senderName != null ? SenderTable.indicesNamed(senderName) : null;
+            query.fromMillis = fromMillis;
+            query.toMillis = toMillis;
+            long indexStart = System.nanoTime();
+            long[] candidates = searchIndex.search(query, SEARCH_CANDIDATES);
+            LatencyMetrics.recordSince("search.index", indexStart);
+
+            List<ChatMessage> results = new ArrayList<>();
+            for (int from = 0; from < candidates.length && results.size() < limit; from += VERIFY_CHUNK_SIZE) {
+                int to = Math.min(candidates.length, from + VERIFY_CHUNK_SIZE);
+                for (ChatMessage message : loadByIds(candidates, from, to)) {
+                    if (containsAll(message.getContent(), keywords) && results.size() < limit) {
+                        results.add(message);
+                    }
+                }
+            }
+
+            boolean complete = indexedUpTo == Long.MAX_VALUE;
+            LatencyMetrics.recordSince("search.total", start);
+            mainHandler.post(() -> callback.onResults(results, complete));
+        });
+    }
+
+    /**
+     * 不经索引在库中逐条比对关键词，从新到旧取最多 limit 条
+     *
+     * LIKE 只对ASCII字母不区分大小写，其它字母需大小写一致；取出后仍按 containsAll 核对，判定与索引检索相同。
+     */
+    private List<ChatMessage> scan(List<String> keywords, String senderName, long fromMillis, long toMillis,
+                                   int limit) {
+        StringBuilder selection = new StringBuilder(COL_TIMESTAMP + " >= ? AND " + COL_TIMESTAMP + " <= ?");
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(fromMillis));
+        args.add(String.valueOf(toMillis));
+        if (senderName != null) {
+            selection.append(" AND ").append(COL_SENDER).append(" = ?");
+            args.add(senderName);
+        }
+        for (String keyword : keywords) {
+            selection.append(" AND ").append(COL_CONTENT).append(" LIKE ? ESCAPE '\\'");
+            args.add("%" + keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+
+        List<ChatMessage> matches = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{COL_ID, COL_CONTENT, COL_SENDER, COL_IS_USER, COL_COLOR, COL_TIMESTAMP},
+                selection.toString(), args.toArray(new String[0]), null, null, COL_ID + " DESC",
+                String.valueOf(limit))) {
+            readMessages(cursor, matches);
+        } catch (Exception e) {
+            Log.e(TAG, "检索聊天记录失败", e);
+        }
+        List<ChatMessage> results = new ArrayList<>(matches.size());
+        for (ChatMessage message : matches) {
+            if (containsAll(message.getContent(), keywords)) {
+                results.add(message);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按ID读取 ids[from, to) 中的消息，从新到旧排列
+     */
+    private List<ChatMessage> loadByIds(long[] ids, int from, int to) {
+        StringBuilder in = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (in.length() > 0) {
+                in.append(',');
+            }
+            in.append(ids[i]);
+        }
+        List<ChatMessage> messages = new ArrayList<>(to - from);
+        try (Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{COL_ID, COL_CONTENT, COL_SENDER, COL_IS_USER, COL_COLOR, COL_TIMESTAMP},
+                COL_ID + " IN (" + in + ")", null, null, null, COL_ID + " DESC", null)) {
+            readMessages(cursor, messages);
+        } catch (Exception e) {
+            Log.e(TAG, "读取检索结果失败", e);
+        }
+        return messages;
+    }
+
+    private static boolean containsAll(String content, List<String> keywords) {
+        String lower = content.toLowerCase(Locale.ROOT);
+        for (String keyword : keywords) {
+            if (!lower.contains(keyword)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按ID顺序把全部聊天记录导出到 channel，完成后关闭 channel
+     */
+    public void exportTo(WritableByteChannel channel, ArchiveCallback callback) {
+        executor.execute(() -> {
+            flushPending();
+            ChatArchive.Writer writer;
+            try {
+                writer = new ChatArchive.Writer(channel);
+            } catch (IOException e) {
+                Log.e(TAG, "导出聊天记录失败", e);
+                closeQuietly(channel);
+                mainHandler.post(() -> callback.onFinished(0, e));
+                return;
+            }
+            exportChunk(writer, Long.MIN_VALUE, System.nanoTime(), callback);
+        });
+    }
+
+    private void exportChunk(ChatArchive.Writer writer, long afterId, long startNanos, ArchiveCallback callback) {
+        int count = 0;
+        long lastId = afterId;
+        try (Cursor cursor = getReadableDatabase().query(TABLE,
+                new String[]{COL_ID, COL_CONTENT, COL_SENDER, COL_IS_USER, COL_COLOR, COL_TIMESTAMP},
+                COL_ID + " > ?", new String[]{String.valueOf(afterId)},
+                null, null, COL_ID + " ASC", String.valueOf(ARCHIVE_CHUNK_SIZE))) {
+            while (cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                writer.write(lastId, cursor.getString(1), cursor.getString(2), cursor.getInt(3) != 0,
+                        cursor.getString(4), cursor.getLong(5));
+                count++;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "导出聊天记录失败", e);
+            closeQuietly(writer);
+            mainHandler.post(() -> callback.onFinished(writer.count(), e));
+            return;
+        }
+
+        if (count == ARCHIVE_CHUNK_SIZE) {
+            long next = lastId;
+            executor.execute(() -> exportChunk(writer, next, startNanos, callback));
+            return;
+        }
+
+        Exception error = null;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.e(TAG, "导出聊天记录失败", e);
+            error = e;
+        }
+        LatencyMetrics.recordSince("archive.export", startNanos);
+        Exception result = error;
+        mainHandler.post(() -> callback.onFinished(writer.count(), result));
+    }
+
+    /**
+     * 从 channel 读取存档并逐批写入，ID已存在的消息保持不变，完成后关闭 channel 并重建检索索引
+     */
+    public void importFrom(ReadableByteChannel channel, ArchiveCallback callback) {
+        executor.execute(() -> {
+            flushPending();
+            ChatArchive.Reader reader;
+            try {
+                reader = new ChatArchive.Reader(channel);
+            } catch (IOException e) {
+                Log.e(TAG, "导入聊天记录失败", e);
+                closeQuietly(channel);
+                mainHandler.post(() -> callback.onFinished(0, e));
+                return;
+            }
+            importChunk(reader, 0, System.nanoTime(), callback);
+        });
+    }
+
+    private void importChunk(ChatArchive.Reader reader, long imported, long startNanos, ArchiveCallback callback) {
+        int read = 0;
+        long inserted = imported;
+        long maxId = Long.MIN_VALUE;
+        Exception error = null;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE" + INSERT_INTO)) {
+            while (read < ARCHIVE_CHUNK_SIZE && reader.next()) {
+                insert.clearBindings();
+                insert.bindLong(1, reader.id);
+                insert.bindString(2, reader.content);
+                insert.bindString(3, reader.sender);
+                insert.bindLong(4, reader.isUser ? 1 : 0);
+                if (reader.color != null) {
+                    insert.bindString(5, reader.color);
+                }
+                insert.bindLong(6, reader.timestamp);
+                if (insert.executeInsert() != -1) {
+                    inserted++;
+                }
+                maxId = Math.max(maxId, reader.id);
+                read++;
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            // 出错的这一批整体回滚，之前提交的批次保留
+            Log.e(TAG, "导入聊天记录失败", e);
+            error = e;
+            inserted = imported;
+        } finally {
+            db.endTransaction();
+        }
+
+        if (error == null && maxId != Long.MIN_VALUE) {
+            ChatMessage.advanceIdsPast(maxId);
+        }
+        if (error == null && read == ARCHIVE_CHUNK_SIZE) {
+            long next = inserted;
+            executor.execute(() -> importChunk(reader, next, startNanos, callback));
+            return;
+        }
+
+        closeQuietly(reader);
+        if (inserted > 0) {
+            // 导入的消息大多早于已有消息，重新按ID顺序建立索引，检索结果才能从新到旧排列
+            rebuildSearchIndex();
+        }
+        LatencyMetrics.recordSince("archive.import", startNanos);
+        long count = inserted;
+        Exception result = error;
+        mainHandler.post(() -> callback.onFinished(count, result));
+    }
+
+    private void rebuildSearchIndex() {
+        searchIndex.clear();
+        indexedUpTo = 0;
+        indexStartNanos = System.nanoTime();
+        indexNextChunk(++indexGeneration);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void flushPending() {
+        List<ChatMessage> batch;
+        boolean clear;
+        synchronized (lock) {
+            batch = pendingWrites;
+            pendingWrites = new ArrayList<>();
+            flushScheduled = false;
+            clear = clearRequested;
+            clearRequested = false;
+        }
+        if (clear) {
+            try {
+                getWritableDatabase().delete(TABLE, null, null);
+            } catch (Exception e) {
+                Log.e(TAG, "清空聊天记录失败", e);
+            }
+            searchIndex.clear();
+            failedFlushes = 0;
+        }
+        if (batch.isEmpty()) return;
+
+        List<ChatMessage> written;
+        if (writeBatch(batch)) {
+            failedFlushes = 0;
+            written = batch;
+        } else if (++failedFlushes < MAX_FLUSH_ATTEMPTS) {
+            // 放回积压队列的最前面，退避后重试；未写入的消息不加入索引，检索不会返回查不到的ID
+            synchronized (lock) {
+                batch.addAll(pendingWrites);
+                pendingWrites = batch;
+                flushScheduled = true;
+            }
+            executor.schedule(this::flushPending,
+                    FLUSH_RETRY_DELAY_MS << (failedFlushes - 1), TimeUnit.MILLISECONDS);
+            return;
+        } else {
+            // 多次整批失败，多半是其中某条消息写不进去：逐条写入，丢弃失败的，不再挡住之后的写入
+            failedFlushes = 0;
+            written = writeEach(batch);
+        }
+
+        for (ChatMessage message : written) {
+            // 建立索引尚未读到的消息留给之后的批次，避免重复加入
+            if (message.getMessageId() <= indexedUpTo) {
+                searchIndex.add(message.getMessageId(), message.getContent(),
+                        message.getSenderIndex(), message.getTimestamp());
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中写入整批消息，返回是否提交成功
+     */
+    private boolean writeBatch(List<ChatMessage> batch) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE" + INSERT_INTO)) {
+                for (ChatMessage message : batch) {
+                    bindMessage(insert, message);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                // 提交发生在这里，提交失败同样抛出
+                db.endTransaction();
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "写入聊天记录失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 逐条写入（每条单独提交），返回写入成功的消息
+     */
+    private List<ChatMessage> writeEach(List<ChatMessage> batch) {
+        List<ChatMessage> written = new ArrayList<>(batch.size());
+        SQLiteStatement insert;
+        try {
+            insert = getWritableDatabase().compileStatement("INSERT OR REPLACE" + INSERT_INTO);
+        } catch (Exception e) {
+            Log.e(TAG, "写入聊天记录失败，丢弃" + batch.size() + "条消息", e);
+            return written;
+        }
+        try {
+            for (ChatMessage message : batch) {
+                try {
+                    bindMessage(insert, message);
+                    insert.executeInsert();
+                    written.add(message);
+                } catch (Exception e) {
+                    Log.e(TAG, "写入消息失败，丢弃 " + message.getMessageId(), e);
+                }
+            }
+        } finally {
+            insert.close();
+        }
+        return written;
+    }
+
+    private static void bindMessage(SQLiteStatement insert, ChatMessage message) {
+        insert.clearBindings();
+        insert.bindLong(1, message.getMessageId());
+        insert.bindString(2, message.getContent());
+        insert.bindString(3, message.getSenderName());
+        insert.bindLong(4, message.isUser() ? 1 : 0);
+        if (message.getColor() != null) {
+            insert.bindString(5, message.getColor());
+        }
+        insert.bindLong(6, message.getTimestamp());
+    }
+}
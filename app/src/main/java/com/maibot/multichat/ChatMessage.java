@@ -1,27 +1,48 @@
 package com.maibot.multichat;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class ChatMessage {
-    private String content;
-    private String senderName;
-    private boolean isUser;
-    private String color;
-    private long timestamp;
-    private String messageId;
+    public static final String SYSTEM_SENDER = "系统";
+    public static final String SYSTEM_COLOR = "#999999";
+
+    // 以毫秒时间戳为种子，保证重启后新分配的ID也不会与之前的重复
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private static final int SENDER_BITS = 16;
+    private static final long SENDER_MASK = (1L << SENDER_BITS) - 1;
+
+    private final long messageId;
+    private final String content;
+    // 低16位为发送者在 SenderTable 中的下标，高48位为毫秒时间戳；
+    // 是否用户、是否系统等标志随发送者身份一起保存，不再逐条存放
+    private final long packed;
+    // 预计算的渲染状态，由 MessageRenderer 在后台线程填充
+    private volatile MessageRenderer.RenderState renderState;
 
     public ChatMessage(String content, String senderName, boolean isUser, String color) {
-        this.content = content;
-        this.senderName = senderName;
-        this.isUser = isUser;
-        this.color = color;
-        this.timestamp = System.currentTimeMillis();
+        this(content, senderName, isUser, color, System.currentTimeMillis());
     }
 
     public ChatMessage(String content, String senderName, boolean isUser, String color, long timestamp) {
+        this(ID_SEQUENCE.incrementAndGet(), content, senderName, isUser, color, timestamp);
+    }
+
+    public ChatMessage(long messageId, String content, String senderName, boolean isUser, String color, long timestamp) {
+        this(messageId, content, SenderTable.intern(senderName, color, isUser), timestamp);
+    }
+
+    /**
+     * 导入外部记录后调用，保证之后新分配的ID都大于 messageId，新消息仍排在导入的消息之后
+     */
+    static void advanceIdsPast(long messageId) {
+        ID_SEQUENCE.accumulateAndGet(messageId, Math::max);
+    }
+
+    ChatMessage(long messageId, String content, int senderIndex, long timestamp) {
+        this.messageId = messageId;
         this.content = content;
-        this.senderName = senderName;
-        this.isUser = isUser;
-        this.color = color;
-        this.timestamp = timestamp;
+        this.packed = (timestamp << SENDER_BITS) | senderIndex;
     }
 
     public String getContent() {
@@ -29,26 +50,42 @@ public class ChatMessage {
     }
 
     public String getSenderName() {
-        return senderName;
+        return getSender().name;
     }
 
     public boolean isUser() {
-        return isUser;
+        return getSender().isUser;
+    }
+
+    public boolean isSystem() {
+        return getSender().isSystem;
     }
 
     public String getColor() {
-        return color;
+        return getSender().color;
     }
 
     public long getTimestamp() {
-        return timestamp;
+        return packed >>> SENDER_BITS;
+    }
+
+    int getSenderIndex() {
+        return (int) (packed & SENDER_MASK);
     }
 
-    public String getMessageId() {
+    SenderTable.Sender getSender() {
+        return SenderTable.get(getSenderIndex());
+    }
+
+    public long getMessageId() {
         return messageId;
     }
 
-    public void setMessageId(String messageId) {
-        this.messageId = messageId;
+    MessageRenderer.RenderState getRenderState() {
+        return renderState;
+    }
+
+    void setRenderState(MessageRenderer.RenderState renderState) {
+        this.renderState = renderState;
     }
 }
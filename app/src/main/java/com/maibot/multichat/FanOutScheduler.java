@@ -0,0 +1,183 @@
+package com.maibot.multichat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 每个回合挑选参与回复的Bot：阵容很大时只让最相关的 K 个Bot回复，其余Bot不收到本回合
+ *
+ * 相关度由三部分组成：
+ * 被点名（消息中出现Bot的名字）的Bot总是优先；
+ * 话题相近，即消息与Bot人设及其最近几条回复的二元组重合度；
+ * 最近刚发过言的Bot更可能接着聊（随回合数衰减）。
+ * 另外给久未被选中的Bot一点加分，分数相同时按阵容顺序。只在主线程上调用。
+ */
+class FanOutScheduler {
+    private static final double MENTION_SCORE = 10;
+    private static final double TOPIC_WEIGHT = 3;
+    private static final double RECENCY_WEIGHT = 2;
+    private static final double RECENCY_HALF_LIFE_TURNS = 2;
+    private static final double IDLE_WEIGHT = 0.5;
+    private static final int REMEMBERED_REPLIES = 3; // 每个Bot参与话题匹配的最近回复条数
+
+    private static final class Profile {
+        final BotInfo bot;
+        final int order;
+        final Set<String> personaTerms;
+        final ArrayDeque<Set<String>> replyTerms = new ArrayDeque<>();
+        long lastSpokeTurn = -1;
+        long lastSelectedTurn = -1;
+
+        Profile(BotInfo bot, int order) {
+            this.bot = bot;
+            this.order = order;
+            this.personaTerms = TextTokenizer.terms(bot.name + " " + (bot.personality != null ? bot.personality : ""));
+        }
+    }
+
+    private static final class Candidate {
+        final Profile profile;
+        final boolean mentioned;
+        final double score;
+
+        Candidate(Profile profile, boolean mentioned, double score) {
+            this.profile = profile;
+            this.mentioned = mentioned;
+            this.score = score;
+        }
+    }
+
+    private final Map<String, Profile> profiles = new LinkedHashMap<>();
+    private long turn = 0;
+
+    void setRoster(List<BotInfo> roster) {
+        profiles.clear();
+        for (BotInfo bot : roster) {
+            profiles.put(bot.id, new Profile(bot, profiles.size()));
+        }
+        turn = 0;
+    }
+
+    /**
+     * 热更新阵容：未变动的Bot保留发言记录，removedIds 中的Bot（包括人设变动后以同一ID重新加入的）从头开始
+     */
+    void updateRoster(List<BotInfo> roster, Set<String> removedIds) {
+        Map<String, Profile> previous = new LinkedHashMap<>(profiles);
+        previous.keySet().removeAll(removedIds);
+        profiles.clear();
+        for (BotInfo bot : roster) {
+            Profile profile = new Profile(bot, profiles.size());
+            Profile old = previous.get(bot.id);
+            if (old != null) {
+                profile.replyTerms.addAll(old.replyTerms);
+                profile.lastSpokeTurn = old.lastSpokeTurn;
+                profile.lastSelectedTurn = old.lastSelectedTurn;
+            }
+            profiles.put(bot.id, profile);
+        }
+    }
+
+    /**
+     * 从 candidates（已就绪的Bot）中挑出最多 maxFanOut 个，按相关度从高到低排列
+     */
+    List<String> select(String message, List<String> candidates, int maxFanOut) {
+        long current = ++turn;
+        int limit = Math.max(1, maxFanOut);
+        if (candidates.size() <= limit) {
+            for (String botId : candidates) {
+                Profile profile = profiles.get(botId);
+                if (profile != null) {
+                    profile.lastSelectedTurn = current;
+                }
+            }
+            return candidates;
+        }
+
+        Set<String> messageTerms = TextTokenizer.terms(message);
+        List<Candidate> ranked = new ArrayList<>(candidates.size());
+        for (String botId : candidates) {
+            Profile profile = profiles.get(botId);
+            if (profile == null) {
+                // 不在阵容中的Bot（例如后端自行创建的）按普通成员对待
+                BotInfo bot = new BotInfo();
+                bot.id = botId;
+                bot.name = botId;
+                profile = new Profile(bot, profiles.size());
+                profiles.put(botId, profile);
+            }
+            boolean mentioned = profile.bot.name != null && !profile.bot.name.isEmpty()
+                    && message.contains(profile.bot.name);
+            ranked.add(new Candidate(profile, mentioned, score(profile, messageTerms, mentioned, current)));
+        }
+        Collections.sort(ranked, (a, b) -> {
+            int byScore = Double.compare(b.score, a.score);
+            return byScore != 0 ? byScore : Integer.compare(a.profile.order, b.profile.order);
+        });
+
+        List<String> selected = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            Profile profile = ranked.get(i).profile;
+            profile.lastSelectedTurn = current;
+            selected.add(profile.bot.id);
+        }
+        return selected;
+    }
+
+    private double score(Profile profile, Set<String> messageTerms, boolean mentioned, long current) {
+        double score = mentioned ? MENTION_SCORE : 0;
+
+        if (!messageTerms.isEmpty()) {
+            Set<String> topic = new HashSet<>(profile.personaTerms);
+            for (Set<String> terms : profile.replyTerms) {
+                topic.addAll(terms);
+            }
+            int overlap = 0;
+            for (String term : messageTerms) {
+                if (topic.contains(term)) {
+                    overlap++;
+                }
+            }
+            score += TOPIC_WEIGHT * overlap / Math.sqrt(messageTerms.size());
+        }
+
+        if (profile.lastSpokeTurn >= 0) {
+            double age = current - profile.lastSpokeTurn - 1;
+            score += RECENCY_WEIGHT * Math.pow(0.5, age / RECENCY_HALF_LIFE_TURNS);
+        }
+
+        long idleTurns = profile.lastSelectedTurn < 0 ? current : current - profile.lastSelectedTurn;
+        score += IDLE_WEIGHT * Math.min(1.0, idleTurns / (double) Math.max(1, profiles.size()));
+        return score;
+    }
+
+    /**
+     * 记录Bot的一条回复，用于之后回合的话题和发言时间匹配
+     */
+    void recordReply(String botId, String content) {
+        Profile profile = profiles.get(botId);
+        if (profile == null || content == null) return;
+        profile.lastSpokeTurn = turn;
+        profile.replyTerms.addLast(TextTokenizer.terms(content));
+        while (profile.replyTerms.size() > REMEMBERED_REPLIES) {
+            profile.replyTerms.removeFirst();
+        }
+    }
+
+    /**
+     * 清空聊天记录时一并忘掉各Bot的发言，人设不变
+     */
+    void clear() {
+        for (Profile profile : profiles.values()) {
+            profile.replyTerms.clear();
+            profile.lastSpokeTurn = -1;
+            profile.lastSelectedTurn = -1;
+        }
+        turn = 0;
+    }
+}
@@ -0,0 +1,73 @@
+package com.maibot.multichat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 帧对齐的合并器：任意线程提交的条目会攒到下一帧，在主线程上一次性交付
+ * 同一帧内到达的多条回复只触发一次主线程切换和一次列表刷新
+ */
+class FrameCoalescer<T> implements Choreographer.FrameCallback {
+
+    interface Sink<T> {
+        void onBatch(List<T> batch);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(this);
+    private final Sink<T> sink;
+    private final Object lock = new Object();
+    private ArrayList<T> pending = new ArrayList<>();
+    private boolean scheduled = false;
+
+    FrameCoalescer(Sink<T> sink) {
+        this.sink = sink;
+    }
+
+    public void offer(T item) {
+        boolean schedule;
+        synchronized (lock) {
+            pending.add(item);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+
+        if (schedule) {
+            // Choreographer只能在主线程上注册
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                scheduleFrame.run();
+            } else {
+                mainHandler.post(scheduleFrame);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        List<T> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            scheduled = false;
+        }
+
+        if (!batch.isEmpty()) {
+            sink.onBatch(batch);
+        }
+    }
+
+    /**
+     * 丢弃尚未交付的条目（只能在主线程调用）
+     */
+    public void cancel() {
+        mainHandler.removeCallbacks(scheduleFrame);
+        Choreographer.getInstance().removeFrameCallback(this);
+        synchronized (lock) {
+            pending = new ArrayList<>();
+            scheduled = false;
+        }
+    }
+}
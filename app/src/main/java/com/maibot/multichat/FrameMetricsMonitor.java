@@ -0,0 +1,54 @@
+package com.maibot.multichat;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+/**
+ * 帧耗时监控：通过 FrameMetrics 统计每帧总耗时（ui.frame）并估算掉帧数（ui.frames_dropped）
+ * 回调在单独的线程上执行，不占用主线程
+ */
+class FrameMetricsMonitor implements Window.OnFrameMetricsAvailableListener {
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L; // 按60Hz估算
+
+    private final LatencyMetrics.Histogram frameTime = LatencyMetrics.histogram("ui.frame");
+    private HandlerThread thread;
+    private Window window;
+
+    public void attach(Window window) {
+        if (this.window != null) return;
+
+        thread = new HandlerThread("FrameMetrics");
+        thread.start();
+        this.window = window;
+        window.addOnFrameMetricsAvailableListener(this, new Handler(thread.getLooper()));
+    }
+
+    public void detach() {
+        if (window == null) return;
+
+        try {
+            window.removeOnFrameMetricsAvailableListener(this);
+        } catch (IllegalArgumentException ignored) {
+            // 监听器已随窗口销毁被移除
+        }
+        window = null;
+        thread.quitSafely();
+        thread = null;
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+        // 首帧包含布局初始化，不计入
+        if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) return;
+
+        long total = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        frameTime.record(total);
+
+        long dropped = (total - 1) / FRAME_BUDGET_NANOS + dropCountSinceLastInvocation;
+        if (dropped > 0) {
+            LatencyMetrics.increment("ui.frames_dropped", dropped);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.maibot.multichat;
+
+import java.util.ArrayDeque;
+
+/**
+ * 所有Bot共享的群聊上下文
+ *
+ * 聊天记录随消息到达增量维护：最近的消息原文保留，超出原文预算的旧消息截短后并入摘要，
+ * 摘要也超出预算时丢弃最早的部分。每个回合只生成一次 Snapshot，发给所有Bot的是同一份文本，
+ * 提示词长度不会随聊天变长而增长。只在主线程上调用。
+ */
+public class GroupContext {
+    public static final int DEFAULT_TOKEN_BUDGET = 1200;
+    private static final double SUMMARY_SHARE = 0.25;      // 摘要最多占总预算的比例
+    private static final int SUMMARY_CHARS_PER_MESSAGE = 20; // 摘要中每条旧消息保留的字数
+    private static final int MESSAGE_OVERHEAD_TOKENS = 3;   // 发送者名称、冒号和换行
+
+    /**
+     * 某个回合开始时的上下文，生成后不再变化，可以在任意线程上读取
+     */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot("", 0, 0);
+
+        // 直接放进提示词的文本，没有聊天记录时为空字符串
+        public final String text;
+        public final int tokens;
+        public final int messageCount;
+
+        Snapshot(String text, int tokens, int messageCount) {
+            this.text = text;
+            this.tokens = tokens;
+            this.messageCount = messageCount;
+        }
+
+        public boolean isEmpty() {
+            return messageCount == 0;
+        }
+    }
+
+    private static final class Line {
+        final String text;
+        final int tokens;
+
+        Line(String text) {
+            this.text = text;
+            this.tokens = estimateTokens(text) + MESSAGE_OVERHEAD_TOKENS;
+        }
+    }
+
+    private final int recentBudget;
+    private final int summaryBudget;
+    private final ArrayDeque<Line> recent = new ArrayDeque<>();
+    private final ArrayDeque<Line> summary = new ArrayDeque<>();
+    private int recentTokens = 0;
+    private int summaryTokens = 0;
+    private int omittedCount = 0; // 连摘要都放不下而丢弃的消息数
+    private Snapshot snapshot = Snapshot.EMPTY; // 自上次追加以来没有变化时直接复用
+
+    public GroupContext() {
+        this(DEFAULT_TOKEN_BUDGET);
+    }
+
+    public GroupContext(int tokenBudget) {
+        this.summaryBudget = (int) (tokenBudget * SUMMARY_SHARE);
+        this.recentBudget = tokenBudget - summaryBudget;
+    }
+
+    /**
+     * 追加一条消息（用户消息或Bot的最终回复）
+     */
+    public void append(String sender, String content) {
+        if (content == null || content.trim().isEmpty()) return;
+
+        Line line = new Line(sender + ": " + content.trim());
+        recent.addLast(line);
+        recentTokens += line.tokens;
+        snapshot = null;
+
+        // 保留至少一条原文，即使它本身就超出预算
+        while (recentTokens > recentBudget && recent.size() > 1) {
+            Line old = recent.removeFirst();
+            recentTokens -= old.tokens;
+            fold(old);
+        }
+    }
+
+    /**
+     * 旧消息截短后并入摘要
+     */
+    private void fold(Line old) {
+        String text = old.text;
+        int limit = text.indexOf(": ") + 2 + SUMMARY_CHARS_PER_MESSAGE;
+        if (text.length() > limit) {
+            text = text.substring(0, limit) + "…";
+        }
+        Line shortened = new Line(text);
+        summary.addLast(shortened);
+        summaryTokens += shortened.tokens;
+
+        while (summaryTokens > summaryBudget && !summary.isEmpty()) {
+            summaryTokens -= summary.removeFirst().tokens;
+            omittedCount++;
+        }
+    }
+
+    /**
+     * 本回合的上下文，需在追加本回合的用户消息之前调用
+     */
+    public Snapshot snapshot() {
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        long start = System.nanoTime();
+        StringBuilder sb = new StringBuilder((recentTokens + summaryTokens) * 2 + 64);
+        if (omittedCount > 0 || !summary.isEmpty()) {
+            sb.append("【更早的聊天（节选）】");
+            if (omittedCount > 0) {
+                sb.append("（另有").append(omittedCount).append("条更早的消息已省略）");
+            }
+            sb.append('\n');
+            for (Line line : summary) {
+                sb.append(line.text).append('\n');
+            }
+        }
+        if (!recent.isEmpty()) {
+            sb.append("【最近的聊天记录】\n");
+            for (Line line : recent) {
+                sb.append(line.text).append('\n');
+            }
+        }
+        snapshot = new Snapshot(sb.toString(), recentTokens + summaryTokens, recent.size() + summary.size());
+        LatencyMetrics.recordSince("context.build", start);
+        return snapshot;
+    }
+
+    public void clear() {
+        recent.clear();
+        summary.clear();
+        recentTokens = 0;
+        summaryTokens = 0;
+        omittedCount = 0;
+        snapshot = Snapshot.EMPTY;
+    }
+
+    /**
+     * 粗略估计token数：汉字等非ASCII字符按每字1个，ASCII按每4个字符1个
+     */
+    static int estimateTokens(CharSequence text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return other + (ascii + 3) / 4;
+    }
+}
@@ -0,0 +1,525 @@
+package com.maibot.multichat;
+
+import android.util.Log;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * 纯Java的Bot后端：直接请求 OpenAI 兼容的 /chat/completions 接口，不加载Python
+ *
+ * 人设来自 BotRoster。Bot不单独保留历史，每个回合使用 MaiBotManager
+ * 生成的群聊上下文，所有Bot看到同样的聊天记录（包括其他Bot的回复）。
+ * 阵容中的Bot第一次被选中时才创建回合队列，从未被选中的Bot不占用任何资源。
+ * 所有Bot共用 LlmHttpClient 的连接池，请求经 LlmRateLimiter 放行后发出，回复以SSE流式返回，每段内容作为增量推送。
+ * 同一个Bot按顺序处理回合。
+ */
+public class JavaBotBackend implements BotBackend {
+    private static final String TAG = "JavaBotBackend";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int MAX_PENDING_TURNS = 16;    // 每个Bot积压的回合上限，超过时拒绝发送
+    private static final int MAX_TOKENS = 256;
+    private static final int MAX_RETRIES = 3;
+
+    private final OkHttpClient client;
+    private final Object lock = new Object();
+    private volatile Listener listener;
+    // 阵容，写时复制，只在主线程上替换
+    private volatile Map<String, BotInfo> roster = Collections.emptyMap();
+    // 已被选中过的Bot，由 lock 保护
+    private final Map<String, Bot> bots = new HashMap<>();
+    // LLM接入设置，由 lock 保护，热更新时替换
+    private String endpoint;
+    private String modelName;
+    private LlmRateLimiter.Config limits;
+    private String apiKey;
+    private LlmRateLimiter limiter;
+    private boolean shutdown = false;
+
+    public JavaBotBackend(String baseUrl, String modelName) {
+        this(baseUrl, modelName, new LlmRateLimiter.Config());
+    }
+
+    public JavaBotBackend(String baseUrl, String modelName, LlmRateLimiter.Config limits) {
+        this(baseUrl, modelName, limits, LlmHttpClient.get());
+    }
+
+    /**
+     * 指定HTTP客户端，测试时用于连接本地的模拟服务端
+     */
+    JavaBotBackend(String baseUrl, String modelName, LlmRateLimiter.Config limits, OkHttpClient client) {
+        this.endpoint = chatCompletionsUrl(baseUrl);
+        this.modelName = modelName;
+        this.limits = limits;
+        this.client = client;
+    }
+
+    /**
+     * base_url 可以带或不带 /v1，也可以直接填完整的 /chat/completions 地址
+     */
+    static String chatCompletionsUrl(String baseUrl) {
+        String url = baseUrl.trim();
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url.endsWith("/chat/completions") ? url : url + "/chat/completions";
+    }
+
+    @Override
+    public void initialize(String apiKey, List<BotInfo> roster, Listener listener) {
+        this.listener = listener;
+        synchronized (lock) {
+            this.apiKey = apiKey;
+            this.limiter = LlmRateLimiter.get(endpoint, apiKey, limits);
+        }
+
+        // 不需要加载模型或脚本，阵容中的Bot立即可用；连接在第一次请求时建立
+        Map<String, BotInfo> members = new LinkedHashMap<>();
+        for (BotInfo info : roster) {
+            members.put(info.id, info);
+            listener.onBotReady(info);
+        }
+        this.roster = Collections.unmodifiableMap(members);
+        listener.onInitialized(new ArrayList<>(members.values()));
+    }
+
+    @Override
+    public boolean send(String turnId, String message, GroupContext.Snapshot context, List<String> botIds) {
+        Map<String, BotInfo> available = roster;
+        synchronized (lock) {
+            if (shutdown) {
+                return false;
+            }
+            List<Bot> members = new ArrayList<>(botIds.size());
+            for (String botId : botIds) {
+                Bot bot = bots.get(botId);
+                if (bot == null) {
+                    BotInfo info = available.get(botId);
+                    if (info == null) {
+                        continue;
+                    }
+                    bot = new Bot(info);
+                    bots.put(botId, bot);
+                }
+                if (bot.queue.size() >= MAX_PENDING_TURNS) {
+                    return false;
+                }
+                members.add(bot);
+            }
+            BotTurn turn = new BotTurn(turnId, message, context);
+            for (Bot bot : members) {
+                bot.queue.add(turn);
+                if (bot.call == null) {
+                    startNext(bot);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 取出Bot的下一个回合并发起请求，调用方需持有 lock
+     */
+    private void startNext(Bot bot) {
+        BotTurn turn = bot.queue.poll();
+        if (turn == null || shutdown) {
+            bot.call = null;
+            return;
+        }
+
+        JsonArray messages = new JsonArray();
+        messages.add(message("system", systemPrompt(bot)));
+        if (!turn.context.isEmpty()) {
+            messages.add(message("system", "以下是群聊中之前的聊天记录，供你参考：\n" + turn.context.text));
+        }
+        messages.add(message("user", turn.message));
+
+        JsonObject body = new JsonObject();
+        body.addProperty("model", modelName);
+        body.add("messages", messages);
+        body.addProperty("stream", true);
+        body.addProperty("max_tokens", MAX_TOKENS);
+
+        Request request = new Request.Builder()
+                .url(endpoint)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Accept", "text/event-stream")
+                .post(RequestBody.create(body.toString(), JSON))
+                .build();
+        bot.current = turn;
+        execute(bot, turn, request, 0, 0);
+    }
+
+    /**
+     * 经限流器放行后发出请求，调用方需持有 lock
+     *
+     * Call 在排队前就创建并记在 bot.call 上，排队期间取消回合也能通过它生效。
+     */
+    private void execute(Bot bot, BotTurn turn, Request request, int attempt, long delayMs) {
+        Call call = client.newCall(request);
+        bot.call = call;
+        StreamCallback callback = new StreamCallback(bot, turn, request, attempt);
+        limiter.acquire(bot.info.id, delayMs, permit -> {
+            callback.permit = permit;
+            if (call.isCanceled()) {
+                callback.onFailure(call, new IOException("Canceled"));
+            } else {
+                call.enqueue(callback);
+            }
+        });
+    }
+
+    private static String systemPrompt(Bot bot) {
+        return "你是" + bot.info.name + "，" + bot.info.personality + "。"
+                + "你正在一个群聊里和用户以及其他几个AI朋友聊天，请保持自己的性格，"
+                + "像真人聊天一样简短自然地回复，一般不超过50字，不要加上自己的名字前缀。";
+    }
+
+    private static JsonObject message(String role, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", role);
+        message.addProperty("content", content);
+        return message;
+    }
+
+    /**
+     * 读取一个Bot对一个回合的SSE流，结束后开始该Bot的下一个回合
+     *
+     * 429、5xx和尚未收到内容时的网络错误会退避后重试，429还会让同一个Key的所有请求一起暂停。
+     */
+    private class StreamCallback implements Callback {
+        private final Bot bot;
+        private final BotTurn turn;
+        private final Request request;
+        private final int attempt;
+        private final String replyId;
+        private boolean streamed = false;
+        LlmRateLimiter.Permit permit; // 放行后才设置，在回调之前
+
+        StreamCallback(Bot bot, BotTurn turn, Request request, int attempt) {
+            this.bot = bot;
+            this.turn = turn;
+            this.request = request;
+            this.attempt = attempt;
+            this.replyId = turn.turnId + "_" + bot.info.id;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            permit.release();
+            if (call.isCanceled()) {
+                finish(call, null, null);
+                return;
+            }
+            Log.e(TAG, bot.info.name + " 请求失败", e);
+            if (!retry(call, -1)) {
+                finish(call, null, null);
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            String reply = null;
+            String error = null;
+            try (ResponseBody body = response.body()) {
+                int code = response.code();
+                if (code == 429 || code >= 500) {
+                    Log.w(TAG, bot.info.name + " 请求被限流或服务端出错: HTTP " + code);
+                    long retryAfterMs = retryAfterMs(response);
+                    if (code == 429) {
+                        permit.throttle(LlmRateLimiter.backoffDelayMs(attempt, retryAfterMs));
+                    } else {
+                        permit.release();
+                    }
+                    if (retry(call, retryAfterMs)) {
+                        return;
+                    }
+                    error = code == 429 ? "请求过于频繁，已达到API的限流上限 (HTTP 429)" : null;
+                } else if (!response.isSuccessful()) {
+                    permit.release();
+                    Log.e(TAG, bot.info.name + " 请求失败: HTTP " + code + " " + body.string());
+                    if (code == 401 || code == 403) {
+                        // 配置问题会让所有Bot都失败，需要告诉用户
+                        error = "API Key无效或无权访问该模型 (HTTP " + code + ")";
+                    }
+                } else {
+                    try {
+                        reply = readStream(body.source());
+                    } finally {
+                        permit.release();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!call.isCanceled()) {
+                    Log.e(TAG, bot.info.name + " 读取回复失败", e);
+                    if (!streamed && retry(call, -1)) {
+                        return;
+                    }
+                }
+            }
+            finish(call, reply, error);
+        }
+
+        /**
+         * 退避后重新排队发送同一个请求，回合已取消或重试次数用完时返回 false
+         */
+        private boolean retry(Call call, long retryAfterMs) {
+            if (attempt >= MAX_RETRIES) {
+                return false;
+            }
+            synchronized (lock) {
+                if (call.isCanceled() || bot.call != call || shutdown) {
+                    return false;
+                }
+                execute(bot, turn, request, attempt + 1, LlmRateLimiter.backoffDelayMs(attempt, retryAfterMs));
+            }
+            return true;
+        }
+
+        /**
+         * 逐行解析 "data: {...}"，直到 "data: [DONE]" 或连接关闭，返回完整回复
+         */
+        private String readStream(BufferedSource source) throws IOException {
+            StringBuilder content = new StringBuilder();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue; // 空行、注释和 event/id 字段
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                String piece = deltaContent(data);
+                if (piece == null || piece.isEmpty()) {
+                    continue;
+                }
+                content.append(piece);
+                streamed = true;
+
+                BotDelta delta = new BotDelta();
+                delta.bot_id = bot.info.id;
+                delta.bot_name = bot.info.name;
+                delta.color = bot.info.color;
+                delta.reply_id = replyId;
+                delta.turn_id = turn.turnId;
+                delta.content = piece;
+                listener.onDelta(delta);
+            }
+            return content.toString().trim();
+        }
+
+        private void finish(Call call, String reply, String error) {
+            Listener target = listener;
+            if (!call.isCanceled() && target != null) {
+                if (error != null && turn.claimErrorReport()) {
+                    target.onSendError(turn.turnId, error);
+                }
+                if (reply != null && !reply.isEmpty()) {
+                    BotResponse response = new BotResponse();
+                    response.bot_id = bot.info.id;
+                    response.bot_name = bot.info.name;
+                    response.color = bot.info.color;
+                    response.content = reply;
+                    response.reply_id = replyId;
+                    response.turn_id = turn.turnId;
+                    target.onReply(response);
+                }
+                // 出错的Bot本回合不回复，不影响其他Bot
+                target.onTurnDone(bot.info.id, turn.turnId);
+            }
+
+            synchronized (lock) {
+                if (bot.call == call) {
+                    bot.current = null;
+                    startNext(bot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retry-After 可以是秒数或HTTP日期，没有或无法解析时返回 -1
+     */
+    private static long retryAfterMs(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 取出一段SSE数据中 choices[0].delta.content，格式不符时返回 null
+     */
+    private static String deltaContent(String data) {
+        try {
+            JsonObject chunk = JsonParser.parseString(data).getAsJsonObject();
+            JsonArray choices = chunk.getAsJsonArray("choices");
+            if (choices == null || choices.size() == 0) {
+                return null;
+            }
+            JsonObject delta = choices.get(0).getAsJsonObject().getAsJsonObject("delta");
+            if (delta == null) {
+                return null;
+            }
+            JsonElement content = delta.get("content");
+            return content == null || content.isJsonNull() ? null : content.getAsString();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "无法解析流式数据: " + data);
+            return null;
+        }
+    }
+
+    @Override
+    public void cancel(String turnId) {
+        synchronized (lock) {
+            for (Bot bot : bots.values()) {
+                bot.queue.removeIf(turn -> turn.turnId.equals(turnId));
+                if (bot.current != null && bot.current.turnId.equals(turnId) && bot.call != null) {
+                    // 回调中发现已取消，不再推送，直接开始下一个回合
+                    bot.call.cancel();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clearHistory() {
+        // 历史由 MaiBotManager 的群聊上下文统一维护
+    }
+
+    @Override
+    public void updateLlm(String apiKey, String baseUrl, String modelName, LlmRateLimiter.Config limits) {
+        String endpoint = chatCompletionsUrl(baseUrl);
+        boolean endpointChanged;
+        synchronized (lock) {
+            endpointChanged = !endpoint.equals(this.endpoint);
+            this.endpoint = endpoint;
+            this.modelName = modelName;
+            this.limits = limits;
+            this.apiKey = apiKey;
+            // 新的 Key + 地址换用对应的限流器，已排队的请求仍在原限流器上放行
+            this.limiter = LlmRateLimiter.get(endpoint, apiKey, limits);
+        }
+        if (endpointChanged) {
+            // 旧地址的空闲连接不会再用到
+            client.connectionPool().evictAll();
+        }
+    }
+
+    @Override
+    public void updateRoster(List<BotInfo> added, List<String> removedIds) {
+        Map<String, BotInfo> members = new LinkedHashMap<>(roster);
+        synchronized (lock) {
+            for (String botId : removedIds) {
+                members.remove(botId);
+                Bot bot = bots.remove(botId);
+                if (bot == null) continue;
+                bot.queue.clear();
+                if (bot.call != null) {
+                    // 回调中发现已取消，不再推送
+                    bot.call.cancel();
+                }
+            }
+        }
+        for (BotInfo info : added) {
+            members.put(info.id, info);
+        }
+        roster = Collections.unmodifiableMap(members);
+
+        // 与初始化时一样，新Bot立即可用
+        Listener target = listener;
+        for (BotInfo info : added) {
+            target.onBotReady(info);
+        }
+    }
+
+    @Override
+    public void trimMemory(boolean sleepIdleBots) {
+        // 空闲连接在下次请求时重新建立
+        client.connectionPool().evictAll();
+        if (!sleepIdleBots) return;
+
+        synchronized (lock) {
+            // 空闲Bot只剩人设，下次被选中时在 send 中重新创建
+            bots.values().removeIf(bot -> bot.call == null && bot.queue.isEmpty());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (Bot bot : bots.values()) {
+                bot.queue.clear();
+                if (bot.call != null) {
+                    bot.call.cancel();
+                }
+            }
+        }
+        // 连接池是共用的，不在这里关闭
+    }
+
+    /**
+     * 一个回合，由所有Bot共享
+     */
+    private static class BotTurn {
+        final String turnId;
+        final String message;
+        final GroupContext.Snapshot context;
+        private final AtomicBoolean errorReported = new AtomicBoolean(false);
+
+        BotTurn(String turnId, String message, GroupContext.Snapshot context) {
+            this.turnId = turnId;
+            this.message = message;
+            this.context = context;
+        }
+
+        /**
+         * 同一回合的错误只报告一次
+         */
+        boolean claimErrorReport() {
+            return errorReported.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * 一个Bot的人设和回合队列，除 info 外都由 lock 保护
+     */
+    private static class Bot {
+        final BotInfo info;
+        final ArrayDeque<BotTurn> queue = new ArrayDeque<>();
+        BotTurn current;
+        Call call; // 正在进行的请求，为 null 表示空闲
+
+        Bot(BotInfo info) {
+            this.info = info;
+        }
+    }
+}
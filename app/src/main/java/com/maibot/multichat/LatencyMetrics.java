@@ -0,0 +1,158 @@
+package com.maibot.multichat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟统计：无锁计数器和按2的幂分桶的直方图
+ *
+ * 记录时只有几次原子加法，主线程、事件循环线程上都可以随时调用。
+ * 分位数取所在桶的上界，误差在2倍以内，足够用来定位慢在哪一段。
+ *
+ * 主要指标：
+ * turn.queue_wait 输入到回合发出（含合并等待）；send.accepted 调用 sendMessage 到Python接受；
+ * reply.first_byte / reply.full（及按Bot细分的 .bot_N）从回合发出到首个增量 / 最终回复；
+ * py.* 各桥接函数的调用耗时；decode.* 载荷解码耗时；poll.lag 兜底轮询实际执行相对计划时间的延迟；
+ * ui.bind 单次 onBindViewHolder 耗时；ui.frame 帧耗时，ui.frames_dropped 估算的掉帧数；
+ * memory.trim.stage_N 各档内存压力处理的次数（处理前后的内存占用见 MemoryPressure）；
+ * settings.apply 设置页保存后在主线程上应用变化的耗时（Python端的切换与增删在事件循环上进行，见 py.update_*）。
+ */
+public final class LatencyMetrics {
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private LatencyMetrics() {
+    }
+
+    public static final class Histogram {
+        private static final int BUCKETS = 40; // 第i个桶收录 [2^(i-1), 2^i) 微秒，覆盖到约6天
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        public void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumMicros.add(micros);
+
+            long max;
+            do {
+                max = maxMicros.get();
+            } while (micros > max && !maxMicros.compareAndSet(max, micros));
+        }
+
+        /**
+         * 记录从 startNanos（System.nanoTime）到现在的耗时
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        /**
+         * 估算分位数（微秒），取所在桶的上界
+         */
+        long percentileMicros(double fraction) {
+            long total = count.sum();
+            if (total == 0) return 0;
+
+            long threshold = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= threshold) {
+                    return Math.min(1L << i, maxMicros.get());
+                }
+            }
+            return maxMicros.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sumMicros.reset();
+            maxMicros.set(0);
+        }
+    }
+
+    /**
+     * 获取（或创建）直方图，热点路径上可以缓存返回值
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name, k -> new Histogram());
+        }
+        return histogram;
+    }
+
+    public static void recordSince(String name, long startNanos) {
+        histogram(name).recordSince(startNanos);
+    }
+
+    public static void increment(String name, long delta) {
+        LongAdder counter = counters.get(name);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(name, k -> new LongAdder());
+        }
+        counter.add(delta);
+    }
+
+    public static void reset() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * 生成文本报告，耗时单位为毫秒
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-28s %8s %9s %9s %9s %9s %9s%n",
+                "指标", "次数", "平均", "P50", "P90", "P99", "最大"));
+
+        List<String> names = new ArrayList<>(histograms.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            Histogram h = histograms.get(name);
+            long count = h.count();
+            if (count == 0) continue;
+            sb.append(String.format(Locale.US, "%-28s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    name, count,
+                    h.sumMicros.sum() / 1000.0 / count,
+                    h.percentileMicros(0.50) / 1000.0,
+                    h.percentileMicros(0.90) / 1000.0,
+                    h.percentileMicros(0.99) / 1000.0,
+                    h.maxMicros.get() / 1000.0));
+        }
+
+        List<String> counterNames = new ArrayList<>(counters.keySet());
+        Collections.sort(counterNames);
+        if (!counterNames.isEmpty()) {
+            sb.append('\n');
+            for (String name : counterNames) {
+                sb.append(String.format(Locale.US, "%-28s %8d%n", name, counters.get(name).sum()));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package com.maibot.multichat;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * 所有Bot共用的HTTP客户端
+ *
+ * 同一个 base_url 的请求走同一个连接池：服务端支持HTTP/2时，所有Bot的流式请求复用一条连接多路传输，
+ * 否则退回HTTP/1.1并保留若干条长连接，避免每次请求都重新握手TLS。
+ */
+final class LlmHttpClient {
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS_PER_HOST = 16; // 默认5个，Bot较多时会在本地排队
+
+    private static volatile OkHttpClient client;
+
+    private LlmHttpClient() {
+    }
+
+    static OkHttpClient get() {
+        OkHttpClient result = client;
+        if (result == null) {
+            synchronized (LlmHttpClient.class) {
+                result = client;
+                if (result == null) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+                    result = new OkHttpClient.Builder()
+                            .dispatcher(dispatcher)
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .connectTimeout(15, TimeUnit.SECONDS)
+                            // 流式响应两段数据之间的最长间隔
+                            .readTimeout(60, TimeUnit.SECONDS)
+                            .writeTimeout(15, TimeUnit.SECONDS)
+                            .retryOnConnectionFailure(true)
+                            .build();
+                    client = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,239 @@
+package com.maibot.multichat;
+
+import android.content.SharedPreferences;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 所有LLM请求的准入控制，同一个 API Key + base_url 共用一个限流器
+ *
+ * 请求先按Bot排队，各Bot轮流放行（一个Bot积压再多也不会挤占其他Bot），
+ * 放行时需要令牌桶里有令牌（限制每秒请求数），且进行中的请求数未达上限。
+ * 服务端返回429时整个Key暂停放行，等待时间取 Retry-After 与指数退避中的较大者并加上随机抖动。
+ * 放行回调都在限流器的调度线程上执行，回调中不要做耗时操作。
+ */
+public class LlmRateLimiter {
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 30_000;
+
+    // 偏好项名称与默认值
+    public static final String PREF_REQUESTS_PER_SECOND = "llm_requests_per_second";
+    public static final String PREF_MAX_IN_FLIGHT = "llm_max_in_flight";
+    public static final float DEFAULT_REQUESTS_PER_SECOND = 3f;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static final Map<String, LlmRateLimiter> LIMITERS = new HashMap<>();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LlmRateLimiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Random JITTER = new Random();
+
+    /**
+     * 限流参数
+     */
+    public static class Config {
+        public double requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+        public int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+        public static Config fromPrefs(SharedPreferences prefs) {
+            Config config = new Config();
+            config.requestsPerSecond = prefs.getFloat(PREF_REQUESTS_PER_SECOND, DEFAULT_REQUESTS_PER_SECOND);
+            config.maxInFlight = prefs.getInt(PREF_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT);
+            return config;
+        }
+    }
+
+    /**
+     * 请求获准发出时回调
+     */
+    public interface Admission {
+        void onAdmitted(Permit permit);
+    }
+
+    /**
+     * 一次获准的请求，请求结束后必须调用 release 或 throttle 之一（重复调用无效）
+     */
+    public final class Permit {
+        private boolean released = false;
+
+        public void release() {
+            synchronized (LlmRateLimiter.this) {
+                if (released) return;
+                released = true;
+                inFlight--;
+            }
+            SCHEDULER.execute(LlmRateLimiter.this::pump);
+        }
+
+        /**
+         * 服务端限流（429）：释放本次请求，并让整个Key暂停放行 delayMs
+         */
+        public void throttle(long delayMs) {
+            synchronized (LlmRateLimiter.this) {
+                pausedUntilNanos = Math.max(pausedUntilNanos,
+                        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs));
+            }
+            LatencyMetrics.increment("llm.throttled", 1);
+            release();
+        }
+    }
+
+    private static final class Waiter {
+        final Admission admission;
+        final long enqueuedNanos = System.nanoTime();
+
+        Waiter(Admission admission) {
+            this.admission = admission;
+        }
+    }
+
+    // 以下字段都由 this 保护
+    private double requestsPerSecond;
+    private double bucketCapacity;
+    private int maxInFlight;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = 0;
+    private int inFlight = 0;
+    // 按Bot排队，轮转顺序即 LinkedHashMap 的插入顺序
+    private final LinkedHashMap<String, ArrayDeque<Waiter>> queues = new LinkedHashMap<>();
+    private ScheduledFuture<?> wakeup;
+
+    LlmRateLimiter(Config config) {
+        configure(config);
+        this.tokens = bucketCapacity;
+    }
+
+    /**
+     * 取得某个 API Key + base_url 的限流器，已存在时更新其参数
+     */
+    public static LlmRateLimiter get(String baseUrl, String apiKey, Config config) {
+        String key = baseUrl + "#" + Integer.toHexString(apiKey.hashCode());
+        synchronized (LIMITERS) {
+            LlmRateLimiter limiter = LIMITERS.get(key);
+            if (limiter == null) {
+                limiter = new LlmRateLimiter(config);
+                LIMITERS.put(key, limiter);
+            } else {
+                limiter.configure(config);
+            }
+            return limiter;
+        }
+    }
+
+    public synchronized void configure(Config config) {
+        requestsPerSecond = Math.max(0.1, config.requestsPerSecond);
+        // 允许的突发量等于一秒的请求数，至少为1
+        bucketCapacity = Math.max(1, Math.ceil(requestsPerSecond));
+        maxInFlight = Math.max(1, config.maxInFlight);
+        tokens = Math.min(tokens, bucketCapacity);
+    }
+
+    /**
+     * 为某个Bot排队申请发出一个请求
+     */
+    public void acquire(String botId, Admission admission) {
+        synchronized (this) {
+            ArrayDeque<Waiter> queue = queues.get(botId);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(botId, queue);
+            }
+            queue.add(new Waiter(admission));
+        }
+        SCHEDULER.execute(this::pump);
+    }
+
+    /**
+     * 等待 delayMs 后再排队（用于重试退避）
+     */
+    public void acquire(String botId, long delayMs, Admission admission) {
+        if (delayMs <= 0) {
+            acquire(botId, admission);
+        } else {
+            SCHEDULER.schedule(() -> acquire(botId, admission), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 尽可能多地放行排队的请求，只在调度线程上执行
+     */
+    private void pump() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                if (queues.isEmpty() || inFlight >= maxInFlight) {
+                    return;
+                }
+                long now = System.nanoTime();
+                long waitNanos = pausedUntilNanos - now;
+                if (waitNanos <= 0) {
+                    refill(now);
+                    waitNanos = tokens >= 1 ? 0
+                            : (long) ((1 - tokens) / requestsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                }
+                if (waitNanos > 0) {
+                    scheduleWakeup(waitNanos);
+                    return;
+                }
+
+                tokens -= 1;
+                inFlight++;
+                next = pollFairly();
+            }
+            LatencyMetrics.recordSince("llm.admission_wait", next.enqueuedNanos);
+            next.admission.onAdmitted(new Permit());
+        }
+    }
+
+    /**
+     * 取出轮到的Bot的第一个请求，该Bot还有积压时排到队尾
+     */
+    private Waiter pollFairly() {
+        Map.Entry<String, ArrayDeque<Waiter>> first = queues.entrySet().iterator().next();
+        String botId = first.getKey();
+        ArrayDeque<Waiter> queue = queues.remove(botId);
+        Waiter waiter = queue.poll();
+        if (!queue.isEmpty()) {
+            queues.put(botId, queue);
+        }
+        return waiter;
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(bucketCapacity, tokens + elapsedSeconds * requestsPerSecond);
+        lastRefillNanos = now;
+    }
+
+    private void scheduleWakeup(long delayNanos) {
+        if (wakeup != null && !wakeup.isDone()) {
+            return;
+        }
+        wakeup = SCHEDULER.schedule(this::pump, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 第 attempt 次重试（从0开始）前的等待时间：指数退避取一半固定、一半随机，
+     * 服务端给出 Retry-After（毫秒，没有时传负数）时不短于它，并再加一点抖动，避免各Bot同时重试
+     */
+    public static long backoffDelayMs(int attempt, long retryAfterMs) {
+        long exponential = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt, 16));
+        synchronized (JITTER) {
+            long delay = exponential / 2 + (long) (JITTER.nextDouble() * (exponential / 2));
+            if (retryAfterMs >= 0) {
+                delay = Math.max(delay, retryAfterMs + (long) (JITTER.nextDouble() * BACKOFF_BASE_MS));
+            }
+            return delay;
+        }
+    }
+}
@@ -4,179 +4,490 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
-import com.chaquo.python.android.AndroidPlatform;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
+import androidx.core.os.HandlerCompat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MaiBotManager {
     private static final String TAG = "MaiBotManager";
-    private static final int POLL_INTERVAL_MS = 500; // 轮询间隔500ms
+    private static final int MAX_TRACKED_TURNS = 8; // 只为最近几个回合保留回调，更早回合的迟到回复被丢弃
+    private static final long BOT_TURN_TIMEOUT_MS = 90_000; // Bot超过该时间未报告完成时视为已完成
+    private static final String USER_NAME = "用户";
     
-    private Python python;
-    private PyObject maibotModule;
-    private Gson gson;
-    private ExecutorService executor;
-    private Handler mainHandler;
-    private Handler pollingHandler;
-    private boolean initialized = false;
-    private boolean isPolling = false;
-
-    public static class BotInfo {
-        public String id;
-        public String name;
-        public String color;
-    }
-
-    public static class BotResponse {
-        public String bot_id;
-        public String bot_name;
-        public String color;
-        public String content;
-    }
+    // 以毫秒时间戳为种子，保证重启后分配的回合ID不会与之前的重复
+    private static final AtomicLong TURN_SEQUENCE = new AtomicLong(System.currentTimeMillis() * 1000);
+    
+    private final BotBackend backend;
+    private final Handler mainHandler;
+    // 回复与流式增量共用一个合并器，保证同一回复的增量先于最终消息交付
+    private final FrameCoalescer<Object> eventCoalescer;
+    // 用户消息和已交付的Bot回复，只在主线程上读写
+    private final GroupContext groupContext = new GroupContext();
+    // 为每个回合挑选参与的Bot，只在主线程上访问
+    private final FanOutScheduler scheduler = new FanOutScheduler();
+    private int maxFanOut = Integer.MAX_VALUE;
+    private volatile boolean initialized = false;
+    private volatile List<String> botIds = Collections.emptyList();
+    // 写 botIds 时持有，Bot就绪通知可能来自不同线程
+    private final Object botIdsLock = new Object();
+    private volatile InitCallback initCallback;
 
     public interface InitCallback {
+        /**
+         * 某个Bot初始化完成，此后即可开始聊天（在主线程上回调，先于 onSuccess）
+         */
+        void onBotReady(BotInfo bot);
+
+        /**
+         * 所有Bot初始化结束，bots 为成功初始化的Bot
+         */
         void onSuccess(List<BotInfo> bots);
+
         void onError(String error);
     }
 
     public interface MessageCallback {
-        void onResponse(BotResponse response);
+        /**
+         * 同一帧内到达的回复会合并成一批，在主线程上回调
+         */
+        void onResponses(List<BotResponse> responses);
+
+        /**
+         * 流式回复的增量文本，同一帧内同一回复的增量已合并，在主线程上回调
+         */
+        void onDelta(BotDelta delta);
+
+        /**
+         * 某个Bot处理完了本回合（已回复或决定不回复），remainingBots 为本回合仍在处理的Bot数，
+         * 为0时回合结束。在主线程上回调
+         */
+        void onBotFinished(String botId, int remainingBots);
+
         void onError(String error);
     }
 
-    public MaiBotManager(Context context) {
-        this.gson = new Gson();
-        this.executor = Executors.newSingleThreadExecutor();
-        this.mainHandler = new Handler(Looper.getMainLooper());
-        this.pollingHandler = new Handler(Looper.getMainLooper());
-        
-        // 初始化Python环境
-        if (!Python.isStarted()) {
-            Python.start(new AndroidPlatform(context));
+    /**
+     * 回合的计时起点，用于统计首个增量和最终回复的延迟
+     */
+    private static class TurnTiming {
+        final long startNanos = System.nanoTime();
+        // 已经收到过首个增量（或回复）的Bot
+        final Set<String> firstByteSeen = ConcurrentHashMap.newKeySet();
+
+        void recordFirstByte(String botId) {
+            if (firstByteSeen.add(botId)) {
+                LatencyMetrics.recordSince("reply.first_byte", startNanos);
+                LatencyMetrics.recordSince("reply.first_byte." + botId, startNanos);
+            }
+        }
+
+        void recordFull(String botId) {
+            recordFirstByte(botId);
+            LatencyMetrics.recordSince("reply.full", startNanos);
+            LatencyMetrics.recordSince("reply.full." + botId, startNanos);
         }
-        python = Python.getInstance();
     }
 
-    public void initialize(String apiKey, int botCount, InitCallback callback) {
-        executor.execute(() -> {
-            try {
-                // 加载Python模块
-                maibotModule = python.getModule("maibot_bridge");
-                
-                // 初始化Bot实例
-                boolean success = maibotModule.callAttr("initialize_bots", apiKey, botCount).toBoolean();
-                
-                if (!success) {
-                    mainHandler.post(() -> callback.onError("初始化失败"));
-                    return;
+    /**
+     * Bot处理完某个回合的通知，与回复走同一个合并器，保证排在该回合的回复之后
+     */
+    static class TurnDoneEvent {
+        final String botId;
+        final String turnId;
+
+        TurnDoneEvent(String botId, String turnId) {
+            this.botId = botId;
+            this.turnId = turnId;
+        }
+    }
+
+    /**
+     * 接收后端事件（可能在任意线程上），回复和增量交给合并器，初始化结果切回主线程
+     */
+    class BackendListener implements BotBackend.Listener {
+        @Override
+        public void onBotReady(BotInfo bot) {
+            // 写时复制，Bot就绪通知可能来自不同线程
+            synchronized (botIdsLock) {
+                List<String> ids = new ArrayList<>(botIds);
+                ids.add(bot.id);
+                botIds = Collections.unmodifiableList(ids);
+            }
+            initialized = true;
+
+            InitCallback callback = initCallback;
+            if (callback != null) {
+                mainHandler.post(() -> callback.onBotReady(bot));
+            }
+        }
+
+        @Override
+        public void onInitialized(List<BotInfo> bots) {
+            InitCallback callback = initCallback;
+            if (bots.isEmpty()) {
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onError("没有Bot初始化成功"));
                 }
-                
-                // 获取Bot列表
-                String botListJson = maibotModule.callAttr("get_bot_list").toString();
-                Type listType = new TypeToken<List<BotInfo>>(){}.getType();
-                List<BotInfo> bots = gson.fromJson(botListJson, listType);
-                
-                initialized = true;
-                
-                // 启动消息轮询
-                startMessagePolling();
-                
+                return;
+            }
+
+            List<String> ids = new ArrayList<>(bots.size());
+            for (BotInfo bot : bots) {
+                ids.add(bot.id);
+            }
+            botIds = Collections.unmodifiableList(ids);
+            initialized = true;
+
+            if (callback != null) {
                 mainHandler.post(() -> callback.onSuccess(bots));
-                
-            } catch (Exception e) {
-                Log.e(TAG, "初始化失败", e);
-                mainHandler.post(() -> callback.onError("初始化失败: " + e.getMessage()));
             }
-        });
+        }
+
+        @Override
+        public void onInitError(String error) {
+            InitCallback callback = initCallback;
+            if (callback != null) {
+                mainHandler.post(() -> callback.onError(error));
+            }
+        }
+
+        @Override
+        public void onReply(BotResponse response) {
+            TurnTiming timing = response.turn_id != null ? turnTimings.get(response.turn_id) : null;
+            if (timing != null) {
+                timing.recordFull(response.bot_id);
+            }
+            eventCoalescer.offer(response);
+        }
+
+        @Override
+        public void onDelta(BotDelta delta) {
+            TurnTiming timing = delta.turn_id != null ? turnTimings.get(delta.turn_id) : null;
+            if (timing != null) {
+                timing.recordFirstByte(delta.bot_id);
+            }
+            eventCoalescer.offer(delta);
+        }
+
+        @Override
+        public void onTurnDone(String botId, String turnId) {
+            eventCoalescer.offer(new TurnDoneEvent(botId, turnId));
+        }
+
+        @Override
+        public void onSendError(String turnId, String error) {
+            mainHandler.post(() -> {
+                pendingBots.remove(turnId);
+                turnTimings.remove(turnId);
+                mainHandler.removeCallbacksAndMessages(turnId);
+                MessageCallback callback = turnCallbacks.get(turnId);
+                if (callback != null) {
+                    callback.onError(error);
+                }
+            });
+        }
+    }
+
+    /**
+     * 使用默认的Python后端（完整的MaiBot）
+     */
+    public MaiBotManager(Context context) {
+        this(new PythonBotBackend(context));
+    }
+
+    public MaiBotManager(BotBackend backend) {
+        this.backend = backend;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.eventCoalescer = new FrameCoalescer<>(this::dispatchEvents);
+    }
+
+    /**
+     * 在后台线程上预先启动Python并导入桥接模块，应尽早调用（例如在 Application.onCreate 中）
+     */
+    public static void prewarm(Context context) {
+        PythonBotBackend.prewarm(context);
+    }
+
+    /**
+     * 用内置人设的前 botCount 个初始化
+     */
+    public void initialize(String apiKey, int botCount, InitCallback callback) {
+        initialize(apiKey, BotRoster.defaults(botCount), callback);
     }
 
-    private MessageCallback currentCallback = null;
+    /**
+     * 按给定阵容初始化（需在主线程调用），阵容中的Bot只在被选中回复时才由后端加载
+     */
+    public void initialize(String apiKey, List<BotInfo> roster, InitCallback callback) {
+        this.initCallback = callback;
+        scheduler.setRoster(roster);
+        backend.initialize(apiKey, roster, new BackendListener());
+    }
+
+    /**
+     * 每个回合最多让几个Bot回复，默认不限（所有Bot都参与）。需在主线程调用
+     */
+    public void setMaxFanOut(int maxFanOut) {
+        this.maxFanOut = Math.max(1, maxFanOut);
+    }
+
+    // 回合ID -> 该回合的回调，只在主线程上访问
+    private final Map<String, MessageCallback> turnCallbacks =
+            new LinkedHashMap<String, MessageCallback>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MessageCallback> eldest) {
+                    return size() > MAX_TRACKED_TURNS;
+                }
+            };
+    private String latestTurnId = null;
+    // 回合ID -> 仍在处理该回合的Bot，只在主线程上访问
+    private final Map<String, Set<String>> pendingBots = new LinkedHashMap<>();
+    // 回合ID -> 计时，主线程写入、事件循环线程读取；随 pendingBots 中的条目一起移除
+    private final Map<String, TurnTiming> turnTimings = new ConcurrentHashMap<>();
     
-    public void sendMessage(String message, MessageCallback callback) {
+    /**
+     * 发送一条消息，开启一个新回合（需在主线程调用）
+     *
+     * @return 回合ID，该回合的回复都会交给传入的回调；发送被拒绝时返回null
+     */
+    public String sendMessage(String message, MessageCallback callback) {
         if (!initialized) {
             callback.onError("MaiBot未初始化");
-            return;
+            return null;
+        }
+        if (botIds.isEmpty()) {
+            callback.onError("没有可用的Bot");
+            return null;
+        }
+
+        String turnId = String.valueOf(TURN_SEQUENCE.incrementAndGet());
+        // 先登记计时，推送可能在 send 返回之前就到达
+        turnTimings.put(turnId, new TurnTiming());
+        
+        // 阵容较大时只发给最相关的几个Bot，其余Bot保持休眠
+        List<String> targets = scheduler.select(message, botIds, maxFanOut);
+        // 上下文每个回合只生成一次，所有Bot共用
+        if (!backend.send(turnId, message, groupContext.snapshot(), targets)) {
+            // 发送积压已满，拒绝而不是无限排队
+            turnTimings.remove(turnId);
+            callback.onError("发送过于频繁，请稍后再试");
+            return null;
         }
+        groupContext.append(USER_NAME, message);
+        
+        trackTurn(turnId, targets, callback);
+        return turnId;
+    }
+
+    /**
+     * 登记已发给所有Bot的回合：之后该回合的事件都交给 callback（需在主线程调用）
+     */
+    void trackTurn(String turnId, MessageCallback callback) {
+        trackTurn(turnId, botIds, callback);
+    }
+
+    /**
+     * 登记已发出的回合，等待 targets 中的Bot报告完成（需在主线程调用）
+     */
+    void trackTurn(String turnId, List<String> targets, MessageCallback callback) {
+        turnCallbacks.put(turnId, callback);
+        latestTurnId = turnId;
+        pendingBots.put(turnId, new HashSet<>(targets));
+        // 兜底：Bot没有报告完成（例如退回轮询模式）时超时结束；以回合ID为标记，回合结束时撤销
+        HandlerCompat.postDelayed(mainHandler, () -> expireTurn(turnId), turnId, BOT_TURN_TIMEOUT_MS);
+    }
 
-        this.currentCallback = callback;
+    /**
+     * 取消回合：中止各Bot对该回合的处理及进行中的LLM请求，之后到达的回复不再回调（需在主线程调用）
+     */
+    public void cancel(String turnId) {
+        if (turnId == null || turnCallbacks.remove(turnId) == null) return;
+        pendingBots.remove(turnId);
+        turnTimings.remove(turnId);
+        mainHandler.removeCallbacksAndMessages(turnId);
+        
+        backend.cancel(turnId);
+    }
+    
+    /**
+     * 一帧内属于同一回合的事件
+     */
+    private static class TurnBatch {
+        // 同一回复的增量合并成一次回调
+        final Map<String, BotDelta> deltas = new LinkedHashMap<>();
+        final List<BotResponse> responses = new ArrayList<>();
+    }
+    
+    /**
+     * 把一帧内的事件交给各回合的回调（在主线程上，由合并器调用）
+     */
+    void dispatchEvents(List<Object> batch) {
+        // 按回合分组，每个回合的事件交给发起该回合时的回调
+        Map<String, TurnBatch> turns = new LinkedHashMap<>();
+        List<TurnDoneEvent> turnsDone = new ArrayList<>();
+        for (Object event : batch) {
+            if (event instanceof TurnDoneEvent) {
+                turnsDone.add((TurnDoneEvent) event);
+            } else if (event instanceof BotDelta) {
+                BotDelta delta = (BotDelta) event;
+                TurnBatch turn = turnBatch(turns, delta.turn_id);
+                BotDelta previous = turn.deltas.get(delta.reply_id);
+                turn.deltas.put(delta.reply_id, previous == null ? delta : previous.merge(delta));
+            } else {
+                BotResponse response = (BotResponse) event;
+                turnBatch(turns, response.turn_id).responses.add(response);
+            }
+        }
+        
+        for (Map.Entry<String, TurnBatch> entry : turns.entrySet()) {
+            MessageCallback callback = turnCallbacks.get(entry.getKey());
+            if (callback == null) {
+                // 回合已取消或过旧
+                Log.d(TAG, "丢弃回合 " + entry.getKey() + " 的迟到回复");
+                continue;
+            }
+            
+            TurnBatch turn = entry.getValue();
+            for (BotDelta delta : turn.deltas.values()) {
+                callback.onDelta(delta);
+            }
+            if (!turn.responses.isEmpty()) {
+                for (BotResponse response : turn.responses) {
+                    groupContext.append(response.bot_name, response.content);
+                    scheduler.recordReply(response.bot_id, response.content);
+                }
+                callback.onResponses(turn.responses);
+            }
+        }
         
-        executor.execute(() -> {
-            try {
-                // 调用Python发送消息（异步触发）
-                maibotModule.callAttr("send_message", message);
-                
-                // 消息已发送，回复会通过轮询机制异步返回
-                Log.d(TAG, "消息已发送到MaiBot");
-                
-            } catch (Exception e) {
-                Log.e(TAG, "发送消息失败", e);
-                mainHandler.post(() -> {
-                    if (currentCallback != null) {
-                        currentCallback.onError("发送消息失败: " + e.getMessage());
-                    }
-                });
-            }
-        });
+        for (TurnDoneEvent done : turnsDone) {
+            markBotDone(done.botId, done.turnId);
+        }
     }
     
-    private void startMessagePolling() {
-        if (isPolling) return;
+    /**
+     * Bot处理完一个回合，也意味着它处理完了更早的回合（多条消息可能在同一个周期内一起处理）
+     */
+    private void markBotDone(String botId, String turnId) {
+        long turnSeq = Long.parseLong(turnId);
+        Iterator<Map.Entry<String, Set<String>>> it = pendingBots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Set<String>> entry = it.next();
+            if (Long.parseLong(entry.getKey()) > turnSeq) break;
+            
+            Set<String> bots = entry.getValue();
+            if (!bots.remove(botId)) continue;
+            if (bots.isEmpty()) {
+                it.remove();
+                turnTimings.remove(entry.getKey());
+                mainHandler.removeCallbacksAndMessages(entry.getKey());
+            }
+            MessageCallback callback = turnCallbacks.get(entry.getKey());
+            if (callback != null) {
+                callback.onBotFinished(botId, bots.size());
+            }
+        }
+    }
+    
+    private void expireTurn(String turnId) {
+        Set<String> bots = pendingBots.remove(turnId);
+        turnTimings.remove(turnId);
+        if (bots == null) return;
         
-        isPolling = true;
-        pollingHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (!isPolling || !initialized) return;
-                
-                executor.execute(() -> {
-                    try {
-                        // 获取待处理的消息
-                        String messagesJson = maibotModule.callAttr("get_pending_messages").toString();
-                        Type listType = new TypeToken<List<BotResponse>>(){}.getType();
-                        List<BotResponse> responses = gson.fromJson(messagesJson, listType);
-                        
-                        // 处理每个回复
-                        for (BotResponse response : responses) {
-                            mainHandler.post(() -> {
-                                if (currentCallback != null) {
-                                    currentCallback.onResponse(response);
-                                }
-                            });
-                        }
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "轮询消息失败", e);
-                    }
-                });
-                
-                // 继续轮询
-                pollingHandler.postDelayed(this, POLL_INTERVAL_MS);
-            }
-        });
+        Log.w(TAG, "回合 " + turnId + " 超时，仍有 " + bots.size() + " 个Bot未报告完成");
+        MessageCallback callback = turnCallbacks.get(turnId);
+        int remaining = bots.size();
+        for (String botId : bots) {
+            if (callback != null) {
+                callback.onBotFinished(botId, --remaining);
+            }
+        }
     }
     
-    private void stopMessagePolling() {
-        isPolling = false;
-        pollingHandler.removeCallbacksAndMessages(null);
+    private TurnBatch turnBatch(Map<String, TurnBatch> turns, String turnId) {
+        // 没有回合ID的回复（如Bot主动发言）归入最新回合
+        String key = turnId != null ? turnId : latestTurnId;
+        TurnBatch turn = turns.get(key);
+        if (turn == null) {
+            turn = new TurnBatch();
+            turns.put(key, turn);
+        }
+        return turn;
+    }
+    
+    /**
+     * 热更新LLM接入设置，Bot、群聊上下文和进行中的回合都保留，见 BotBackend.updateLlm
+     */
+    public void updateLlm(String apiKey, String baseUrl, String modelName, LlmRateLimiter.Config limits) {
+        if (!initialized) return;
+        backend.updateLlm(apiKey, baseUrl, modelName, limits);
     }
 
-    public void clearHistory() {
+    /**
+     * 热更新阵容（需在主线程调用）：roster 为新阵容，只有 added 和 removedIds 中的Bot变动
+     *
+     * 移除的Bot立即不再被选中，它们在进行中回合里的份额视为已完成；
+     * 新加入的Bot就绪时与初始化时一样通过 InitCallback.onBotReady 报告
+     */
+    public void updateRoster(List<BotInfo> roster, List<BotInfo> added, List<String> removedIds) {
         if (!initialized) return;
-        
-        executor.execute(() -> {
-            try {
-                maibotModule.callAttr("clear_history");
-            } catch (Exception e) {
-                Log.e(TAG, "清空历史失败", e);
+        Set<String> removed = new HashSet<>(removedIds);
+        scheduler.updateRoster(roster, removed);
+        if (!removed.isEmpty()) {
+            synchronized (botIdsLock) {
+                List<String> ids = new ArrayList<>(botIds);
+                ids.removeAll(removed);
+                botIds = Collections.unmodifiableList(ids);
             }
-        });
+            dropFromTurns(removed);
+        }
+        backend.updateRoster(added, removedIds);
+    }
+
+    /**
+     * 已移除的Bot不会再报告完成，直接把它们从进行中的回合里去掉
+     */
+    private void dropFromTurns(Set<String> removed) {
+        Iterator<Map.Entry<String, Set<String>>> it = pendingBots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Set<String>> entry = it.next();
+            Set<String> bots = entry.getValue();
+            MessageCallback callback = turnCallbacks.get(entry.getKey());
+            for (String botId : removed) {
+                if (!bots.remove(botId)) continue;
+                if (bots.isEmpty()) {
+                    it.remove();
+                    turnTimings.remove(entry.getKey());
+                    mainHandler.removeCallbacksAndMessages(entry.getKey());
+                }
+                if (callback != null) {
+                    callback.onBotFinished(botId, bots.size());
+                }
+            }
+        }
+    }
+
+    public void clearHistory() {
+        if (!initialized) return;
+        groupContext.clear();
+        scheduler.clear();
+        backend.clearHistory();
+    }
+
+    /**
+     * 转给后端释放缓存，见 BotBackend.trimMemory
+     */
+    public void trimMemory(boolean sleepIdleBots) {
+        if (!initialized) return;
+        backend.trimMemory(sleepIdleBots);
     }
 
     public boolean isInitialized() {
@@ -184,7 +495,7 @@ public class MaiBotManager {
     }
 
     public void shutdown() {
-        stopMessagePolling();
-        executor.shutdown();
+        eventCoalescer.cancel();
+        backend.shutdown();
     }
 }
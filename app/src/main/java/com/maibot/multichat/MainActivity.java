@@ -1,32 +1,67 @@
 package com.maibot.multichat;
 
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.Toast;
+import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
+    private static final int HISTORY_PAGE_SIZE = 50; // 每页加载的历史消息数
+    private static final int HISTORY_PREFETCH_DISTANCE = 10; // 距窗口边缘多少条时预加载相邻一页
+    private static final int MAX_RESIDENT_MESSAGES = 300; // 内存中最多保留的消息数，超出的屏幕外消息会被淘汰
+    private static final int REQUEST_SEARCH = 1;
+    private static final int REQUEST_EXPORT = 2;
+    private static final int REQUEST_IMPORT = 3;
+
     private RecyclerView recyclerView;
+    private LinearLayoutManager layoutManager;
     private ChatAdapter chatAdapter;
     private EditText inputMessage;
     private ImageButton sendButton;
     private List<ChatMessage> messages;
-    private MaiBotManager botManager;
+    // 气泡的消息ID -> 正在增长的流式回复气泡
+    private final Map<Long, ChatMessage> streamingMessages = new HashMap<>();
+    // Bot引擎在 BotService 中，界面重建时不受影响；绑定完成前为 null
+    private BotService botService;
+    // 最新一页历史加载完成后才连接服务，重放的回复据此与已加载的消息去重
+    private boolean latestHistoryLoaded = false;
+    private boolean serviceAttached = false;
+    private ChatHistoryStore historyStore;
+    private boolean hasOlderHistory = true;
+    // 为 true 表示窗口已离开最新消息，新消息只写入存储，滚动到底部时再分页加载
+    private boolean hasNewerHistory = false;
+    private boolean loadingHistory = false;
+    // 正在加载检索结果所在的一页，期间不做相邻分页
+    private boolean jumpingToMessage = false;
     private SharedPreferences prefs;
-    private boolean isProcessing = false;
-    private boolean isInitialized = false;
+    private final FrameMetricsMonitor frameMonitor = new FrameMetricsMonitor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -37,15 +72,117 @@ public class MainActivity extends AppCompatActivity {
         setSupportActionBar(toolbar);
 
         prefs = getSharedPreferences("maibot_settings", MODE_PRIVATE);
+        historyStore = ChatHistoryStore.getInstance(this);
         
         initViews();
         setupRecyclerView();
         setupListeners();
+        loadLatestHistory();
+        
+        // 先启动再绑定：旋转等重建期间短暂解绑时服务不会被销毁，直到界面真正退出
+        Intent service = new Intent(this, BotService.class);
+        startService(service);
+        bindService(service, serviceConnection, BIND_AUTO_CREATE);
+    }
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            botService = ((BotService.LocalBinder) binder).getService();
+            attachService();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            botService = null;
+            serviceAttached = false;
+        }
+    };
+
+    private void attachService() {
+        if (botService == null || !latestHistoryLoaded || serviceAttached) return;
         
-        botManager = new MaiBotManager(this);
-        checkAndInitialize();
+        serviceAttached = true;
+        botService.attach(serviceClient);
+        if (!botService.isInitialized()) {
+            checkAndInitialize();
+        }
     }
 
+    /**
+     * 接收 BotService 的事件；未连接期间的事件由服务缓存，attach 时重放
+     */
+    private final BotService.Client serviceClient = new BotService.Client() {
+        @Override
+        public void onSystemMessage(ChatMessage message) {
+            addMessage(message);
+        }
+
+        @Override
+        public void onStreamStarted(ChatMessage bubble) {
+            streamingMessages.put(bubble.getMessageId(), bubble);
+            addMessage(bubble);
+        }
+
+        @Override
+        public void onStreamDelta(long messageId, String content, boolean reset) {
+            ChatMessage streaming = streamingMessages.get(messageId);
+            if (streaming != null) {
+                chatAdapter.appendStreamingText(streaming, content, reset);
+            }
+        }
+
+        @Override
+        public void onStreamsDropped(List<Long> messageIds) {
+            boolean removed = false;
+            for (long messageId : messageIds) {
+                ChatMessage streaming = streamingMessages.remove(messageId);
+                if (streaming == null) continue;
+                chatAdapter.finishStreaming(messageId);
+                removed |= messages.remove(streaming);
+            }
+            if (removed) {
+                submitMessages(false);
+            }
+        }
+
+        @Override
+        public void onReplies(List<ChatMessage> replies) {
+            // 批量添加Bot的回复，流式回复的气泡原地替换为最终内容
+            List<ChatMessage> botMessages = new ArrayList<>(replies.size());
+            boolean replaced = false;
+            for (ChatMessage reply : replies) {
+                ChatMessage streaming = streamingMessages.remove(reply.getMessageId());
+                if (streaming == null) {
+                    botMessages.add(reply);
+                    continue;
+                }
+                // 气泡已被淘汰出窗口时回复只在存储中
+                int index = messages.lastIndexOf(streaming);
+                if (index >= 0) {
+                    messages.set(index, reply);
+                    replaced = true;
+                }
+                chatAdapter.finishStreaming(streaming.getMessageId());
+            }
+            // 浏览历史时不追加新回复，但已在窗口中的气泡照样替换
+            boolean added = addMessages(botMessages);
+            if (replaced && !added) {
+                submitMessages(false);
+            }
+        }
+
+        @Override
+        public void onTurnStatusChanged() {
+            updateTypingStatus();
+        }
+
+        @Override
+        public void onToast(String text) {
+            Toast.makeText(MainActivity.this, text, Toast.LENGTH_LONG).show();
+        }
+    };
+
     private void initViews() {
         recyclerView = findViewById(R.id.recyclerView);
         inputMessage = findViewById(R.id.inputMessage);
@@ -54,10 +191,184 @@ public class MainActivity extends AppCompatActivity {
 
     private void setupRecyclerView() {
         messages = new ArrayList<>();
-        chatAdapter = new ChatAdapter(messages);
-        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        chatAdapter = new ChatAdapter();
+        layoutManager = new LinearLayoutManager(this);
         recyclerView.setLayoutManager(layoutManager);
         recyclerView.setAdapter(chatAdapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                // 接近窗口两端时懒加载相邻的一页
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= HISTORY_PREFETCH_DISTANCE) {
+                    loadOlderHistory();
+                } else if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= messages.size() - 1 - HISTORY_PREFETCH_DISTANCE) {
+                    loadNewerHistory();
+                }
+            }
+        });
+    }
+
+    private void loadLatestHistory() {
+        loadingHistory = true;
+        historyStore.loadLatest(HISTORY_PAGE_SIZE, page -> {
+            loadingHistory = false;
+            hasOlderHistory = page.size() == HISTORY_PAGE_SIZE;
+            int count = prependPage(page);
+            if (count > 0) {
+                // 冷启动直接定位到最后一屏，不做滚动动画
+                List<ChatMessage> snapshot = snapshotMessages();
+                chatAdapter.submitList(snapshot, () -> recyclerView.scrollToPosition(snapshot.size() - 1));
+            }
+            latestHistoryLoaded = true;
+            attachService();
+        });
+    }
+
+    private void loadOlderHistory() {
+        if (loadingHistory || jumpingToMessage || !hasOlderHistory || messages.isEmpty()) return;
+        
+        loadingHistory = true;
+        historyStore.loadBefore(messages.get(0).getMessageId(), HISTORY_PAGE_SIZE, page -> {
+            loadingHistory = false;
+            hasOlderHistory = page.size() == HISTORY_PAGE_SIZE;
+            int count = prependPage(page);
+            if (count == 0) return;
+            
+            evictNewest(count);
+            submitMessages(false);
+        });
+    }
+
+    private void loadNewerHistory() {
+        if (loadingHistory || jumpingToMessage || !hasNewerHistory || messages.isEmpty()) return;
+        
+        loadingHistory = true;
+        historyStore.loadAfter(messages.get(messages.size() - 1).getMessageId(), HISTORY_PAGE_SIZE, page -> {
+            loadingHistory = false;
+            if (!hasNewerHistory) return; // 加载期间已跳回最新处
+            hasNewerHistory = page.size() == HISTORY_PAGE_SIZE;
+            messages.addAll(page);
+            evictOldest();
+            submitMessages(false);
+        });
+    }
+
+    /**
+     * 把一页更早的消息放到窗口前面，跳过加载期间已经进入窗口的消息，返回实际插入的条数
+     */
+    private int prependPage(List<ChatMessage> page) {
+        long firstId = messages.isEmpty() ? Long.MAX_VALUE : messages.get(0).getMessageId();
+        int count = 0;
+        while (count < page.size() && page.get(count).getMessageId() < firstId) {
+            count++;
+        }
+        messages.addAll(0, page.subList(0, count));
+        return count;
+    }
+
+    /**
+     * 窗口在尾部增长后淘汰最早的屏幕外消息，需要时再从存储中分页加载
+     */
+    private void evictOldest() {
+        int excess = messages.size() - MAX_RESIDENT_MESSAGES;
+        if (excess <= 0) return;
+        
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int evictable = first == RecyclerView.NO_POSITION
+                ? excess : Math.min(excess, first - HISTORY_PREFETCH_DISTANCE);
+        if (evictable <= 0) return;
+        
+        messages.subList(0, evictable).clear();
+        hasOlderHistory = true;
+    }
+
+    /**
+     * 在窗口前面插入 prepended 条消息后，淘汰最新的屏幕外消息
+     */
+    private void evictNewest(int prepended) {
+        int excess = messages.size() - MAX_RESIDENT_MESSAGES;
+        if (excess <= 0) return;
+        
+        // 可见位置还是插入前的，需要加上插入的条数
+        int last = layoutManager.findLastVisibleItemPosition();
+        int keep = last == RecyclerView.NO_POSITION
+                ? MAX_RESIDENT_MESSAGES : last + prepended + HISTORY_PREFETCH_DISTANCE + 1;
+        int evictable = Math.min(excess, messages.size() - keep);
+        if (evictable <= 0) return;
+        
+        messages.subList(messages.size() - evictable, messages.size()).clear();
+        hasNewerHistory = true;
+    }
+
+    /**
+     * 内存紧张时把常驻窗口缩小到可见范围附近，移出的消息需要时再从存储中分页加载
+     */
+    private void shrinkMessageWindow() {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || messages.isEmpty()) return;
+        
+        int keepFrom = Math.max(0, first - HISTORY_PREFETCH_DISTANCE);
+        // 停在最新处时保留到末尾，正在流式输出的气泡和新到的消息不受影响
+        int keepTo = hasNewerHistory
+                ? Math.min(messages.size(), last + HISTORY_PREFETCH_DISTANCE + 1) : messages.size();
+        if (keepFrom == 0 && keepTo == messages.size()) return;
+        
+        if (keepTo < messages.size()) {
+            messages.subList(keepTo, messages.size()).clear();
+        }
+        if (keepFrom > 0) {
+            messages.subList(0, keepFrom).clear();
+            hasOlderHistory = true;
+        }
+        submitMessages(false);
+    }
+
+    /**
+     * 窗口不在最新消息处时，丢弃当前窗口并重新加载最新一页
+     */
+    private void jumpToLatest() {
+        if (!hasNewerHistory) return;
+        
+        messages.clear();
+        hasNewerHistory = false;
+        loadLatestHistory();
+    }
+
+    /**
+     * 跳转到检索到的消息：已在窗口中时直接滚动过去，否则把窗口换成以它为中心的一页
+     */
+    private void jumpToMessage(long messageId) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).getMessageId() == messageId) {
+                scrollToHit(i);
+                return;
+            }
+        }
+
+        jumpingToMessage = true;
+        historyStore.loadAround(messageId, HISTORY_PAGE_SIZE, page -> {
+            jumpingToMessage = false;
+            if (page.isEmpty()) return; // 消息已被清空
+
+            messages.clear();
+            messages.addAll(page);
+            hasOlderHistory = true;
+            hasNewerHistory = true;
+            List<ChatMessage> snapshot = snapshotMessages();
+            int index = 0;
+            while (index < snapshot.size() - 1 && snapshot.get(index).getMessageId() < messageId) {
+                index++;
+            }
+            int target = index;
+            chatAdapter.submitList(snapshot, () -> scrollToHit(target));
+        });
+    }
+
+    private void scrollToHit(int position) {
+        // 放在屏幕上部三分之一处，上下文都能看到
+        layoutManager.scrollToPositionWithOffset(position, recyclerView.getHeight() / 3);
     }
 
     private void setupListeners() {
@@ -69,13 +380,23 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    private boolean isSyntheticBackend() {
+        return SettingsActivity.BACKEND_SYNTHETIC.equals(
+                prefs.getString("backend", SettingsActivity.BACKEND_PYTHON));
+    }
+
+    /**
+     * 是否已具备初始化条件（模拟Bot不需要API Key）
+     */
+    private boolean isConfigured() {
+        return isSyntheticBackend() || !prefs.getString("api_key", "").isEmpty();
+    }
+
     private void checkAndInitialize() {
-        String apiKey = prefs.getString("api_key", "");
-        
-        if (apiKey.isEmpty()) {
+        if (!isConfigured()) {
             showWelcomeDialog();
         } else {
-            initializeBots();
+            botService.initializeIfNeeded();
         }
     }
 
@@ -87,7 +408,7 @@ public class MainActivity extends AppCompatActivity {
                        "1. 访问 https://platform.deepseek.com\n" +
                        "2. 注册并获取API Key\n" +
                        "3. 在设置中填入API Key\n" +
-                       "4. 选择Bot数量（1-5个）")
+                       "4. 按需编辑Bot阵容和每回合回复人数")
             .setPositiveButton("去设置", (dialog, which) -> {
                 startActivity(new Intent(MainActivity.this, SettingsActivity.class));
             })
@@ -96,39 +417,8 @@ public class MainActivity extends AppCompatActivity {
             .show();
     }
 
-    private void initializeBots() {
-        String apiKey = prefs.getString("api_key", "");
-        int botCount = prefs.getInt("bot_count", 3);
-        
-        addSystemMessage("正在初始化" + botCount + "个AI Bot...");
-        
-        botManager.initialize(apiKey, botCount, new MaiBotManager.InitCallback() {
-            @Override
-            public void onSuccess(List<MaiBotManager.BotInfo> bots) {
-                runOnUiThread(() -> {
-                    isInitialized = true;
-                    StringBuilder botNames = new StringBuilder("群聊成员：");
-                    for (int i = 0; i < bots.size(); i++) {
-                        if (i > 0) botNames.append("、");
-                        botNames.append(bots.get(i).name);
-                    }
-                    addSystemMessage(botNames.toString());
-                    addSystemMessage("初始化完成！开始聊天吧~");
-                });
-            }
-
-            @Override
-            public void onError(String error) {
-                runOnUiThread(() -> {
-                    addSystemMessage("初始化失败: " + error);
-                    Toast.makeText(MainActivity.this, "初始化失败，请检查设置", Toast.LENGTH_LONG).show();
-                });
-            }
-        });
-    }
-
     private void sendMessage() {
-        if (!isInitialized) {
+        if (botService == null || !botService.isInitialized()) {
             Toast.makeText(this, "Bot未初始化，请先配置API Key", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -136,76 +426,91 @@ public class MainActivity extends AppCompatActivity {
         String text = inputMessage.getText().toString().trim();
         if (text.isEmpty()) return;
 
-        if (isProcessing) {
-            Toast.makeText(this, "AI们正在思考中，请稍候...", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        // 显示用户消息
+        // 显示用户消息（正在浏览历史时先回到最新处，用户消息会随最新一页加载出来）
         ChatMessage userMessage = new ChatMessage(text, "我", true, "#000000");
-        addMessage(userMessage);
+        historyStore.save(userMessage);
+        if (hasNewerHistory) {
+            jumpToLatest();
+        } else {
+            addMessage(userMessage);
+        }
         inputMessage.setText("");
 
-        // 显示正在输入状态
-        isProcessing = true;
-        sendButton.setEnabled(false);
-        
-        addSystemMessage("AI们正在思考...");
+        // 输入随时可以提交，连续输入的几条会合并成一个回合
+        botService.submitInput(text);
+    }
 
-        // 调用所有Bot（异步回复）
-        botManager.sendMessage(text, new MaiBotManager.MessageCallback() {
-            @Override
-            public void onResponse(MaiBotManager.BotResponse response) {
-                // 每个Bot的回复会异步到达
-                runOnUiThread(() -> {
-                    // 移除"正在思考"消息（只在第一次回复时）
-                    if (isProcessing && !messages.isEmpty() && 
-                        messages.get(messages.size() - 1).getSenderName().equals("系统")) {
-                        messages.remove(messages.size() - 1);
-                        chatAdapter.notifyItemRemoved(messages.size());
-                        isProcessing = false;
-                        sendButton.setEnabled(true);
-                    }
-                    
-                    // 添加Bot的回复
-                    ChatMessage botMessage = new ChatMessage(
-                        response.content,
-                        response.bot_name,
-                        false,
-                        response.color
-                    );
-                    addMessage(botMessage);
-                });
-            }
+    /**
+     * 在标题栏显示还有多少个Bot在处理，代替列表中的"正在思考"消息
+     */
+    private void updateTypingStatus() {
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar == null || botService == null) return;
+        int busyBots = botService.busyBotCount();
+        if (busyBots > 0) {
+            actionBar.setSubtitle(busyBots + "个AI正在输入...");
+        } else if (botService.hasPendingInput()) {
+            actionBar.setSubtitle("正在等待你说完...");
+        } else {
+            actionBar.setSubtitle(null);
+        }
+    }
 
-            @Override
-            public void onError(String error) {
-                runOnUiThread(() -> {
-                    // 移除"正在思考"消息
-                    if (!messages.isEmpty() && messages.get(messages.size() - 1).getSenderName().equals("系统")) {
-                        messages.remove(messages.size() - 1);
-                        chatAdapter.notifyItemRemoved(messages.size());
-                    }
-                    
-                    addSystemMessage("错误: " + error);
-                    isProcessing = false;
-                    sendButton.setEnabled(true);
-                    
-                    Toast.makeText(MainActivity.this, "发送失败: " + error, Toast.LENGTH_LONG).show();
-                });
+    private void addMessage(ChatMessage message) {
+        addMessages(Collections.singletonList(message));
+    }
+
+    /**
+     * 追加到窗口末尾，返回是否提交了列表
+     */
+    private boolean addMessages(List<ChatMessage> batch) {
+        // 正在浏览历史时不打断，新消息已在存储中，滚动到底部时会分页加载
+        if (batch.isEmpty() || hasNewerHistory) return false;
+        
+        // 重新连接服务时重放的回复可能已随最新一页从存储中加载出来
+        List<ChatMessage> added = new ArrayList<>(batch.size());
+        for (ChatMessage message : batch) {
+            if (!inWindow(message.getMessageId())) {
+                added.add(message);
             }
-        });
+        }
+        if (added.isEmpty()) return false;
+        
+        // 一次提交 + 一次滚动，避免多条回复同时到达时的多次刷新和滚动动画互相打断
+        messages.addAll(added);
+        evictOldest();
+        submitMessages(true);
+        return true;
     }
 
-    private void addMessage(ChatMessage message) {
-        messages.add(message);
-        chatAdapter.notifyItemInserted(messages.size() - 1);
-        recyclerView.smoothScrollToPosition(messages.size() - 1);
+    private boolean inWindow(long messageId) {
+        // 重放的回复都在窗口末尾附近，从后往前找
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getMessageId() == messageId) return true;
+        }
+        return false;
     }
 
-    private void addSystemMessage(String text) {
-        ChatMessage systemMessage = new ChatMessage(text, "系统", false, "#999999");
+    private ChatMessage addSystemMessage(String text) {
+        ChatMessage systemMessage = new ChatMessage(text, ChatMessage.SYSTEM_SENDER, false, ChatMessage.SYSTEM_COLOR);
+        // 与回复一样写入聊天记录，界面重建后随历史记录加载
+        historyStore.save(systemMessage);
         addMessage(systemMessage);
+        return systemMessage;
+    }
+
+    /**
+     * 把当前消息列表的不可变快照提交给适配器，差异在后台线程计算
+     */
+    private void submitMessages(boolean scrollToEnd) {
+        List<ChatMessage> snapshot = snapshotMessages();
+        chatAdapter.submitList(snapshot, scrollToEnd && !snapshot.isEmpty()
+                ? () -> recyclerView.smoothScrollToPosition(snapshot.size() - 1)
+                : null);
+    }
+
+    private List<ChatMessage> snapshotMessages() {
+        return Collections.unmodifiableList(new ArrayList<>(messages));
     }
 
     @Override
@@ -218,9 +523,29 @@ public class MainActivity extends AppCompatActivity {
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
         
-        if (id == R.id.action_settings) {
+        if (id == R.id.action_search) {
+            startActivityForResult(new Intent(this, SearchActivity.class), REQUEST_SEARCH);
+            return true;
+        } else if (id == R.id.action_export) {
+            String time = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType(ChatArchive.MIME_TYPE)
+                    .putExtra(Intent.EXTRA_TITLE, "maibot_chat_" + time + ChatArchive.FILE_EXTENSION);
+            startActivityForResult(intent, REQUEST_EXPORT);
+            return true;
+        } else if (id == R.id.action_import) {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType("*/*");
+            startActivityForResult(intent, REQUEST_IMPORT);
+            return true;
+        } else if (id == R.id.action_settings) {
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
+        } else if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
         } else if (id == R.id.action_clear) {
             clearChat();
             return true;
@@ -235,9 +560,16 @@ public class MainActivity extends AppCompatActivity {
             .setMessage("确定要清空所有聊天记录吗？")
             .setPositiveButton("确定", (dialog, which) -> {
                 messages.clear();
-                chatAdapter.notifyDataSetChanged();
-                if (botManager != null) {
-                    botManager.clearHistory();
+                for (ChatMessage streaming : streamingMessages.values()) {
+                    chatAdapter.finishStreaming(streaming.getMessageId());
+                }
+                streamingMessages.clear();
+                submitMessages(false);
+                historyStore.clearAll();
+                hasOlderHistory = false;
+                hasNewerHistory = false;
+                if (botService != null) {
+                    botService.clearConversation();
                 }
                 addSystemMessage("聊天记录已清空");
             })
@@ -245,21 +577,128 @@ public class MainActivity extends AppCompatActivity {
             .show();
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null) return;
+        
+        if (requestCode == REQUEST_SEARCH) {
+            jumpToMessage(data.getLongExtra(SearchActivity.EXTRA_MESSAGE_ID, -1));
+        } else if (requestCode == REQUEST_EXPORT && data.getData() != null) {
+            exportHistory(data.getData());
+        } else if (requestCode == REQUEST_IMPORT && data.getData() != null) {
+            importHistory(data.getData());
+        }
+    }
+
+    /**
+     * 把全部聊天记录流式导出到用户选择的文件（不经过内存中的消息窗口）
+     */
+    private void exportHistory(Uri uri) {
+        FileChannel channel;
+        try {
+            // "wt" 截断已有内容，覆盖同名文件时不会残留旧数据
+            ParcelFileDescriptor fd = getContentResolver().openFileDescriptor(uri, "wt");
+            channel = new ParcelFileDescriptor.AutoCloseOutputStream(fd).getChannel();
+        } catch (Exception e) {
+            Log.e(TAG, "打开导出文件失败", e);
+            Toast.makeText(this, "导出失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        Toast.makeText(this, "正在导出聊天记录...", Toast.LENGTH_SHORT).show();
+        historyStore.exportTo(channel, (count, error) -> {
+            if (error != null) {
+                Toast.makeText(this, "导出失败: " + error.getMessage(), Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(this, "已导出 " + count + " 条消息", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * 从存档流式导入：记录按批直接写入存储，完成后重新加载最新一页，而不是逐条加入消息列表
+     */
+    private void importHistory(Uri uri) {
+        FileChannel channel;
+        try {
+            ParcelFileDescriptor fd = getContentResolver().openFileDescriptor(uri, "r");
+            channel = new ParcelFileDescriptor.AutoCloseInputStream(fd).getChannel();
+        } catch (Exception e) {
+            Log.e(TAG, "打开导入文件失败", e);
+            Toast.makeText(this, "导入失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        Toast.makeText(this, "正在导入聊天记录...", Toast.LENGTH_SHORT).show();
+        historyStore.importFrom(channel, (count, error) -> {
+            if (error != null) {
+                Toast.makeText(this, "导入中断，已导入 " + count + " 条: " + error.getMessage(),
+                        Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(this, "已导入 " + count + " 条消息", Toast.LENGTH_SHORT).show();
+            }
+            if (count > 0) {
+                reloadHistory();
+            }
+        });
+    }
+
+    /**
+     * 存储中的记录被整体改变后，丢弃当前窗口并重新加载最新一页
+     */
+    private void reloadHistory() {
+        messages.clear();
+        hasOlderHistory = true;
+        hasNewerHistory = false;
+        loadLatestHistory();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        int stage = MemoryPressure.stageFor(level);
+        if (stage == MemoryPressure.NONE) return;
+        
+        // 移出窗口的消息连同预排版的正文一起释放，复用池中的视图需要时再创建；
+        // Bot后端的释放和统计由 BotService 处理
+        shrinkMessageWindow();
+        recyclerView.getRecycledViewPool().clear();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        frameMonitor.attach(getWindow());
         // 从设置返回时检查是否需要重新初始化
-        String apiKey = prefs.getString("api_key", "");
-        if (!apiKey.isEmpty() && !isInitialized) {
-            initializeBots();
+        if (botService != null && isConfigured() && !botService.isInitialized()) {
+            botService.initializeIfNeeded();
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        frameMonitor.detach();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // 进入后台前提交积压的写入
+        historyStore.flush();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (botManager != null) {
-            botManager.shutdown();
+        if (serviceAttached) {
+            botService.detach(serviceClient);
+        }
+        unbindService(serviceConnection);
+        // 旋转等重建时服务继续运行，新的界面重新连接；真正退出时停止服务并关闭引擎
+        if (isFinishing() && !isChangingConfigurations()) {
+            stopService(new Intent(this, BotService.class));
         }
     }
 }
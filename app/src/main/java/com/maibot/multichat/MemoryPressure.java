@@ -0,0 +1,127 @@
+package com.maibot.multichat;
+
+import android.content.ComponentCallbacks2;
+import android.os.Debug;
+import android.util.Log;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存压力分级与内存占用统计
+ *
+ * onTrimMemory 的级别按影响从小到大映射为三档，高档包含低档的处理：
+ * SHRINK_UI 界面不可见或运行中内存偏紧：缩小常驻消息窗口，丢弃复用池中的视图；
+ * RELEASE_CACHES 进入后台或运行中内存不足：Bot后端释放缓存（Python端逐Bot释放后运行 gc.collect()）；
+ * SLEEP_BOTS 即将被杀或运行中内存严重不足：空闲Bot休眠，下次被选中时重新加载。
+ *
+ * 每次处理前后各采样一次Java堆、原生堆和PSS，最近几次的结果附在性能统计报告后面。
+ * 读取PSS要遍历进程的内存映射，耗时几到几十毫秒，只在处理内存压力和查看报告时采样。
+ */
+final class MemoryPressure {
+    private static final String TAG = "MemoryPressure";
+
+    static final int NONE = 0;
+    static final int SHRINK_UI = 1;
+    static final int RELEASE_CACHES = 2;
+    static final int SLEEP_BOTS = 3;
+
+    private static final long AFTER_SAMPLE_DELAY_MS = 2000; // Python端的释放是异步的，稍后再采样
+    private static final int MAX_EVENTS = 10;
+
+    private static final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "MemoryPressure");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ArrayDeque<String> events = new ArrayDeque<>();
+
+    /**
+     * 一次内存占用采样，单位KB
+     */
+    static final class Sample {
+        final long javaHeapKb;
+        final long nativeHeapKb;
+        final long pssKb;
+
+        private Sample(long javaHeapKb, long nativeHeapKb, long pssKb) {
+            this.javaHeapKb = javaHeapKb;
+            this.nativeHeapKb = nativeHeapKb;
+            this.pssKb = pssKb;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Java堆 %.1fMB / 原生堆 %.1fMB / PSS %.1fMB",
+                    javaHeapKb / 1024.0, nativeHeapKb / 1024.0, pssKb / 1024.0);
+        }
+    }
+
+    private MemoryPressure() {}
+
+    static int stageFor(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return SLEEP_BOTS;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return RELEASE_CACHES;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return SHRINK_UI;
+        }
+        return NONE;
+    }
+
+    static Sample sample() {
+        Runtime runtime = Runtime.getRuntime();
+        Debug.MemoryInfo info = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(info);
+        return new Sample(
+                (runtime.totalMemory() - runtime.freeMemory()) / 1024,
+                Debug.getNativeHeapAllocatedSize() / 1024,
+                info.getTotalPss());
+    }
+
+    /**
+     * 记录一次处理：before 是处理前的采样，处理后的采样稍后在后台线程上进行
+     */
+    static void recordTrim(int level, int stage, Sample before) {
+        LatencyMetrics.increment("memory.trim.stage_" + stage, 1);
+        String time = new SimpleDateFormat("HH:mm:ss", Locale.US).format(new Date());
+        sampler.schedule(() -> {
+            Sample after = sample();
+            String event = String.format(Locale.US, "%s level=%d stage=%d%n  前: %s%n  后: %s",
+                    time, level, stage, before, after);
+            Log.i(TAG, event);
+            synchronized (events) {
+                events.addLast(event);
+                while (events.size() > MAX_EVENTS) {
+                    events.removeFirst();
+                }
+            }
+        }, AFTER_SAMPLE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 当前内存占用和最近几次内存压力处理的记录
+     */
+    static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("当前: ").append(sample()).append('\n');
+        synchronized (events) {
+            if (events.isEmpty()) {
+                sb.append("尚未收到内存压力通知\n");
+            }
+            for (String event : events) {
+                sb.append(event).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
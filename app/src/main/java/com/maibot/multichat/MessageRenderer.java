@@ -0,0 +1,107 @@
+package com.maibot.multichat;
+
+import androidx.core.text.PrecomputedTextCompat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 预先计算消息的渲染状态（发送者颜色、时间文本、视图类型、正文排版），
+ * 在后台线程完成，使 onBindViewHolder 只需做字段赋值
+ */
+class MessageRenderer {
+    static final int TYPE_USER = 0;
+    static final int TYPE_BOT = 1;
+    static final int TYPE_SYSTEM = 2;
+
+    static final class RenderState {
+        final int viewType;
+        final int senderColor;
+        final String timeText;
+        // 已排版的 PrecomputedTextCompat，排版参数未就绪时为原始文本
+        final CharSequence body;
+
+        RenderState(int viewType, int senderColor, String timeText, CharSequence body) {
+            this.viewType = viewType;
+            this.senderColor = senderColor;
+            this.timeText = timeText;
+            this.body = body;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MessageRenderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+    private volatile PrecomputedTextCompat.Params textParams;
+
+    /**
+     * 正文TextView的排版参数，适配器连接到列表时取自一个正文TextView
+     * 所有视图类型的正文样式一致，因此只需设置一次
+     */
+    public void setTextParams(PrecomputedTextCompat.Params params) {
+        if (textParams == null) {
+            textParams = params;
+        }
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 获取渲染状态，尚未预计算时在当前线程上计算（不做正文排版）
+     */
+    public RenderState stateFor(ChatMessage message) {
+        RenderState state = message.getRenderState();
+        if (state == null) {
+            state = compute(message, null);
+            message.setRenderState(state);
+        }
+        return state;
+    }
+
+    /**
+     * 为尚未预计算的消息计算渲染状态，只应在后台线程调用
+     * 排版参数就绪之前算出的状态（正文未排版）在参数就绪后重新计算
+     */
+    public void prepare(List<ChatMessage> messages) {
+        PrecomputedTextCompat.Params params = textParams;
+        for (ChatMessage message : messages) {
+            RenderState state = message.getRenderState();
+            if (state == null || (params != null && !(state.body instanceof PrecomputedTextCompat))) {
+                message.setRenderState(compute(message, params));
+            }
+        }
+    }
+
+    private RenderState compute(ChatMessage message, PrecomputedTextCompat.Params params) {
+        int viewType;
+        if (message.isUser()) {
+            viewType = TYPE_USER;
+        } else if (message.isSystem()) {
+            viewType = TYPE_SYSTEM;
+        } else {
+            viewType = TYPE_BOT;
+        }
+
+        int senderColor = message.getSender().colorInt;
+
+        String timeText;
+        synchronized (timeFormat) {
+            timeText = timeFormat.format(new Date(message.getTimestamp()));
+        }
+
+        CharSequence body = message.getContent();
+        if (params != null) {
+            body = PrecomputedTextCompat.create(body, params);
+        }
+
+        return new RenderState(viewType, senderColor, timeText, body);
+    }
+}
@@ -0,0 +1,88 @@
+package com.maibot.multichat;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 性能统计页：查看、导出、重置 LatencyMetrics 收集的延迟数据
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final String TAG = "MetricsActivity";
+
+    private TextView metricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setTitle("性能统计");
+        }
+
+        metricsText = findViewById(R.id.metricsText);
+        findViewById(R.id.refreshButton).setOnClickListener(v -> refresh());
+        findViewById(R.id.exportButton).setOnClickListener(v -> export());
+        findViewById(R.id.resetButton).setOnClickListener(v -> {
+            LatencyMetrics.reset();
+            refresh();
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    private void refresh() {
+        metricsText.setText(report());
+    }
+
+    private static String report() {
+        return LatencyMetrics.report() + "\n内存\n" + MemoryPressure.report();
+    }
+
+    private void export() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        String time = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File file = new File(dir, "metrics_" + time + ".txt");
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(report());
+            Toast.makeText(this, "已导出到 " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, "导出统计失败", e);
+            Toast.makeText(this, "导出失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,17 @@
+package com.maibot.multichat;
+
+import android.app.Application;
+
+public class MultiChatApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // 进程启动时就在后台准备Python环境，界面显示出来时初始化可以直接开始；
+        // 选择了其他引擎时不加载Python
+        String backend = getSharedPreferences("maibot_settings", MODE_PRIVATE)
+                .getString("backend", SettingsActivity.BACKEND_PYTHON);
+        if (SettingsActivity.BACKEND_PYTHON.equals(backend)) {
+            MaiBotManager.prewarm(this);
+        }
+    }
+}
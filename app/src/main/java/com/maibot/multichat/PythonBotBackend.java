@@ -0,0 +1,415 @@
+package com.maibot.multichat;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import com.chaquo.python.PyObject;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于Chaquopy的Bot后端：通过 maibot_bridge 驱动完整的MaiBot
+ *
+ * 所有桥接调用都经 BridgeDispatcher 提交到常驻事件循环线程上执行，
+ * 回复由Python端直接推送（ReplyListener），推送失败时由兜底轮询从Python队列中取回。
+ */
+public class PythonBotBackend implements BotBackend {
+    private static final String TAG = "PythonBotBackend";
+    private static final int FALLBACK_POLL_INTERVAL_MS = 2000; // 兜底轮询间隔2s
+    private static final long TURN_IDLE_TIMEOUT_MS = 120_000; // 超过2分钟无回复视为空闲，停止兜底轮询
+    // 桥接层同时加载的Bot上限，不小于每回合回复Bot数的上限，同一回合选中的Bot不会互相挤出
+    private static final int MAX_LOADED_BOTS = BotRoster.MAX_FAN_OUT_LIMIT;
+
+    private final BridgeDispatcher dispatcher;
+    // LLM接入设置，热更新时替换
+    private volatile String baseUrl;
+    private volatile String modelName;
+    private volatile LlmRateLimiter.Config limits;
+    private final Handler pollingHandler = new Handler(Looper.getMainLooper());
+    private PyObject maibotModule;
+    private volatile Listener listener;
+    private volatile boolean initialized = false;
+    private volatile boolean isPolling = false;
+    private volatile long lastTurnActivity = 0;
+    // 同一时刻最多排队一个轮询任务
+    private final AtomicBoolean pollQueued = new AtomicBoolean(false);
+    private volatile long pollSubmittedNanos = 0;
+
+    /**
+     * 由Python端直接调用的回复监听器（推送模式）
+     * 在Python事件循环线程上回调，实现中不要做耗时操作
+     */
+    public interface ReplyListener {
+        void onReply(String botId, String botName, String color, String content, String replyId, String turnId);
+
+        void onDelta(String botId, String botName, String color, String replyId, String turnId,
+                     String text, boolean reset);
+
+        void onTurnDone(String botId, String turnId);
+    }
+
+    /**
+     * 由Python端在Bot初始化过程中调用（在事件循环线程上）
+     */
+    public interface InitListener {
+        void onBotReady(String botId, String name, String color);
+
+        void onInitialized(boolean success);
+    }
+
+    private class BridgeReplyListener implements ReplyListener {
+        @Override
+        public void onReply(String botId, String botName, String color, String content, String replyId,
+                            String turnId) {
+            BotResponse response = new BotResponse();
+            response.bot_id = botId;
+            response.bot_name = botName;
+            response.color = color;
+            response.content = content;
+            response.reply_id = replyId;
+            response.turn_id = turnId;
+            lastTurnActivity = SystemClock.uptimeMillis();
+            listener.onReply(response);
+        }
+
+        @Override
+        public void onDelta(String botId, String botName, String color, String replyId, String turnId,
+                            String text, boolean reset) {
+            BotDelta delta = new BotDelta();
+            delta.bot_id = botId;
+            delta.bot_name = botName;
+            delta.color = color;
+            delta.reply_id = replyId;
+            delta.turn_id = turnId;
+            delta.content = text;
+            delta.reset = reset;
+            lastTurnActivity = SystemClock.uptimeMillis();
+            listener.onDelta(delta);
+        }
+
+        @Override
+        public void onTurnDone(String botId, String turnId) {
+            lastTurnActivity = SystemClock.uptimeMillis();
+            listener.onTurnDone(botId, turnId);
+        }
+    }
+
+    private class BridgeInitListener implements InitListener {
+        @Override
+        public void onBotReady(String botId, String name, String color) {
+            BotInfo bot = new BotInfo();
+            bot.id = botId;
+            bot.name = name;
+            bot.color = color;
+            initialized = true;
+            listener.onBotReady(bot);
+        }
+
+        @Override
+        public void onInitialized(boolean success) {
+            if (!success) {
+                listener.onInitError("初始化失败");
+                return;
+            }
+
+            try {
+                // 获取Bot列表（msgpack二进制载荷）
+                byte[] payload = callBridge("get_bot_list_packed").toJava(byte[].class);
+                long decodeStart = System.nanoTime();
+                List<BotInfo> bots = BotPayloadCodec.decodeBotList(payload);
+                LatencyMetrics.recordSince("decode.bot_list", decodeStart);
+                initialized = !bots.isEmpty();
+                listener.onInitialized(bots);
+            } catch (Exception e) {
+                Log.e(TAG, "获取Bot列表失败", e);
+                listener.onInitError("初始化失败: " + e.getMessage());
+            }
+        }
+    }
+
+    public PythonBotBackend(Context context) {
+        this(context, new LlmRateLimiter.Config());
+    }
+
+    public PythonBotBackend(Context context, LlmRateLimiter.Config limits) {
+        this(context, BotSettings.DEFAULT_BASE_URL, BotSettings.DEFAULT_MODEL_NAME, limits);
+    }
+
+    /**
+     * baseUrl/modelName 写入MaiBot的模型配置，limits 交给Python端的限流器（llm_models.admission），
+     * 与Java引擎的 LlmRateLimiter 行为一致
+     */
+    public PythonBotBackend(Context context, String baseUrl, String modelName, LlmRateLimiter.Config limits) {
+        this.baseUrl = baseUrl;
+        this.modelName = modelName;
+        this.limits = limits;
+        // 启动常驻事件循环线程（Python环境也在该线程上启动），之后所有桥接调用都提交到该线程
+        this.dispatcher = new BridgeDispatcher(context.getApplicationContext());
+        dispatcher.start();
+    }
+
+    private String configJson(String apiKey, List<BotInfo> roster) {
+        JsonObject config = llmConfig(apiKey);
+        config.add("roster", rosterJson(roster));
+        config.addProperty("max_loaded_bots", MAX_LOADED_BOTS);
+        return config.toString();
+    }
+
+    /**
+     * LLM接入设置和限流参数，对应 maibot_bridge 配置中的 llm 和 rate_limit
+     */
+    private JsonObject llmConfig(String apiKey) {
+        JsonObject llm = new JsonObject();
+        llm.addProperty("api_key", apiKey);
+        llm.addProperty("base_url", baseUrl);
+        llm.addProperty("model_name", modelName);
+        JsonObject rateLimit = new JsonObject();
+        rateLimit.addProperty("requests_per_second", limits.requestsPerSecond);
+        rateLimit.addProperty("max_in_flight", limits.maxInFlight);
+        JsonObject config = new JsonObject();
+        config.add("llm", llm);
+        config.add("rate_limit", rateLimit);
+        return config;
+    }
+
+    private static JsonArray rosterJson(List<BotInfo> roster) {
+        JsonArray bots = new JsonArray();
+        for (BotInfo info : roster) {
+            JsonObject bot = new JsonObject();
+            bot.addProperty("id", info.id);
+            bot.addProperty("name", info.name);
+            bot.addProperty("personality", info.personality);
+            bot.addProperty("color", info.color);
+            bots.add(bot);
+        }
+        return bots;
+    }
+
+    /**
+     * 在后台线程上预先启动Python并导入桥接模块，应尽早调用（例如在 Application.onCreate 中）
+     */
+    public static void prewarm(Context context) {
+        BridgeDispatcher.prewarm(context.getApplicationContext());
+    }
+
+    @Override
+    public void initialize(String apiKey, List<BotInfo> roster, Listener listener) {
+        this.listener = listener;
+        boolean accepted = dispatcher.submit(BridgeDispatcher.Lane.MAINTENANCE, () -> {
+            try {
+                // 获取Python模块（由调度线程负责加载）
+                maibotModule = dispatcher.getModule();
+
+                // 注册推送监听器，回复生成后立即送达，无需轮询
+                callBridge("set_reply_listener", new BridgeReplyListener());
+
+                // 在常驻事件循环上异步初始化，完成后回调BridgeInitListener；Bot在第一次被选中时才加载
+                boolean scheduled = callBridge("initialize_bots", apiKey, roster.size(),
+                        new BridgeInitListener(), configJson(apiKey, roster)).toBoolean();
+
+                if (!scheduled) {
+                    listener.onInitError("初始化失败");
+                }
+
+            } catch (Exception e) {
+                Log.e(TAG, "初始化失败", e);
+                listener.onInitError("初始化失败: " + e.getMessage());
+            }
+        });
+
+        if (!accepted) {
+            listener.onInitError("初始化失败: 任务队列已满");
+        }
+    }
+
+    @Override
+    public boolean send(String turnId, String message, GroupContext.Snapshot context, List<String> botIds) {
+        long sendStart = System.nanoTime();
+        lastTurnActivity = SystemClock.uptimeMillis();
+
+        return dispatcher.submit(BridgeDispatcher.Lane.SEND, () -> {
+            try {
+                // 调用Python发送消息（异步触发）
+                callBridge("send_message", message, "用户", turnId, context.text, botIds);
+                LatencyMetrics.recordSince("send.accepted", sendStart);
+
+                // 消息已发送，回复会通过推送监听器异步返回
+                Log.d(TAG, "消息已发送到MaiBot");
+
+                // 有回合在进行中时才启动兜底轮询
+                pollingHandler.post(this::startMessagePolling);
+
+            } catch (Exception e) {
+                Log.e(TAG, "发送消息失败", e);
+                listener.onSendError(turnId, "发送消息失败: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void cancel(String turnId) {
+        dispatcher.submit(BridgeDispatcher.Lane.DELIVERY, () -> {
+            try {
+                callBridge("cancel_turn", turnId);
+            } catch (Exception e) {
+                Log.e(TAG, "取消回合失败", e);
+            }
+        });
+    }
+
+    /**
+     * 兜底轮询：只在推送失败、回复落入Python队列时起作用。
+     * 仅在有回合进行中时运行，空闲超过 TURN_IDLE_TIMEOUT_MS 后自动停止。
+     */
+    private void startMessagePolling() {
+        if (isPolling) return;
+
+        isPolling = true;
+        pollingHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!isPolling || !initialized) return;
+
+                if (SystemClock.uptimeMillis() - lastTurnActivity > TURN_IDLE_TIMEOUT_MS) {
+                    // 回合已空闲，停止轮询直到下一次发送
+                    isPolling = false;
+                    return;
+                }
+
+                // 上一次轮询还在排队或执行时跳过本次
+                if (pollQueued.compareAndSet(false, true)) {
+                    pollSubmittedNanos = System.nanoTime();
+                    if (!dispatcher.submit(BridgeDispatcher.Lane.DELIVERY, this::pollOnce)) {
+                        pollQueued.set(false);
+                    }
+                }
+
+                // 继续轮询
+                pollingHandler.postDelayed(this, FALLBACK_POLL_INTERVAL_MS);
+            }
+
+            private void pollOnce() {
+                LatencyMetrics.recordSince("poll.lag", pollSubmittedNanos);
+                try {
+                    // 获取待处理的消息（msgpack二进制载荷）
+                    byte[] payload = callBridge("get_pending_messages_packed").toJava(byte[].class);
+                    long decodeStart = System.nanoTime();
+                    List<BotResponse> responses = BotPayloadCodec.decodeResponses(payload);
+                    LatencyMetrics.recordSince("decode.responses", decodeStart);
+
+                    // 处理每个回复
+                    for (BotResponse response : responses) {
+                        lastTurnActivity = SystemClock.uptimeMillis();
+                        listener.onReply(response);
+                    }
+
+                } catch (Exception e) {
+                    Log.e(TAG, "轮询消息失败", e);
+                } finally {
+                    pollQueued.set(false);
+                }
+            }
+        }, FALLBACK_POLL_INTERVAL_MS);
+    }
+
+    private void stopMessagePolling() {
+        isPolling = false;
+        pollingHandler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public void clearHistory() {
+        if (!initialized) return;
+
+        dispatcher.submit(BridgeDispatcher.Lane.MAINTENANCE, () -> {
+            try {
+                callBridge("clear_history");
+            } catch (Exception e) {
+                Log.e(TAG, "清空历史失败", e);
+            }
+        });
+    }
+
+    @Override
+    public void updateLlm(String apiKey, String baseUrl, String modelName, LlmRateLimiter.Config limits) {
+        this.baseUrl = baseUrl;
+        this.modelName = modelName;
+        this.limits = limits;
+        if (!initialized) return;
+
+        String config = llmConfig(apiKey).toString();
+        dispatcher.submit(BridgeDispatcher.Lane.MAINTENANCE, () -> {
+            try {
+                callBridge("update_llm", config);
+            } catch (Exception e) {
+                Log.e(TAG, "更新LLM设置失败", e);
+            }
+        });
+    }
+
+    @Override
+    public void updateRoster(List<BotInfo> added, List<String> removedIds) {
+        if (!initialized) return;
+
+        JsonArray removed = new JsonArray();
+        for (String botId : removedIds) {
+            removed.add(botId);
+        }
+        JsonObject change = new JsonObject();
+        change.add("add", rosterJson(added));
+        change.add("remove", removed);
+        String config = change.toString();
+        dispatcher.submit(BridgeDispatcher.Lane.MAINTENANCE, () -> {
+            try {
+                // 移除的Bot在Python端卸载，新Bot创建后经 BridgeInitListener 报告就绪，同样在第一次被选中时才加载
+                callBridge("update_roster", config, new BridgeInitListener());
+            } catch (Exception e) {
+                Log.e(TAG, "更新阵容失败", e);
+            }
+        });
+    }
+
+    @Override
+    public void trimMemory(boolean sleepIdleBots) {
+        if (!initialized) return;
+
+        dispatcher.submit(BridgeDispatcher.Lane.MAINTENANCE, () -> {
+            try {
+                callBridge("trim_memory", sleepIdleBots);
+            } catch (Exception e) {
+                Log.e(TAG, "释放Python缓存失败", e);
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        stopMessagePolling();
+        if (maibotModule != null) {
+            dispatcher.submit(BridgeDispatcher.Lane.MAINTENANCE, () -> {
+                try {
+                    callBridge("set_reply_listener", (Object) null);
+                } catch (Exception e) {
+                    Log.e(TAG, "注销回复监听器失败", e);
+                }
+            });
+        }
+        dispatcher.shutdown();
+    }
+
+    /**
+     * 调用桥接模块的函数并记录耗时（指标 py.<函数名>），只应在已提交的任务中调用
+     */
+    private PyObject callBridge(String function, Object... args) {
+        long start = System.nanoTime();
+        try {
+            return maibotModule.callAttr(function, args);
+        } finally {
+            LatencyMetrics.recordSince("py." + function, start);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.maibot.multichat;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 聊天记录搜索页：按关键词、发送者和时间范围检索，点击结果返回 MainActivity 并跳转到该消息
+ */
+public class SearchActivity extends AppCompatActivity {
+    public static final String EXTRA_MESSAGE_ID = "message_id";
+
+    private static final int MAX_RESULTS = 200;
+    private static final long SEARCH_DEBOUNCE_MS = 200; // 输入停顿后再检索，避免每个字都查一次
+    private static final String[] TIME_RANGES = {"全部时间", "今天", "最近7天", "最近30天"};
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::search;
+    private final List<ChatMessage> results = new ArrayList<>();
+
+    private EditText queryInput;
+    private Spinner senderSpinner;
+    private Spinner timeSpinner;
+    private TextView statusText;
+    private ResultAdapter adapter;
+    private List<String> senderNames;
+    private int searchSeq = 0; // 只显示最后一次检索的结果
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setTitle("搜索聊天记录");
+        }
+
+        queryInput = findViewById(R.id.queryInput);
+        senderSpinner = findViewById(R.id.senderSpinner);
+        timeSpinner = findViewById(R.id.timeSpinner);
+        statusText = findViewById(R.id.statusText);
+
+        senderNames = new ArrayList<>();
+        senderNames.add("所有人");
+        senderNames.addAll(SenderTable.names());
+        setupSpinner(senderSpinner, new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, senderNames));
+        setupSpinner(timeSpinner, new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, TIME_RANGES));
+
+        adapter = new ResultAdapter();
+        RecyclerView resultList = findViewById(R.id.resultList);
+        resultList.setLayoutManager(new LinearLayoutManager(this));
+        resultList.setAdapter(adapter);
+
+        queryInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                scheduleSearch();
+            }
+        });
+    }
+
+    private void setupSpinner(Spinner spinner, ArrayAdapter<String> spinnerAdapter) {
+        spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(spinnerAdapter);
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                scheduleSearch();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+    }
+
+    private void scheduleSearch() {
+        mainHandler.removeCallbacks(searchRunnable);
+        mainHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+    }
+
+    private void search() {
+        String text = queryInput.getText().toString().trim();
+        int senderPosition = senderSpinner.getSelectedItemPosition();
+        String sender = senderPosition > 0 ? senderNames.get(senderPosition) : null;
+        if (text.isEmpty() && sender == null) {
+            // 不带任何条件时不列出全部记录
+            searchSeq++;
+            showResults(new ArrayList<>(), "");
+            return;
+        }
+
+        int seq = ++searchSeq;
+        ChatHistoryStore.getInstance(this).search(text, sender, rangeStart(timeSpinner.getSelectedItemPosition()),
+                Long.MAX_VALUE, MAX_RESULTS, (found, complete) -> {
+                    if (seq != searchSeq) return;
+                    String status = found.isEmpty() ? "没有找到相关消息" : "找到 " + found.size() + " 条";
+                    if (found.size() >= MAX_RESULTS) {
+                        status = "结果较多，只显示最近 " + MAX_RESULTS + " 条";
+                    }
+                    if (!complete) {
+                        status += "（索引建立中，结果可能不全）";
+                    }
+                    showResults(found, status);
+                });
+    }
+
+    /**
+     * 时间范围选项对应的起始时间
+     */
+    private static long rangeStart(int position) {
+        if (position <= 0) return 0;
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (position == 2) {
+            calendar.add(Calendar.DAY_OF_MONTH, -6);
+        } else if (position == 3) {
+            calendar.add(Calendar.DAY_OF_MONTH, -29);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    private void showResults(List<ChatMessage> found, String status) {
+        results.clear();
+        results.addAll(found);
+        adapter.notifyDataSetChanged();
+        statusText.setText(status);
+    }
+
+    private void openResult(ChatMessage message) {
+        Intent data = new Intent();
+        data.putExtra(EXTRA_MESSAGE_ID, message.getMessageId());
+        setResult(RESULT_OK, data);
+        finish();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mainHandler.removeCallbacks(searchRunnable);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private class ResultAdapter extends RecyclerView.Adapter<ResultViewHolder> {
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm", Locale.getDefault());
+
+        @NonNull
+        @Override
+        public ResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_search_result, parent, false);
+            return new ResultViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ResultViewHolder holder, int position) {
+            ChatMessage message = results.get(position);
+            SenderTable.Sender sender = message.getSender();
+            holder.sender.setText(sender.name);
+            holder.sender.setTextColor(sender.colorInt);
+            holder.content.setText(message.getContent());
+            long timestamp = message.getTimestamp();
+            SimpleDateFormat format = timestamp >= rangeStart(1) ? timeFormat : dateFormat;
+            holder.time.setText(format.format(new Date(timestamp)));
+            holder.itemView.setOnClickListener(v -> openResult(message));
+        }
+
+        @Override
+        public int getItemCount() {
+            return results.size();
+        }
+    }
+
+    private static class ResultViewHolder extends RecyclerView.ViewHolder {
+        final TextView sender;
+        final TextView content;
+        final TextView time;
+
+        ResultViewHolder(View itemView) {
+            super(itemView);
+            sender = itemView.findViewById(R.id.resultSender);
+            content = itemView.findViewById(R.id.resultContent);
+            time = itemView.findViewById(R.id.resultTime);
+        }
+    }
+}
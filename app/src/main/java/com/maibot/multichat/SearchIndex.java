@@ -0,0 +1,180 @@
+package com.maibot.multichat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 聊天记录的内存倒排索引，随消息写入增量更新
+ *
+ * 文本经 TextTokenizer.indexGrams 切成字串片段（汉字的单字和二元组、字母数字的三元组，不依赖分词词典），
+ * 每个片段对应一个按文档序号递增的倒排表。查询时取查询片段的倒排表求交集，同时按发送者和时间范围过滤。
+ * 原文中包含查询字串的消息一定在结果中，但片段全部命中不代表原文连续出现，结果只是候选，调用方需按原文再核对一遍；
+ * 查询没有可索引的片段时（见 isIndexable）索引帮不上忙，调用方应直接比对原文。
+ *
+ * 文档序号按写入顺序分配，倒排表只在末尾追加。流式回复完成后才保存，ID常常早于已索引的消息，
+ * 在多Bot群聊中这是常态，因此写入时不查找同一ID的旧文档：覆盖保存的消息旧内容留在索引里，
+ * 结果按ID去重，旧内容的命中由调用方核对原文时排除。
+ * 每条消息只占一个序号和三个数组槽位，倒排表存 int 序号。非线程安全。
+ */
+public final class SearchIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * 查询条件，text 为空时只按发送者和时间过滤
+     */
+    public static final class Query {
+        public String text = "";
+        public int[] senders;                  // 发送者在 SenderTable 中的下标，为 null 表示不限
+        public long fromMillis = 0;            // 时间范围（含两端）
+        public long toMillis = Long.MAX_VALUE;
+    }
+
+    /**
+     * 一个词项的倒排表：出现过该词项的文档序号，递增排列
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        boolean contains(int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+        }
+    }
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    // 以下按文档序号存放
+    private long[] messageIds = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] senders = new int[INITIAL_CAPACITY];
+    private int docCount = 0;
+
+    /**
+     * 加入一条消息，ID不必递增；同一ID再次加入时（消息被覆盖保存）按新文档追加
+     */
+    public void add(long messageId, String content, int senderIndex, long timestamp) {
+        int doc = docCount;
+        if (doc == messageIds.length) {
+            int capacity = doc * 2;
+            messageIds = Arrays.copyOf(messageIds, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            senders = Arrays.copyOf(senders, capacity);
+        }
+        messageIds[doc] = messageId;
+        timestamps[doc] = timestamp;
+        senders[doc] = senderIndex;
+        docCount++;
+
+        TextTokenizer.indexGrams(content, term -> {
+            Postings list = postings.get(term);
+            if (list == null) {
+                list = new Postings();
+                postings.put(term, list);
+            }
+            list.add(doc);
+        });
+    }
+
+    /**
+     * text 中是否有可用索引查找的片段；空白以外只有不足三个字符的字母数字或标点时为 false
+     */
+    public static boolean isIndexable(String text) {
+        return !TextTokenizer.queryGrams(text).isEmpty();
+    }
+
+    /**
+     * 返回最多 limit 条候选消息的ID，从新到旧（按ID）排列
+     *
+     * 候选按写入顺序从最近的往前收集；text 没有可索引的片段时只按发送者和时间过滤。
+     */
+    public long[] search(Query query, int limit) {
+        Set<String> terms = TextTokenizer.queryGrams(query.text != null ? query.text : "");
+        List<Postings> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                return new long[0];
+            }
+            lists.add(list);
+        }
+
+        long[] result = new long[Math.min(limit, docCount)];
+        int found = 0;
+        if (lists.isEmpty()) {
+            for (int doc = docCount - 1; doc >= 0 && found < result.length; doc--) {
+                if (matches(doc, query)) {
+                    result[found++] = messageIds[doc];
+                }
+            }
+            return newestFirst(result, found);
+        }
+
+        // 从最短的倒排表出发，逐个到其余倒排表中二分查找
+        Collections.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        Postings shortest = lists.get(0);
+        for (int i = shortest.size - 1; i >= 0 && found < result.length; i--) {
+            int doc = shortest.docs[i];
+            if (!matches(doc, query)) continue;
+            boolean all = true;
+            for (int j = 1; j < lists.size() && all; j++) {
+                all = lists.get(j).contains(doc);
+            }
+            if (all) {
+                result[found++] = messageIds[doc];
+            }
+        }
+        return newestFirst(result, found);
+    }
+
+    /**
+     * 前 count 个ID按从大到小排列并去掉重复（同一ID覆盖保存过）
+     */
+    private static long[] newestFirst(long[] ids, int count) {
+        Arrays.sort(ids, 0, count);
+        long[] result = new long[count];
+        int unique = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (unique == 0 || ids[i] != result[unique - 1]) {
+                result[unique++] = ids[i];
+            }
+        }
+        return unique == count ? result : Arrays.copyOf(result, unique);
+    }
+
+    private boolean matches(int doc, Query query) {
+        long timestamp = timestamps[doc];
+        if (timestamp < query.fromMillis || timestamp > query.toMillis) return false;
+        if (query.senders == null) return true;
+        for (int sender : query.senders) {
+            if (senders[doc] == sender) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 已索引的文档数，覆盖保存过的消息按多条计
+     */
+    public int size() {
+        return docCount;
+    }
+
+    public void clear() {
+        postings.clear();
+        messageIds = new long[INITIAL_CAPACITY];
+        timestamps = new long[INITIAL_CAPACITY];
+        senders = new int[INITIAL_CAPACITY];
+        docCount = 0;
+    }
+}
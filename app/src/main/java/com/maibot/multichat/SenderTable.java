@@ -0,0 +1,111 @@
+package com.maibot.multichat;
+
+import android.graphics.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 发送者身份表
+ *
+ * 群聊里的发送者只有"我"、"系统"和几个Bot，同一身份（名称 + 颜色 + 是否用户）只保存一份，
+ * 消息里只记录它在表中的下标。表只增不减，下标在进程内保持稳定。
+ */
+final class SenderTable {
+    static final int MAX_SENDERS = 1 << 16; // 下标占消息打包字段的低16位
+
+    private static final Object lock = new Object();
+    private static final Map<String, Sender> byKey = new HashMap<>();
+    // 写时复制，读取下标时无需加锁
+    private static volatile Sender[] senders = new Sender[0];
+
+    static final class Sender {
+        final int index;
+        final String name;
+        final String color;
+        final boolean isUser;
+        final boolean isSystem;
+        final int colorInt; // 解析一次后供所有消息共用
+
+        private Sender(int index, String name, String color, boolean isUser) {
+            this.index = index;
+            this.name = name;
+            this.color = color;
+            this.isUser = isUser;
+            this.isSystem = !isUser && ChatMessage.SYSTEM_SENDER.equals(name);
+            this.colorInt = parseColor(color);
+        }
+
+        private static int parseColor(String color) {
+            try {
+                return Color.parseColor(color);
+            } catch (Exception e) {
+                return Color.BLACK;
+            }
+        }
+    }
+
+    private SenderTable() {
+    }
+
+    /**
+     * 查找或登记一个发送者，返回其下标
+     */
+    static int intern(String name, String color, boolean isUser) {
+        String key = (isUser ? "U" : "B") + name + '\u0000' + color;
+        synchronized (lock) {
+            Sender sender = byKey.get(key);
+            if (sender != null) {
+                return sender.index;
+            }
+
+            Sender[] current = senders;
+            if (current.length >= MAX_SENDERS) {
+                throw new IllegalStateException("发送者数量超出上限: " + MAX_SENDERS);
+            }
+            sender = new Sender(current.length, name, color, isUser);
+            Sender[] next = new Sender[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[sender.index] = sender;
+            senders = next;
+            byKey.put(key, sender);
+            return sender.index;
+        }
+    }
+
+    static Sender get(int index) {
+        return senders[index];
+    }
+
+    /**
+     * 名称为 name 的所有发送者下标（同名Bot换过颜色时会有多个身份）
+     */
+    static int[] indicesNamed(String name) {
+        Sender[] current = senders;
+        int[] indices = new int[current.length];
+        int count = 0;
+        for (Sender sender : current) {
+            if (sender.name.equals(name)) {
+                indices[count++] = sender.index;
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * 已登记的发送者名称（不含系统消息），按首次出现的顺序去重
+     */
+    static List<String> names() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Sender sender : senders) {
+            if (!sender.isSystem) {
+                names.add(sender.name);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+}
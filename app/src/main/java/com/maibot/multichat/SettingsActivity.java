@@ -6,18 +6,29 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.RadioGroup;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import java.util.List;
 
 public class SettingsActivity extends AppCompatActivity {
+    // Bot引擎（偏好项 backend 的取值）
+    public static final String BACKEND_PYTHON = "python";
+    public static final String BACKEND_JAVA = "java";
+    public static final String BACKEND_SYNTHETIC = "synthetic";
+
     private EditText apiKeyInput;
     private EditText baseUrlInput;
     private EditText modelNameInput;
-    private SeekBar botCountSeekBar;
-    private TextView botCountText;
+    private EditText requestsPerSecondInput;
+    private EditText maxInFlightInput;
+    private EditText rosterInput;
+    private SeekBar fanOutSeekBar;
+    private TextView fanOutText;
+    private RadioGroup backendGroup;
     private Button saveButton;
     private SharedPreferences prefs;
 
@@ -44,30 +55,47 @@ public class SettingsActivity extends AppCompatActivity {
         apiKeyInput = findViewById(R.id.apiKeyInput);
         baseUrlInput = findViewById(R.id.baseUrlInput);
         modelNameInput = findViewById(R.id.modelNameInput);
-        botCountSeekBar = findViewById(R.id.botCountSeekBar);
-        botCountText = findViewById(R.id.botCountText);
+        requestsPerSecondInput = findViewById(R.id.requestsPerSecondInput);
+        maxInFlightInput = findViewById(R.id.maxInFlightInput);
+        rosterInput = findViewById(R.id.rosterInput);
+        fanOutSeekBar = findViewById(R.id.fanOutSeekBar);
+        fanOutText = findViewById(R.id.fanOutText);
+        backendGroup = findViewById(R.id.backendGroup);
         saveButton = findViewById(R.id.saveButton);
     }
 
     private void loadSettings() {
         String apiKey = prefs.getString("api_key", "");
-        String baseUrl = prefs.getString("base_url", "https://api.deepseek.com");
-        String modelName = prefs.getString("model_name", "deepseek-chat");
-        int botCount = prefs.getInt("bot_count", 3);
+        String baseUrl = prefs.getString("base_url", BotSettings.DEFAULT_BASE_URL);
+        String modelName = prefs.getString("model_name", BotSettings.DEFAULT_MODEL_NAME);
+        int maxFanOut = Math.min(BotRoster.maxFanOut(prefs), BotRoster.MAX_FAN_OUT_LIMIT);
+        String backend = prefs.getString("backend", BACKEND_PYTHON);
         
         apiKeyInput.setText(apiKey);
         baseUrlInput.setText(baseUrl);
         modelNameInput.setText(modelName);
-        botCountSeekBar.setProgress(botCount - 1);
-        botCountText.setText(botCount + " 个Bot");
+        LlmRateLimiter.Config limits = LlmRateLimiter.Config.fromPrefs(prefs);
+        requestsPerSecondInput.setText(String.valueOf(limits.requestsPerSecond));
+        maxInFlightInput.setText(String.valueOf(limits.maxInFlight));
+        rosterInput.setText(BotRoster.format(BotRoster.load(prefs)));
+        fanOutSeekBar.setMax(BotRoster.MAX_FAN_OUT_LIMIT - 1);
+        fanOutSeekBar.setProgress(maxFanOut - 1);
+        fanOutText.setText(maxFanOut + " 个Bot");
+        if (BACKEND_JAVA.equals(backend)) {
+            backendGroup.check(R.id.backendJava);
+        } else if (BACKEND_SYNTHETIC.equals(backend)) {
+            backendGroup.check(R.id.backendSynthetic);
+        } else {
+            backendGroup.check(R.id.backendPython);
+        }
     }
 
     private void setupListeners() {
-        botCountSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+        fanOutSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 int count = progress + 1;
-                botCountText.setText(count + " 个Bot");
+                fanOutText.setText(count + " 个Bot");
             }
 
             @Override
@@ -89,32 +117,76 @@ public class SettingsActivity extends AppCompatActivity {
         String apiKey = apiKeyInput.getText().toString().trim();
         String baseUrl = baseUrlInput.getText().toString().trim();
         String modelName = modelNameInput.getText().toString().trim();
-        int botCount = botCountSeekBar.getProgress() + 1;
+        int maxFanOut = fanOutSeekBar.getProgress() + 1;
+        String backend = BACKEND_PYTHON;
+        int checkedBackend = backendGroup.getCheckedRadioButtonId();
+        if (checkedBackend == R.id.backendJava) {
+            backend = BACKEND_JAVA;
+        } else if (checkedBackend == R.id.backendSynthetic) {
+            backend = BACKEND_SYNTHETIC;
+        }
 
-        if (apiKey.isEmpty()) {
+        // 模拟Bot不访问网络，不需要API Key
+        if (apiKey.isEmpty() && !BACKEND_SYNTHETIC.equals(backend)) {
             Toast.makeText(this, "请输入API Key", Toast.LENGTH_SHORT).show();
             return;
         }
 
         if (baseUrl.isEmpty()) {
-            baseUrl = "https://api.deepseek.com";
+            baseUrl = BotSettings.DEFAULT_BASE_URL;
         }
 
         if (modelName.isEmpty()) {
-            modelName = "deepseek-chat";
+            modelName = BotSettings.DEFAULT_MODEL_NAME;
+        }
+
+        float requestsPerSecond;
+        int maxInFlight;
+        try {
+            requestsPerSecond = parseOrDefault(requestsPerSecondInput, LlmRateLimiter.DEFAULT_REQUESTS_PER_SECOND);
+            maxInFlight = (int) parseOrDefault(maxInFlightInput, LlmRateLimiter.DEFAULT_MAX_IN_FLIGHT);
+        } catch (NumberFormatException e) {
+            Toast.makeText(this, "请求限制需填写数字", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (requestsPerSecond <= 0 || maxInFlight <= 0) {
+            Toast.makeText(this, "请求限制必须大于0", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<BotInfo> roster;
+        try {
+            roster = BotRoster.parse(rosterInput.getText().toString());
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(this, e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (roster.isEmpty()) {
+            Toast.makeText(this, "Bot阵容不能为空", Toast.LENGTH_SHORT).show();
+            return;
         }
 
         prefs.edit()
             .putString("api_key", apiKey)
             .putString("base_url", baseUrl)
             .putString("model_name", modelName)
-            .putInt("bot_count", botCount)
+            .putFloat(LlmRateLimiter.PREF_REQUESTS_PER_SECOND, requestsPerSecond)
+            .putInt(LlmRateLimiter.PREF_MAX_IN_FLIGHT, maxInFlight)
+            .putString(BotRoster.PREF_ROSTER, BotRoster.format(roster))
+            .putInt(BotRoster.PREF_MAX_FAN_OUT, maxFanOut)
+            .putString("backend", backend)
             .apply();
 
-        Toast.makeText(this, "设置已保存，请重启应用生效", Toast.LENGTH_LONG).show();
+        // BotService 监听设置变化，只应用变化的部分，不需要重启
+        Toast.makeText(this, "设置已保存", Toast.LENGTH_SHORT).show();
         finish();
     }
 
+    private static float parseOrDefault(EditText input, float defaultValue) {
+        String text = input.getText().toString().trim();
+        return text.isEmpty() ? defaultValue : Float.parseFloat(text);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == android.R.id.home) {
@@ -0,0 +1,290 @@
+package com.maibot.multichat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的模拟Bot后端，不需要API Key和网络，用于压测界面和回合管理
+ *
+ * 回复的延迟、长度和连发都由 Config 中的分布决定。随机数按 (种子, 第几个回合, Bot在阵容中的位置) 生成，
+ * 同样的配置和输入序列总会得到同样的回复内容和时间安排，与线程调度无关。
+ * 所有事件都在一个调度线程上按计划时间推送，与Python后端一样从非主线程回调。
+ */
+public class SyntheticBotBackend implements BotBackend {
+    private static final String[] PHRASES = {
+            "哈哈哈", "我也这么觉得", "今天天气真不错", "你们在聊什么呀", "这个问题很有意思",
+            "让我想想", "说得对", "我刚看完一本书", "周末一起去吧", "有点饿了",
+            "确实如此", "不太同意哦", "好耶", "真的假的", "原来是这样"
+    };
+
+    /**
+     * 模拟参数，时间单位均为毫秒
+     */
+    public static class Config {
+        public long seed = 42;
+        public double replyProbability = 0.6;  // 每个Bot回复一个回合的概率，不回复的Bot只报告完成
+        public long firstByteMedianMs = 800;   // 首个增量的延迟服从对数正态分布，这是中位数
+        public double firstByteSigma = 0.6;    // 对数正态分布的σ，越大长尾越重
+        public long chunkIntervalMs = 40;      // 相邻两段增量的间隔
+        public int chunkChars = 6;             // 每段增量的字数
+        public int minReplyChars = 10;
+        public int maxReplyChars = 200;
+        public double burstProbability = 0.1;  // 对同一回合连发多条的概率
+        public int maxBurstReplies = 3;
+        public long initDelayMs = 100;         // 每个Bot的初始化耗时
+        public double timeScale = 1.0;         // 所有延迟乘以该系数，0表示不等待（吞吐测试）
+        public int maxPendingTurns = 32;       // 同时进行的回合上限，超过时拒绝发送
+    }
+
+    private final Config config;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+    // 回合ID -> 该回合已排期的事件，全部执行完或被取消后移除
+    private final Map<String, List<ScheduledFuture<?>>> pendingTurns = new HashMap<>();
+    private volatile Listener listener;
+    private volatile List<BotInfo> bots = Collections.emptyList();
+    // Bot ID -> 在阵容中的位置，用于生成与选中哪些Bot无关的随机数种子
+    private volatile Map<String, Integer> positions = Collections.emptyMap();
+    // 热更新时移除的Bot（按对象比较），已排期的事件到时不再推送
+    private final Set<BotInfo> removedBots = ConcurrentHashMap.newKeySet();
+    private long turnIndex = 0;
+
+    public SyntheticBotBackend() {
+        this(new Config());
+    }
+
+    public SyntheticBotBackend(Config config) {
+        this.config = config;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SyntheticBots");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void initialize(String apiKey, List<BotInfo> roster, Listener listener) {
+        this.listener = listener;
+
+        List<BotInfo> created = new ArrayList<>(roster);
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < created.size(); i++) {
+            index.put(created.get(i).id, i);
+        }
+        positions = index;
+
+        // 各Bot并发初始化，耗时在 initDelayMs 上下浮动，全部就绪后报告结果
+        Random random = new Random(config.seed);
+        long allReadyAt = 0;
+        for (BotInfo bot : created) {
+            long readyAt = (long) (config.initDelayMs * (0.5 + random.nextDouble()));
+            allReadyAt = Math.max(allReadyAt, readyAt);
+            schedule(readyAt, () -> listener.onBotReady(bot));
+        }
+        schedule(allReadyAt, () -> {
+            bots = Collections.unmodifiableList(created);
+            listener.onInitialized(bots);
+        });
+    }
+
+    @Override
+    public boolean send(String turnId, String message, GroupContext.Snapshot context, List<String> botIds) {
+        Set<String> selected = new HashSet<>(botIds);
+        List<BotInfo> members = new ArrayList<>(selected.size());
+        for (BotInfo bot : bots) {
+            if (selected.contains(bot.id)) {
+                members.add(bot);
+            }
+        }
+        long index;
+        synchronized (lock) {
+            if (scheduler.isShutdown() || pendingTurns.size() >= config.maxPendingTurns) {
+                return false;
+            }
+            index = turnIndex++;
+            if (members.isEmpty()) {
+                return true;
+            }
+            pendingTurns.put(turnId, new ArrayList<>());
+        }
+
+        List<ScheduledFuture<?>> futures = new ArrayList<>();
+        int[] remaining = {members.size()};
+        for (BotInfo bot : members) {
+            planBot(turnId, bot, new Random(mix(config.seed, index, positions.get(bot.id))), futures, () -> {
+                // 只在调度线程上执行
+                if (--remaining[0] == 0) {
+                    synchronized (lock) {
+                        pendingTurns.remove(turnId);
+                    }
+                }
+            });
+        }
+
+        synchronized (lock) {
+            List<ScheduledFuture<?>> tracked = pendingTurns.get(turnId);
+            if (tracked != null) {
+                tracked.addAll(futures);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 为一个Bot安排本回合的事件：若干条流式回复（每条先推送增量，再推送完整内容），最后报告完成
+     */
+    private void planBot(String turnId, BotInfo bot, Random random, List<ScheduledFuture<?>> futures,
+                         Runnable onDone) {
+        long at = sampleLatency(random);
+        int replies = 0;
+        if (random.nextDouble() < config.replyProbability) {
+            replies = 1;
+            while (replies < config.maxBurstReplies && random.nextDouble() < config.burstProbability) {
+                replies++;
+            }
+        }
+
+        for (int r = 0; r < replies; r++) {
+            if (r > 0) {
+                // 连发的下一条重新经历一次思考延迟
+                at += sampleLatency(random) / 2;
+            }
+            String replyId = turnId + "_" + bot.id + "_" + r;
+            String content = randomContent(random);
+            for (int start = 0; start < content.length(); start += config.chunkChars) {
+                BotDelta delta = new BotDelta();
+                delta.bot_id = bot.id;
+                delta.bot_name = bot.name;
+                delta.color = bot.color;
+                delta.reply_id = replyId;
+                delta.turn_id = turnId;
+                delta.content = content.substring(start, Math.min(content.length(), start + config.chunkChars));
+                futures.add(schedule(at, () -> {
+                    if (!removedBots.contains(bot)) listener.onDelta(delta);
+                }));
+                at += config.chunkIntervalMs;
+            }
+
+            BotResponse response = new BotResponse();
+            response.bot_id = bot.id;
+            response.bot_name = bot.name;
+            response.color = bot.color;
+            response.content = content;
+            response.reply_id = replyId;
+            response.turn_id = turnId;
+            futures.add(schedule(at, () -> {
+                if (!removedBots.contains(bot)) listener.onReply(response);
+            }));
+        }
+
+        futures.add(schedule(at, () -> {
+            if (!removedBots.contains(bot)) {
+                listener.onTurnDone(bot.id, turnId);
+            }
+            onDone.run();
+        }));
+    }
+
+    private ScheduledFuture<?> schedule(long atMs, Runnable event) {
+        return scheduler.schedule(event, scaled(atMs), TimeUnit.MILLISECONDS);
+    }
+
+    private long sampleLatency(Random random) {
+        return (long) (config.firstByteMedianMs * Math.exp(config.firstByteSigma * random.nextGaussian()));
+    }
+
+    private String randomContent(Random random) {
+        int length = config.minReplyChars
+                + random.nextInt(Math.max(1, config.maxReplyChars - config.minReplyChars + 1));
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (sb.length() > 0) {
+                sb.append('，');
+            }
+            sb.append(PHRASES[random.nextInt(PHRASES.length)]);
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    private long scaled(long ms) {
+        return (long) (ms * config.timeScale);
+    }
+
+    private static long mix(long seed, long turn, int bot) {
+        long h = seed * 0x9E3779B97F4A7C15L + turn;
+        h = h * 0x9E3779B97F4A7C15L + bot;
+        return h ^ (h >>> 31);
+    }
+
+    @Override
+    public void cancel(String turnId) {
+        List<ScheduledFuture<?>> futures;
+        synchronized (lock) {
+            futures = pendingTurns.remove(turnId);
+        }
+        if (futures == null) return;
+        for (ScheduledFuture<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    @Override
+    public void clearHistory() {
+        // 模拟Bot不保留对话历史
+    }
+
+    @Override
+    public void updateLlm(String apiKey, String baseUrl, String modelName, LlmRateLimiter.Config limits) {
+        // 模拟Bot不访问网络
+    }
+
+    @Override
+    public void updateRoster(List<BotInfo> added, List<String> removedIds) {
+        Set<String> removed = new HashSet<>(removedIds);
+        List<BotInfo> members = new ArrayList<>(bots.size() + added.size());
+        for (BotInfo bot : bots) {
+            if (removed.contains(bot.id)) {
+                removedBots.add(bot);
+            } else {
+                members.add(bot);
+            }
+        }
+        members.addAll(added);
+
+        // 以同一ID重新加入的Bot沿用原来的位置，新Bot排在最后
+        Map<String, Integer> index = new HashMap<>(positions);
+        for (BotInfo bot : added) {
+            if (!index.containsKey(bot.id)) {
+                index.put(bot.id, index.size());
+            }
+        }
+        positions = index;
+        bots = Collections.unmodifiableList(members);
+
+        for (BotInfo bot : added) {
+            schedule(config.initDelayMs, () -> listener.onBotReady(bot));
+        }
+    }
+
+    @Override
+    public void trimMemory(boolean sleepIdleBots) {
+        // 模拟Bot没有可释放的缓存
+    }
+
+    @Override
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,118 @@
+package com.maibot.multichat;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 把聊天文本切成检索用的词项
+ *
+ * 中文不做分词，连续的汉字按相邻两字切成二元组（"今天天气" -> 今天、天天、天气），单独一个汉字原样保留；
+ * 字母和数字按连续片段切成小写单词，单个字母被忽略。标点、空白和表情符号都作为分隔。
+ *
+ * 检索索引另用字串片段（indexGrams/queryGrams）：原文中出现的任意字串，查询片段都包含在原文的索引片段中，
+ * 因此单个汉字和单词的一部分（"deep" 之于 "deepseek"）也能查到。
+ */
+final class TextTokenizer {
+    private static final int WORD_GRAM_LENGTH = 3; // 字母数字片段按相邻三个字符切分
+
+    private TextTokenizer() {}
+
+    /**
+     * 依次输出 text 中的词项（可能重复）
+     */
+    static void tokenize(CharSequence text, Consumer<String> out) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isIdeographic(c)) {
+                int start = i;
+                while (i < length && Character.isIdeographic(text.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    out.accept(String.valueOf(c));
+                } else {
+                    for (int j = start; j + 1 < i; j++) {
+                        out.accept(text.subSequence(j, j + 2).toString());
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i))
+                        && !Character.isIdeographic(text.charAt(i))) {
+                    i++;
+                }
+                if (i - start > 1 || Character.isDigit(c)) {
+                    out.accept(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 依次输出 text 的检索索引片段（可能重复）：每个汉字单独一项，相邻两个汉字再组成一项；
+     * 字母和数字片段转成小写后取所有相邻三个字符，不足三个字符的片段不输出（查询时也不会用到）
+     */
+    static void indexGrams(CharSequence text, Consumer<String> out) {
+        grams(text, false, out);
+    }
+
+    /**
+     * 查询文本的检索片段：连续的汉字取相邻两字（只有一个字时取该字），字母和数字片段取相邻三个字符。
+     * 不足三个字符的字母数字片段无法用索引查找；返回空集合时只能逐条比对原文
+     */
+    static Set<String> queryGrams(CharSequence text) {
+        Set<String> grams = new LinkedHashSet<>();
+        grams(text, true, grams::add);
+        return grams;
+    }
+
+    private static void grams(CharSequence text, boolean query, Consumer<String> out) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isIdeographic(c)) {
+                int start = i;
+                while (i < length && Character.isIdeographic(text.charAt(i))) {
+                    i++;
+                }
+                // 查询中连续两个以上的汉字用二元组就够了，单字只在索引一侧全部输出
+                if (!query || i - start == 1) {
+                    for (int j = start; j < i; j++) {
+                        out.accept(String.valueOf(text.charAt(j)));
+                    }
+                }
+                for (int j = start; j + 1 < i; j++) {
+                    out.accept(text.subSequence(j, j + 2).toString());
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i))
+                        && !Character.isIdeographic(text.charAt(i))) {
+                    i++;
+                }
+                String word = text.subSequence(start, i).toString().toLowerCase(Locale.ROOT);
+                for (int j = 0; j + WORD_GRAM_LENGTH <= word.length(); j++) {
+                    out.accept(word.substring(j, j + WORD_GRAM_LENGTH));
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * text 中去重后的词项，按首次出现的顺序
+     */
+    static Set<String> terms(CharSequence text) {
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(text, terms::add);
+        return terms;
+    }
+}
@@ -0,0 +1,89 @@
+package com.maibot.multichat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端回合队列（只在主线程上使用）
+ *
+ * 输入随时可以提交：短时间内连续输入的几条消息会合并成一个回合再发给Bot，
+ * 上一个回合还没结束时下一个回合也可以发出，但同时进行的回合数有上限，
+ * 达到上限后新输入继续合并，等有回合结束再发出，以减少LLM请求次数。
+ */
+class TurnQueue {
+    private static final long DEBOUNCE_MS = 1200; // 停止输入多久后发出回合
+    private static final int MAX_IN_FLIGHT_TURNS = 2; // 同时进行的回合数上限
+
+    interface Sink {
+        /**
+         * 发出一个回合，返回是否被接受；被接受的回合结束时需调用 onTurnFinished
+         */
+        boolean dispatch(String text);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Sink sink;
+    private final List<String> pending = new ArrayList<>();
+    private final Runnable flushRunnable = this::flush;
+    private boolean flushScheduled = false;
+    private int inFlight = 0;
+    private long firstPendingNanos; // 当前合并批次第一条输入的时间
+
+    TurnQueue(Sink sink) {
+        this.sink = sink;
+    }
+
+    public void submit(String text) {
+        if (pending.isEmpty()) {
+            firstPendingNanos = System.nanoTime();
+        }
+        pending.add(text);
+        // 每次输入都重新计时
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, DEBOUNCE_MS);
+        flushScheduled = true;
+    }
+
+    public void onTurnFinished() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        // 合并等待中的输入在腾出位置后立即发出（用户仍在输入时等计时结束）
+        if (!flushScheduled) {
+            flush();
+        }
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public int getInFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * 丢弃未发出的输入并忘记进行中的回合（由调用方负责取消它们）
+     */
+    public void clear() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        pending.clear();
+        inFlight = 0;
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        if (pending.isEmpty() || inFlight >= MAX_IN_FLIGHT_TURNS) return;
+
+        String merged = TextUtils.join("\n", pending);
+        pending.clear();
+        LatencyMetrics.recordSince("turn.queue_wait", firstPendingNanos);
+        if (sink.dispatch(merged)) {
+            inFlight++;
+        }
+    }
+}
@@ -12,6 +12,7 @@ from src.common.data_models.info_data_model import ActionPlannerInfo
 from src.common.data_models.llm_data_model import LLMGenerationDataModel
 from src.config.config import global_config, model_config
 from src.llm_models.utils_model import LLMRequest
+from src.llm_models.turn_scope import turn_scope
 from src.chat.message_receive.message import UserInfo, Seg, MessageRecv, MessageSending
 from src.chat.message_receive.chat_stream import ChatStream
 from src.chat.message_receive.uni_message_sender import UniversalMessageSender
@@ -799,12 +800,20 @@ class DefaultReplyer:
         # 将[picid:xxx]替换为具体的图片描述
         target = self._replace_picids_with_descriptions(target)
 
-        message_list_before_now_long = get_raw_msg_before_timestamp_with_chat(
-            chat_id=chat_id,
-            timestamp=reply_time_point,
-            limit=global_config.chat.max_context_size * 1,
-            filter_intercept_message_level=1,
-        )
+        # 宿主随回合传入的群聊上下文（包含其他Bot的发言，已按token预算截取）代替本聊天流的历史记录，
+        # 用户的消息在其中已经出现过，不再读取和排版本聊天流的长历史
+        scope = turn_scope.get()
+        host_context = scope.group_context() if scope is not None else ""
+        dialogue_prompt = host_context
+        if host_context:
+            message_list_before_now_long = []
+        else:
+            message_list_before_now_long = get_raw_msg_before_timestamp_with_chat(
+                chat_id=chat_id,
+                timestamp=reply_time_point,
+                limit=global_config.chat.max_context_size * 1,
+                filter_intercept_message_level=1,
+            )
 
         message_list_before_short = get_raw_msg_before_timestamp_with_chat(
             chat_id=chat_id,
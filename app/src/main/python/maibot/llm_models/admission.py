@@ -0,0 +1,152 @@
+"""
+LLM请求准入控制
+
+同一个 base_url + API Key 的所有请求共用一个限流器：请求先按发起者（Bot）排队，各发起者轮流放行，
+放行时需要令牌桶里有令牌（限制每秒请求数），且进行中的请求数未达上限。
+服务端返回429时整个Key暂停放行，重试等待取 Retry-After 与带抖动的指数退避中的较大者。
+与Android端 LlmRateLimiter 的行为一致，参数由宿主通过 configure_defaults 设置。
+限流器只在事件循环线程上使用。
+"""
+
+import asyncio
+import random
+import time
+from collections import OrderedDict, deque
+from contextlib import asynccontextmanager
+from email.utils import parsedate_to_datetime
+from typing import Deque, Dict, Optional, Tuple
+
+BACKOFF_BASE = 0.5
+BACKOFF_MAX = 30.0
+
+_default_requests_per_second = 3.0
+_default_max_in_flight = 4
+_limiters: Dict[Tuple[str, str], "RateLimiter"] = {}
+
+
+class RateLimiter:
+    def __init__(self, requests_per_second: float, max_in_flight: int):
+        self._rps = 1.0
+        self._capacity = 1.0
+        self._max_in_flight = 1
+        self.configure(requests_per_second, max_in_flight)
+        self._tokens = self._capacity
+        self._last_refill = time.monotonic()
+        self._paused_until = 0.0
+        self._in_flight = 0
+        # 发起者 -> 等待放行的请求，轮转顺序即 OrderedDict 的顺序
+        self._queues: "OrderedDict[str, Deque[asyncio.Future]]" = OrderedDict()
+        self._wakeup: Optional[asyncio.TimerHandle] = None
+
+    def configure(self, requests_per_second: float, max_in_flight: int):
+        self._rps = max(0.1, float(requests_per_second))
+        # 允许的突发量等于一秒的请求数，至少为1
+        self._capacity = max(1.0, float(int(self._rps + 0.999)))
+        self._max_in_flight = max(1, int(max_in_flight))
+
+    @asynccontextmanager
+    async def admit(self, owner: str = ""):
+        """排队等待放行，退出时释放并发名额"""
+        future = asyncio.get_running_loop().create_future()
+        self._queues.setdefault(owner, deque()).append(future)
+        self._pump()
+        try:
+            await future
+        except asyncio.CancelledError:
+            if future.done() and not future.cancelled():
+                # 已被放行但调用方同时被取消
+                self._release()
+            raise
+        try:
+            yield
+        finally:
+            self._release()
+
+    def throttle(self, delay: float):
+        """服务端限流（429）：整个Key暂停放行 delay 秒"""
+        self._paused_until = max(self._paused_until, time.monotonic() + delay)
+
+    def _release(self):
+        self._in_flight -= 1
+        self._pump()
+
+    def _pump(self):
+        while self._queues and self._in_flight < self._max_in_flight:
+            now = time.monotonic()
+            wait = self._paused_until - now
+            if wait <= 0:
+                self._refill(now)
+                wait = 0 if self._tokens >= 1 else (1 - self._tokens) / self._rps
+            if wait > 0:
+                self._schedule_wakeup(wait)
+                return
+
+            owner, queue = next(iter(self._queues.items()))
+            future = queue.popleft()
+            if queue:
+                self._queues.move_to_end(owner)
+            else:
+                del self._queues[owner]
+            if future.done():
+                # 等待期间已被取消
+                continue
+            self._tokens -= 1
+            self._in_flight += 1
+            future.set_result(None)
+
+    def _refill(self, now: float):
+        self._tokens = min(self._capacity, self._tokens + (now - self._last_refill) * self._rps)
+        self._last_refill = now
+
+    def _schedule_wakeup(self, delay: float):
+        if self._wakeup is not None and not self._wakeup.cancelled() and self._wakeup.when() > time.monotonic():
+            return
+        loop = asyncio.get_running_loop()
+        self._wakeup = loop.call_later(delay, self._pump)
+
+
+def configure_defaults(requests_per_second: float, max_in_flight: int):
+    """设置限流参数，已创建的限流器同时更新"""
+    global _default_requests_per_second, _default_max_in_flight
+    _default_requests_per_second = requests_per_second
+    _default_max_in_flight = max_in_flight
+    for limiter in _limiters.values():
+        limiter.configure(requests_per_second, max_in_flight)
+
+
+def limiter_for(base_url: str, api_key: str) -> RateLimiter:
+    key = (base_url or "", api_key or "")
+    limiter = _limiters.get(key)
+    if limiter is None:
+        limiter = RateLimiter(_default_requests_per_second, _default_max_in_flight)
+        _limiters[key] = limiter
+    return limiter
+
+
+def backoff_delay(attempt: int, retry_after: Optional[float] = None) -> float:
+    """第 attempt 次重试（从0开始）前的等待秒数：指数退避取一半固定、一半随机，不短于 Retry-After"""
+    exponential = min(BACKOFF_MAX, BACKOFF_BASE * (2 ** min(attempt, 16)))
+    delay = exponential / 2 + random.random() * exponential / 2
+    if retry_after is not None:
+        delay = max(delay, retry_after + random.random() * BACKOFF_BASE)
+    return delay
+
+
+def retry_after_seconds(error: BaseException) -> Optional[float]:
+    """从异常链中的HTTP响应取 Retry-After（秒数或HTTP日期），没有时返回None"""
+    while error is not None:
+        response = getattr(error, "response", None)
+        headers = getattr(response, "headers", None)
+        if headers is not None:
+            value = headers.get("retry-after")
+            if value:
+                try:
+                    return max(0.0, float(value))
+                except ValueError:
+                    try:
+                        return max(0.0, parsedate_to_datetime(value).timestamp() - time.time())
+                    except (TypeError, ValueError):
+                        return None
+            return None
+        error = error.__cause__
+    return None
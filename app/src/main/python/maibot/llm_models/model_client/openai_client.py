@@ -35,6 +35,7 @@ from ..exceptions import (
 from ..payload_content.message import Message, RoleType
 from ..payload_content.resp_format import RespFormat
 from ..payload_content.tool_option import ToolOption, ToolParam, ToolCall
+from ..reply_stream import reply_delta_listener
 
 logger = get_logger("llm_models")
 
@@ -296,6 +297,13 @@ async def _default_stream_response_handler(
     _usage_record = None  # 使用情况记录
     finish_reason: str | None = None  # 记录最后的 finish_reason
     _model_name: str | None = None  # 记录模型名
+    _listener = reply_delta_listener.get()  # 流式回复监听器（由宿主程序设置）
+
+    if _listener:
+        try:
+            _listener.on_reply_start()
+        except Exception as e:
+            logger.warning(f"流式回复监听器回调失败: {e}")
 
     def _insure_buffer_closed():
         # 确保缓冲区被关闭
@@ -309,8 +317,12 @@ async def _default_stream_response_handler(
 
     async for event in resp_stream:
         if interrupt_flag and interrupt_flag.is_set():
-            # 如果中断量被设置，则抛出ReqAbortException
+            # 如果中断量被设置，则关闭响应流（释放HTTP连接）并抛出ReqAbortException
             _insure_buffer_closed()
+            try:
+                await resp_stream.close()
+            except Exception as e:
+                logger.warning(f"关闭响应流失败: {e}")
             raise ReqAbortException("请求被外部信号中断")
         # 空 choices / usage-only 帧的防御
         if not hasattr(event, "choices") or not event.choices:
@@ -333,6 +345,7 @@ async def _default_stream_response_handler(
             # 标记：有独立的推理内容块
             _has_rc_attr_flag = True
 
+        _fc_len_before = _fc_delta_buffer.tell()
         _in_rc_flag = _process_delta(
             delta,
             _has_rc_attr_flag,
@@ -342,6 +355,13 @@ async def _default_stream_response_handler(
             _tool_calls_buffer,
         )
 
+        if _listener and _fc_delta_buffer.tell() > _fc_len_before:
+            # 只有正式内容会写入该缓冲区，推理内容和工具调用不会转发
+            try:
+                _listener.on_reply_delta(delta.content)
+            except Exception as e:
+                logger.warning(f"流式回复监听器回调失败: {e}")
+
         if event.usage:
             # 如果有使用情况，则将其存储在APIResponse对象中
             _usage_record = (
@@ -555,7 +575,7 @@ class OpenaiClient(BaseClient):
         tools: Iterable[ChatCompletionToolParam] = _convert_tool_options(tool_options) if tool_options else NOT_GIVEN  # type: ignore
 
         try:
-            if model_info.force_stream_mode:
+            if model_info.force_stream_mode or reply_delta_listener.get() is not None:
                 req_task = asyncio.create_task(
                     self.client.chat.completions.create(
                         model=model_info.model_identifier,
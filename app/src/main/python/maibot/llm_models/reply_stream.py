@@ -0,0 +1,23 @@
+"""
+回复流式输出监听
+
+宿主程序可以为某个聊天循环设置监听器：回复生成（replyer）请求会改用流式模式，
+并把正式内容的增量文本实时转发给监听器，其它请求（规划、工具调用等）不受影响。
+监听器保存在 ContextVar 中，随 asyncio 任务的上下文传递。
+"""
+
+from contextvars import ContextVar
+from typing import Optional, Protocol
+
+
+class ReplyDeltaListener(Protocol):
+    def on_reply_start(self) -> None:
+        """一次回复请求开始（重试时会再次调用）"""
+        ...
+
+    def on_reply_delta(self, text: str) -> None:
+        """收到一段正式内容的增量文本"""
+        ...
+
+
+reply_delta_listener: ContextVar[Optional[ReplyDeltaListener]] = ContextVar("reply_delta_listener", default=None)
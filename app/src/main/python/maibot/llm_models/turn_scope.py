@@ -0,0 +1,80 @@
+"""
+对话回合取消
+
+宿主程序可以为某个聊天循环设置回合作用域：每个回合开始时调用 begin(turn_id)，
+之后发起的回复请求都以该回合的中断信号量作为 interrupt_flag，宿主调用 cancel(turn_id) 时
+正在进行的请求会被中断（连同HTTP连接），同一回合后续的请求也会直接放弃。
+作用域保存在 ContextVar 中，随 asyncio 任务的上下文传递。
+宿主还可以随回合传入群聊上下文，生成回复时代替本聊天流的历史记录。
+
+同一个Bot可能有两个回合在进行：宿主在聊天循环每个周期开始时把该周期所处理的回合记入 cycle_turn，
+周期内的请求、流式回复和群聊上下文都按这个回合取，不会被之后开始的回合覆盖。
+"""
+
+import asyncio
+from collections import OrderedDict
+from contextvars import ContextVar
+from typing import Optional
+
+
+class TurnScope:
+    MAX_TRACKED_TURNS = 8  # 只保留最近几个回合的信号量，更早的回合无法再取消
+
+    def __init__(self, owner: str = ""):
+        # 作用域的所有者（Bot），限流器按它轮流放行请求
+        self.owner = owner
+        # 最近开始的回合
+        self.turn_id: Optional[str] = None
+        # 回合ID -> 该回合的群聊上下文（宿主生成，所有Bot共用同一份）
+        self._contexts: "OrderedDict[str, str]" = OrderedDict()
+        self._flags: "OrderedDict[str, asyncio.Event]" = OrderedDict()
+
+    def begin(self, turn_id: str, group_context: str = ""):
+        """开始一个新回合，之后开始的聊天循环周期都归属于该回合"""
+        self.turn_id = turn_id
+        self._contexts[turn_id] = group_context or ""
+        while len(self._contexts) > self.MAX_TRACKED_TURNS:
+            self._contexts.popitem(last=False)
+        self._flag_for(turn_id)
+
+    def current_turn(self) -> Optional[str]:
+        """当前周期所处理的回合，不在聊天循环周期内时为最近开始的回合"""
+        return cycle_turn.get() or self.turn_id
+
+    def group_context(self) -> str:
+        """当前回合的群聊上下文，宿主没有传入时为空"""
+        turn_id = self.current_turn()
+        return self._contexts.get(turn_id, "") if turn_id else ""
+
+    def cancel(self, turn_id: str) -> bool:
+        """取消指定回合，返回该回合是否仍在跟踪范围内"""
+        flag = self._flags.get(turn_id)
+        if flag is None:
+            return False
+        flag.set()
+        return True
+
+    def is_cancelled(self, turn_id: Optional[str]) -> bool:
+        flag = self._flags.get(turn_id) if turn_id else None
+        return flag is not None and flag.is_set()
+
+    def interrupt_flag(self) -> Optional[asyncio.Event]:
+        """当前回合的中断信号量，尚未开始任何回合时为None"""
+        turn_id = self.current_turn()
+        if turn_id is None:
+            return None
+        return self._flag_for(turn_id)
+
+    def _flag_for(self, turn_id: str) -> asyncio.Event:
+        flag = self._flags.get(turn_id)
+        if flag is None:
+            # 只在事件循环线程上创建，Event 会绑定到当前循环
+            flag = asyncio.Event()
+            self._flags[turn_id] = flag
+            while len(self._flags) > self.MAX_TRACKED_TURNS:
+                self._flags.popitem(last=False)
+        return flag
+
+
+turn_scope: ContextVar[Optional[TurnScope]] = ContextVar("turn_scope", default=None)
+cycle_turn: ContextVar[Optional[str]] = ContextVar("cycle_turn", default=None)
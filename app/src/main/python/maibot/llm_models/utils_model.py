@@ -16,11 +16,15 @@ from .payload_content.resp_format import RespFormat
 from .payload_content.tool_option import ToolOption, ToolCall, ToolOptionBuilder, ToolParamType
 from .model_client.base_client import BaseClient, APIResponse, client_registry
 from .utils import compress_messages, llm_usage_recorder
+from .reply_stream import reply_delta_listener
+from .turn_scope import turn_scope
+from .admission import limiter_for, backoff_delay, retry_after_seconds
 from .exceptions import (
     NetworkConnectionError,
     RespNotOkException,
     EmptyResponseException,
     ModelAttemptFailed,
+    ReqAbortException,
 )
 
 install(extra_lines=3)
@@ -327,6 +331,10 @@ class LLMRequest:
         """
         retry_remain = api_provider.max_retry
         compressed_messages: Optional[List[Message]] = None
+        # 同一个Key的请求共用限流器，按发起请求的Bot轮流放行
+        limiter = limiter_for(api_provider.base_url, api_provider.api_key)
+        owner_scope = turn_scope.get()
+        owner = owner_scope.owner if owner_scope else ""
 
         while retry_remain > 0:
             try:
@@ -349,31 +357,48 @@ class LLMRequest:
                     if effective_max_tokens is None:
                         effective_max_tokens = self.model_for_task.max_tokens
 
-                    return await client.get_response(
-                        model_info=model_info,
-                        message_list=(compressed_messages or message_list),
-                        tool_options=tool_options,
-                        max_tokens=effective_max_tokens,
-                        temperature=effective_temperature,
-                        response_format=response_format,
-                        stream_response_handler=stream_response_handler,
-                        async_response_parser=async_response_parser,
-                        extra_params=model_info.extra_params,
-                    )
+                    # 只有回复生成请求才把增量文本转发给流式监听器
+                    listener = reply_delta_listener.get() if self.request_type.startswith("replyer") else None
+
+                    # 所属回合已被宿主取消时直接放弃，进行中的请求通过 interrupt_flag 中断
+                    scope = turn_scope.get()
+                    interrupt_flag = scope.interrupt_flag() if scope else None
+                    if interrupt_flag is not None and interrupt_flag.is_set():
+                        raise ReqAbortException("所属回合已取消")
+
+                    listener_token = reply_delta_listener.set(listener)
+                    try:
+                        async with limiter.admit(owner):
+                            return await client.get_response(
+                                model_info=model_info,
+                                message_list=(compressed_messages or message_list),
+                                tool_options=tool_options,
+                                max_tokens=effective_max_tokens,
+                                temperature=effective_temperature,
+                                response_format=response_format,
+                                stream_response_handler=stream_response_handler,
+                                async_response_parser=async_response_parser,
+                                interrupt_flag=interrupt_flag,
+                                extra_params=model_info.extra_params,
+                            )
+                    finally:
+                        reply_delta_listener.reset(listener_token)
                 elif request_type == RequestType.EMBEDDING:
                     assert embedding_input is not None, "嵌入输入不能为空"
-                    return await client.get_embedding(
-                        model_info=model_info,
-                        embedding_input=embedding_input,
-                        extra_params=model_info.extra_params,
-                    )
+                    async with limiter.admit(owner):
+                        return await client.get_embedding(
+                            model_info=model_info,
+                            embedding_input=embedding_input,
+                            extra_params=model_info.extra_params,
+                        )
                 elif request_type == RequestType.AUDIO:
                     assert audio_base64 is not None, "音频Base64不能为空"
-                    return await client.get_audio_transcriptions(
-                        model_info=model_info,
-                        audio_base64=audio_base64,
-                        extra_params=model_info.extra_params,
-                    )
+                    async with limiter.admit(owner):
+                        return await client.get_audio_transcriptions(
+                            model_info=model_info,
+                            audio_base64=audio_base64,
+                            extra_params=model_info.extra_params,
+                        )
             except EmptyResponseException as e:
                 # 空回复：通常为临时问题，单独记录并重试
                 original_error_info = self._get_original_error_info(e)
@@ -403,7 +428,7 @@ class LLMRequest:
                     f"  其它可能原因: 网络波动、DNS 故障、连接超时、防火墙限制或代理问题\n"
                     f"  剩余重试次数: {retry_remain}"
                 )
-                await asyncio.sleep(api_provider.retry_interval)
+                await asyncio.sleep(backoff_delay(api_provider.max_retry - retry_remain - 1))
 
             except RespNotOkException as e:
                 original_error_info = self._get_original_error_info(e)
@@ -417,10 +442,15 @@ class LLMRequest:
                         )
                         raise ModelAttemptFailed(f"模型 '{model_info.name}' 重试耗尽", original_exception=e) from e
 
+                    # 带抖动的指数退避，不短于服务端给出的 Retry-After；429时同一个Key的其他请求也一起暂停
+                    delay = backoff_delay(api_provider.max_retry - retry_remain - 1, retry_after_seconds(e))
+                    if e.status_code == 429:
+                        limiter.throttle(delay)
                     logger.warning(
-                        f"模型 '{model_info.name}' 遇到可重试的HTTP错误: {str(e)}{original_error_info}。剩余重试次数: {retry_remain}"
+                        f"模型 '{model_info.name}' 遇到可重试的HTTP错误: {str(e)}{original_error_info}。"
+                        f"剩余重试次数: {retry_remain}，{delay:.1f}秒后重试"
                     )
-                    await asyncio.sleep(api_provider.retry_interval)
+                    await asyncio.sleep(delay)
                     continue
 
                 # 特殊处理413，尝试压缩
@@ -434,6 +464,10 @@ class LLMRequest:
                 logger.warning(f"模型 '{model_info.name}' 遇到不可重试的HTTP错误: {str(e)}{original_error_info}")
                 raise ModelAttemptFailed(f"模型 '{model_info.name}' 遇到硬错误", original_exception=e) from e
 
+            except ReqAbortException:
+                # 请求被外部中断：不重试，也不切换模型
+                raise
+
             except Exception as e:
                 logger.error(traceback.format_exc())
 
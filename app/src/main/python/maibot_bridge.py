@@ -7,18 +7,65 @@ import json
 import os
 import sys
 import asyncio
+import gc
+import threading
 import time
-from typing import List, Dict, Any, Callable, Optional
+import types
+from typing import List, Dict, Any, Callable, Optional, Set, Tuple
+from collections import OrderedDict
 from queue import Queue
 
-# 添加MaiBot源码路径
+import msgpack
+
+# MaiBot源码以 src 包导入自身（from src.xxx import ...），这里把 maibot 目录登记为 src 包。
+# 桥接层也必须经 src.xxx 导入：同一个文件以两个模块名加载会得到两份模块对象，
+# 回合作用域、流式监听器的 ContextVar 和配置对象各有两份，桥接层设置的值MaiBot读不到
 maibot_path = os.path.join(os.path.dirname(__file__), 'maibot')
-if maibot_path not in sys.path:
-    sys.path.insert(0, maibot_path)
+if 'src' not in sys.modules:
+    _src_package = types.ModuleType('src')
+    _src_package.__path__ = [maibot_path]
+    sys.modules['src'] = _src_package
 
 # 设置Android环境标识
 os.environ['MAIBOT_ANDROID'] = '1'
 
+# 二进制载荷的字段顺序，需与 BotPayloadCodec.java 保持一致（只能在末尾追加字段）
+RESPONSE_FIELDS = ("bot_id", "bot_name", "color", "content", "reply_id", "turn_id")
+BOT_INFO_FIELDS = ("id", "name", "color")
+
+# 同时加载（持有聊天流和聊天循环）的Bot上限，超出时卸载最久未被选中的空闲Bot；
+# 不小于 BotRoster.MAX_FAN_OUT_LIMIT，一个回合选中的Bot不会互相挤出（宿主在 max_loaded_bots 中传入）
+DEFAULT_MAX_LOADED_BOTS = 10
+
+# 内存紧张时每个Bot保留的聊天循环记录条数（history_loop 只追加、不被读取，会一直增长）
+TRIM_KEEP_CYCLES = 5
+
+# 宿主未传入LLM设置时的默认值，与 BotSettings.java 一致
+DEFAULT_BASE_URL = "https://api.deepseek.com"
+DEFAULT_MODEL_NAME = "deepseek-chat"
+
+# 宿主未传入阵容时使用的内置人设，与 BotRoster.java 中的 BUILT_IN 一致
+DEFAULT_BOT_CONFIGS = [
+    {"name": "麦麦", "personality": "活泼可爱、充满个性的少女，喜欢用可爱的语气词", "color": "#FF6B9D"},
+    {"name": "小智", "personality": "理性严谨的技术专家，逻辑清晰，注重细节", "color": "#4A90E2"},
+    {"name": "诗诗", "personality": "温柔文艺的诗人，优雅含蓄，富有诗意", "color": "#9B59B6"},
+    {"name": "阿乐", "personality": "幽默风趣的段子手，善于活跃气氛", "color": "#F39C12"},
+    {"name": "小月", "personality": "温暖贴心的倾听者，善于理解和安慰", "color": "#E91E63"},
+]
+
+
+def _turn_seq(turn_id: Optional[str]) -> Optional[int]:
+    """回合ID是Java端递增的序号，不是数字时返回None"""
+    try:
+        return int(turn_id)
+    except (TypeError, ValueError):
+        return None
+
+
+def _pack_records(records: List[Dict[str, Any]], fields) -> bytes:
+    """把记录列表打包成按位置排列的msgpack数组，不携带键名"""
+    return msgpack.packb([[record.get(field) for field in fields] for record in records], use_bin_type=True)
+
 
 class AndroidMessageSender:
     """Android消息发送器 - 拦截MaiBot的消息发送，转发到Android"""
@@ -26,28 +73,68 @@ class AndroidMessageSender:
     def __init__(self):
         self.message_queue = Queue()
         self.callback = None
+        self.delta_callback = None
+        self.turn_done_callback = None
         
-    def set_callback(self, callback: Callable[[str, str, str, str], None]):
+    def set_callback(self, callback: Callable[[str, str, str, str, Optional[str], Optional[str]], None],
+                     delta_callback: Optional[Callable[[str, str, str, str, Optional[str], str, bool], None]] = None,
+                     turn_done_callback: Optional[Callable[[str, str], None]] = None):
         """设置消息回调函数
         
         Args:
-            callback: 回调函数(bot_id, bot_name, color, content)
+            callback: 回调函数(bot_id, bot_name, color, content, reply_id, turn_id)
+            delta_callback: 流式增量回调函数(bot_id, bot_name, color, reply_id, turn_id, text, reset)
+            turn_done_callback: Bot处理完一个回合时的回调函数(bot_id, turn_id)
         """
         self.callback = callback
+        self.delta_callback = delta_callback
+        self.turn_done_callback = turn_done_callback
     
-    async def send_message(self, bot_id: str, bot_name: str, color: str, content: str):
-        """发送消息到Android"""
-        if self.callback:
-            # 通过回调发送到Java层
-            self.callback(bot_id, bot_name, color, content)
-        else:
-            # 放入队列等待获取
-            self.message_queue.put({
-                "bot_id": bot_id,
-                "bot_name": bot_name,
-                "color": color,
-                "content": content
-            })
+    async def send_message(self, bot_id: str, bot_name: str, color: str, content: str,
+                           reply_id: Optional[str] = None, turn_id: Optional[str] = None):
+        """发送消息到Android
+        
+        reply_id 不为空时，表示这条消息是该流式回复的最终内容；
+        turn_id 为这条回复所属的对话回合（由Java端在发送时分配）
+        """
+        callback = self.callback
+        if callback:
+            try:
+                # 通过回调直接推送到Java层
+                callback(bot_id, bot_name, color, content, reply_id, turn_id)
+                return
+            except Exception as e:
+                # 推送失败时退回队列，由Java端的兜底轮询取走
+                print(f"推送回复到Java失败，转入队列: {e}")
+        
+        # 放入队列等待获取
+        self.message_queue.put({
+            "bot_id": bot_id,
+            "bot_name": bot_name,
+            "color": color,
+            "content": content,
+            "reply_id": reply_id,
+            "turn_id": turn_id
+        })
+    
+    def send_delta(self, bot_id: str, bot_name: str, color: str, reply_id: str, turn_id: Optional[str],
+                   text: str, reset: bool = False):
+        """推送流式回复的增量文本（仅推送模式，最终内容仍以 send_message 为准）"""
+        delta_callback = self.delta_callback
+        if delta_callback:
+            try:
+                delta_callback(bot_id, bot_name, color, reply_id, turn_id, text, reset)
+            except Exception as e:
+                print(f"推送增量文本到Java失败: {e}")
+    
+    def send_turn_done(self, bot_id: str, turn_id: str):
+        """通知Java端某个Bot已处理完该回合（回复或决定不回复），仅推送模式"""
+        turn_done_callback = self.turn_done_callback
+        if turn_done_callback:
+            try:
+                turn_done_callback(bot_id, turn_id)
+            except Exception as e:
+                print(f"推送回合完成到Java失败: {e}")
     
     def get_pending_messages(self) -> List[Dict[str, str]]:
         """获取待处理的消息"""
@@ -61,35 +148,242 @@ class AndroidMessageSender:
 _android_sender = AndroidMessageSender()
 
 
+class BotReplyStream:
+    """单个Bot的流式回复状态，把LLM的增量文本转发到Android
+    
+    实现 src.llm_models.reply_stream.ReplyDeltaListener，每次回复生成分配一个reply_id，
+    Android端据此把增量文本追加到同一个气泡中，最终消息到达时再替换为完整内容。
+    回复开始时记下当时所属的回合，之后的增量和最终消息都带上该回合ID。
+    """
+    
+    def __init__(self, bot: "MaiBotInstance"):
+        self.bot = bot
+        self.reply_id: Optional[str] = None
+        self.turn_id: Optional[str] = None
+        self._seq = 0
+    
+    def on_reply_start(self):
+        if self.reply_id:
+            # 同一回复的重试：沿用原气泡，清空已推送的内容
+            self._send("", reset=True)
+            return
+        self._seq += 1
+        self.reply_id = f"{self.bot.bot_id}_r{self._seq}_{int(time.time() * 1000)}"
+        self.turn_id = self.bot.turn_scope.current_turn()
+    
+    def on_reply_delta(self, text: str):
+        if self.reply_id and text:
+            self._send(text)
+    
+    def take_reply(self) -> Tuple[Optional[str], Optional[str]]:
+        """取出当前回复的 (reply_id, turn_id)，之后的增量会开启新的回复
+        
+        没有经过流式输出的回复以当前回合为准。
+        """
+        reply_id = self.reply_id
+        turn_id = self.turn_id if reply_id else self.bot.turn_scope.current_turn()
+        self.reply_id = None
+        self.turn_id = None
+        return reply_id, turn_id
+    
+    def _send(self, text: str, reset: bool = False):
+        _android_sender.send_delta(self.bot.bot_id, self.bot.name, self.bot.color,
+                                   self.reply_id, self.turn_id, text, reset)
+
+
+class BridgeRuntime:
+    """常驻事件循环 - 由Java端的专用线程驱动，整个会话只创建一次
+    
+    所有Bot的处理流程都调度到同一个循环上，跨回合的任务不会因循环关闭而被丢弃。
+    """
+    
+    def __init__(self):
+        self.loop = asyncio.new_event_loop()
+        self._thread_id = None
+        self._tasks = set()
+    
+    def run_forever(self):
+        """在调用线程上运行事件循环，直到 stop() 被调用
+        
+        循环停止后不会关闭，下次调用时继续运行，挂起的任务也会恢复执行。
+        """
+        asyncio.set_event_loop(self.loop)
+        self._thread_id = threading.get_ident()
+        try:
+            self.loop.run_forever()
+        finally:
+            self._thread_id = None
+    
+    def stop(self):
+        """停止事件循环（线程安全）"""
+        self.loop.call_soon_threadsafe(self.loop.stop)
+    
+    def in_loop_thread(self) -> bool:
+        return threading.get_ident() == self._thread_id
+    
+    def submit_job(self, job):
+        """提交Java任务（java.lang.Runnable）到循环线程上执行（线程安全）"""
+        self.loop.call_soon_threadsafe(self._run_job, job)
+    
+    def _run_job(self, job):
+        try:
+            job.run()
+        except Exception as e:
+            print(f"桥接任务执行失败: {e}")
+            import traceback
+            traceback.print_exc()
+    
+    def spawn(self, coro):
+        """在常驻循环上调度协程，可从任意线程调用"""
+        if self.in_loop_thread():
+            task = self.loop.create_task(coro)
+            # 事件循环只持有任务的弱引用，这里保留强引用直到任务结束
+            self._tasks.add(task)
+            task.add_done_callback(self._tasks.discard)
+            return task
+        return asyncio.run_coroutine_threadsafe(coro, self.loop)
+
+
+# 全局事件循环
+_runtime = BridgeRuntime()
+
+# 聊天流ID -> 已加载的Bot，消息发送拦截器据此找到发送消息的Bot
+_bots_by_stream: Dict[str, "MaiBotInstance"] = {}
+_sender_installed = False
+
+
+def _apply_llm_settings(llm: Dict[str, Any]):
+    """把设置页的API Key、地址和模型写入MaiBot配置
+    
+    所有Bot共用这份配置。LLM客户端按API提供商缓存，提供商的Key或地址变化时丢弃旧客户端，
+    下一次请求按新设置创建；已加载的Bot、聊天流和插件都不受影响。
+    """
+    from src.config.config import global_config, model_config
+    from src.llm_models.model_client.base_client import client_registry
+    
+    api_key = llm.get("api_key", "")
+    base_url = llm.get("base_url") or DEFAULT_BASE_URL
+    model_name = llm.get("model_name") or DEFAULT_MODEL_NAME
+    
+    global_config.llm.api_key = api_key
+    global_config.llm.model_name = model_name
+    global_config.llm.base_url = base_url
+    
+    # 应用只接入一个OpenAI兼容的服务，所有OpenAI类型的提供商和它们的模型都指向设置中的服务和模型
+    providers = set()
+    for provider in model_config.api_providers:
+        if provider.client_type != "openai":
+            continue
+        if provider.api_key != api_key or provider.base_url != base_url:
+            provider.api_key = api_key
+            provider.base_url = base_url
+            client_registry.client_instance_cache.pop(provider.name, None)
+        providers.add(provider.name)
+    for model in model_config.models:
+        if model.api_provider in providers:
+            model.model_identifier = model_name
+
+
+def _install_message_sender():
+    """拦截MaiBot的消息发送并转发到Android（全局只包装一次，按聊天流分发给对应的Bot）"""
+    global _sender_installed
+    if _sender_installed:
+        return
+    try:
+        from src.chat.message_receive.uni_message_sender import UniMessageSender
+
+        # 保存原始发送方法
+        original_send = UniMessageSender.send_message
+
+        async def wrapped_send(self_sender, *args, **kwargs):
+            # 调用原始方法
+            result = await original_send(self_sender, *args, **kwargs)
+
+            # 提取消息内容并发送到Android
+            if args and len(args) > 0:
+                chat_stream = getattr(args[0], "chat_stream", None)
+                bot_instance = _bots_by_stream.get(getattr(chat_stream, "stream_id", None))
+                content = str(args[0]) if args[0] else ""
+                if bot_instance is not None and content:
+                    reply_id, turn_id = bot_instance.reply_stream.take_reply()
+                    if bot_instance.turn_scope.is_cancelled(turn_id):
+                        # 所属回合已取消，丢弃迟到的回复
+                        return result
+                    await _android_sender.send_message(
+                        bot_instance.bot_id,
+                        bot_instance.name,
+                        bot_instance.color,
+                        content,
+                        reply_id,
+                        turn_id
+                    )
+
+            return result
+
+        # 替换发送方法
+        UniMessageSender.send_message = wrapped_send
+        _sender_installed = True
+
+    except Exception as e:
+        print(f"注入消息发送器失败: {e}")
+
+
 class MaiBotInstance:
     """完整的MaiBot实例，保留所有原有功能"""
     
-    def __init__(self, bot_id: str, name: str, personality: str, color: str, api_key: str):
+    def __init__(self, bot_id: str, name: str, personality: str, color: str):
+        from src.llm_models.turn_scope import TurnScope
+        
         self.bot_id = bot_id
         self.name = name
         self.personality = personality
         self.color = color
-        self.api_key = api_key
         self.chat_bot = None
         self.chat_stream = None
         self.heartflow_chat = None
         self.initialized = False
         self.message_sender = _android_sender
+        self.reply_stream = BotReplyStream(self)
+        self.turn_scope = TurnScope(bot_id)
+        # 回合ID -> 该回合的消息处理任务
+        self._turn_tasks: Dict[str, Any] = {}
+        # 被选中但尚未报告完成的回合；回复由聊天循环在消息处理任务结束之后生成，报告完成之前不能卸载
+        self._pinned_turns: Set[str] = set()
+        # 加载/卸载互斥，同一个Bot被多个回合同时选中时只加载一次
+        self._load_lock = asyncio.Lock()
+    
+    @property
+    def busy(self) -> bool:
+        """还有回合在处理中，不能卸载"""
+        return bool(self._pinned_turns) or any(not task.done() for task in self._turn_tasks.values())
+    
+    def pin_turn(self, turn_id: Optional[str]):
+        """被回合选中：在报告完成之前不被卸载"""
+        if turn_id:
+            self._pinned_turns.add(turn_id)
+    
+    def finish_turn(self, turn_id: str):
+        """通知Java端该Bot处理完了回合，处理完一个回合也意味着处理完了更早的回合"""
+        seq = _turn_seq(turn_id)
+        self._pinned_turns = {
+            pinned for pinned in self._pinned_turns
+            if pinned != turn_id and (seq is None or _turn_seq(pinned) is None or _turn_seq(pinned) > seq)
+        }
+        _android_sender.send_turn_done(self.bot_id, turn_id)
         
     async def initialize(self):
         """初始化MaiBot核心组件"""
         try:
             # 导入MaiBot核心模块
-            from config.config import global_config
-            from chat.message_receive.bot import ChatBot
-            from chat.message_receive.chat_stream import get_chat_manager
-            from chat.heart_flow.heartflow import heartflow
-            from common.data_models.info_data_model import UserInfo, GroupInfo
+            from src.config.config import global_config
+            from src.chat.message_receive.bot import ChatBot
+            from src.chat.message_receive.chat_stream import get_chat_manager
+            from src.chat.heart_flow.heartflow import heartflow
+            from src.common.data_models.info_data_model import UserInfo, GroupInfo
+            from src.llm_models.reply_stream import reply_delta_listener
+            from src.llm_models.turn_scope import turn_scope
             
-            # 配置API（每个Bot独立配置）
-            global_config.llm.api_key = self.api_key
-            global_config.llm.model_name = "deepseek-chat"
-            global_config.llm.base_url = "https://api.deepseek.com"
+            # LLM接入设置由 _apply_llm_settings 统一配置，这里只设置昵称
             global_config.bot.nickname = self.name
             
             # 创建ChatBot实例
@@ -118,12 +412,21 @@ class MaiBotInstance:
             )
             
             # 创建HeartFlow聊天实例（这是MaiBot的核心对话管理器）
-            self.heartflow_chat = await heartflow.get_or_create_heartflow_chat(
-                self.chat_stream.stream_id
-            )
+            # 聊天循环任务在此创建并继承当前上下文，因此流式监听器和回合作用域只对本Bot生效
+            listener_token = reply_delta_listener.set(self.reply_stream)
+            scope_token = turn_scope.set(self.turn_scope)
+            try:
+                self.heartflow_chat = await heartflow.get_or_create_heartflow_chat(
+                    self.chat_stream.stream_id
+                )
+            finally:
+                turn_scope.reset(scope_token)
+                reply_delta_listener.reset(listener_token)
             
-            # 注入自定义消息发送器（拦截MaiBot的消息发送）
-            self._inject_message_sender()
+            # 按聊天流登记到消息发送拦截器（拦截MaiBot的消息发送）
+            _install_message_sender()
+            _bots_by_stream[self.chat_stream.stream_id] = self
+            self._track_turn_cycles()
             
             self.initialized = True
             print(f"✓ {self.name} 初始化成功（完整MaiBot功能）")
@@ -135,47 +438,45 @@ class MaiBotInstance:
             traceback.print_exc()
             return False
     
-    def _inject_message_sender(self):
-        """注入自定义消息发送器，拦截MaiBot的消息发送"""
-        try:
-            from chat.message_receive.uni_message_sender import UniMessageSender
-            
-            # 保存原始发送方法
-            original_send = UniMessageSender.send_message
-            bot_instance = self
-            
-            # 创建包装方法
-            async def wrapped_send(self_sender, *args, **kwargs):
-                # 调用原始方法
-                result = await original_send(self_sender, *args, **kwargs)
-                
-                # 提取消息内容并发送到Android
-                if args and len(args) > 0:
-                    content = str(args[0]) if args[0] else ""
-                    if content:
-                        await _android_sender.send_message(
-                            bot_instance.bot_id,
-                            bot_instance.name,
-                            bot_instance.color,
-                            content
-                        )
-                
-                return result
-            
-            # 替换发送方法
-            UniMessageSender.send_message = wrapped_send
-            
-        except Exception as e:
-            print(f"注入消息发送器失败: {e}")
+    def _track_turn_cycles(self):
+        """包装聊天循环的观察周期：每个周期结束时（已回复或决定不回复）通知Java端该Bot完成了当时的回合"""
+        from src.llm_models.turn_scope import cycle_turn
+        
+        heartflow_chat = self.heartflow_chat
+        if heartflow_chat is None:
+            return
+        original_observe = heartflow_chat._observe
+        bot_instance = self
+        
+        async def observe_with_turn(*args, **kwargs):
+            # 本周期处理到最近开始的回合为止，周期内按该回合取上下文，之后开始的回合不影响本周期
+            turn_id = bot_instance.turn_scope.turn_id
+            cycle_token = cycle_turn.set(turn_id)
+            try:
+                return await original_observe(*args, **kwargs)
+            finally:
+                cycle_turn.reset(cycle_token)
+                if turn_id:
+                    bot_instance.finish_turn(turn_id)
+        
+        heartflow_chat._observe = observe_with_turn
     
-    async def process_message(self, user_message: str, user_name: str = "用户"):
+    async def process_message(self, user_message: str, user_name: str = "用户", turn_id: Optional[str] = None,
+                              group_context: str = ""):
         """使用MaiBot完整流程处理消息（异步，不等待回复）"""
         if not self.initialized:
             print(f"{self.name} 未初始化")
+            # 不会有聊天循环报告完成，直接告诉Java端不用再等
+            if turn_id:
+                self.finish_turn(turn_id)
             return
         
+        if turn_id:
+            # 群聊上下文随回合生效，生成回复时代替本聊天流的历史记录
+            self.turn_scope.begin(turn_id, group_context)
+        
         try:
-            from common.data_models.info_data_model import (
+            from src.common.data_models.info_data_model import (
                 MessageInfo, UserInfo, GroupInfo, AdditionalConfig
             )
             
@@ -209,7 +510,10 @@ class MaiBotInstance:
             # 使用MaiBot的完整消息处理流程（异步执行）
             # 这会触发：记忆检索、上下文管理、工具调用、插件系统等所有功能
             # 回复会通过注入的消息发送器异步返回
-            asyncio.create_task(self.chat_bot.message_process(message_data))
+            task = _runtime.spawn(self.chat_bot.message_process(message_data))
+            if turn_id:
+                self._turn_tasks[turn_id] = task
+                task.add_done_callback(lambda done: self._on_turn_task_done(turn_id, done))
             
             print(f"→ {self.name} 开始处理消息")
             
@@ -224,8 +528,79 @@ class MaiBotInstance:
                 self.bot_id,
                 self.name,
                 self.color,
-                error_msg
+                error_msg,
+                turn_id=turn_id
             )
+            if turn_id:
+                self.finish_turn(turn_id)
+    
+    def _on_turn_task_done(self, turn_id: str, task):
+        self._turn_tasks.pop(turn_id, None)
+        # 消息处理出错时聊天循环不会处理这条消息，直接报告完成；取消的回合Java端已不再等待
+        if not task.cancelled() and task.exception() is not None:
+            print(f"✗ {self.name} 处理回合 {turn_id} 出错: {task.exception()}")
+            self.finish_turn(turn_id)
+    
+    def cancel_turn(self, turn_id: str):
+        """取消回合：中止消息处理任务，中断该回合进行中的LLM请求"""
+        task = self._turn_tasks.pop(turn_id, None)
+        if task is not None and not task.done():
+            task.cancel()
+        self._pinned_turns.discard(turn_id)
+        if self.turn_scope.cancel(turn_id):
+            # 正在流式输出的回复作废，之后到达的最终消息会被丢弃
+            if self.reply_stream.turn_id == turn_id:
+                self.reply_stream.take_reply()
+            print(f"✓ {self.name} 已取消回合 {turn_id}")
+    
+    async def unload(self):
+        """卸载Bot：停止聊天循环和后台概括任务，释放聊天流，之后被选中时重新加载"""
+        if not self.initialized:
+            return
+        try:
+            from src.chat.heart_flow.heartflow import heartflow
+            
+            for task in list(self._turn_tasks.values()):
+                task.cancel()
+            self._turn_tasks.clear()
+            self._pinned_turns.clear()
+            
+            chat = self.heartflow_chat
+            if chat is not None:
+                chat.running = False
+                loop_task = getattr(chat, "_loop_task", None)
+                if loop_task is not None:
+                    loop_task.cancel()
+                summarizer = getattr(chat, "chat_history_summarizer", None)
+                if summarizer is not None:
+                    await summarizer.stop()
+                heartflow.heartflow_chat_list.pop(self.chat_stream.stream_id, None)
+            from src.chat.replyer.replyer_manager import replyer_manager
+            
+            # 回复器持有提示词模板和工具执行器，重新加载时按需再建
+            replyer_manager._repliers.pop(self.chat_stream.stream_id, None)
+            _bots_by_stream.pop(self.chat_stream.stream_id, None)
+        except Exception as e:
+            print(f"✗ 卸载{self.name}失败: {e}")
+        finally:
+            self.heartflow_chat = None
+            self.chat_stream = None
+            self.chat_bot = None
+            self.initialized = False
+        print(f"✓ {self.name} 已卸载")
+    
+    def release_caches(self):
+        """内存紧张时释放可重建的缓存：截短聊天循环记录，清空回复器的工具调用缓存"""
+        chat = self.heartflow_chat
+        if chat is not None and len(chat.history_loop) > TRIM_KEEP_CYCLES:
+            del chat.history_loop[:-TRIM_KEEP_CYCLES]
+        if self.chat_stream is not None:
+            from src.chat.replyer.replyer_manager import replyer_manager
+            
+            replyer = replyer_manager._repliers.get(self.chat_stream.stream_id)
+            tool_executor = getattr(replyer, "tool_executor", None)
+            if tool_executor is not None:
+                tool_executor.tool_cache.clear()
     
     def clear_history(self):
         """清空对话历史"""
@@ -242,19 +617,25 @@ class MaiBotBridge:
     """MaiBot完整功能桥接层"""
     
     def __init__(self):
+        # 阵容中的所有Bot（含未加载的），按阵容顺序
         self.bot_instances = []
         self.initialized = False
         self._init_lock = None
+        self.max_loaded_bots = DEFAULT_MAX_LOADED_BOTS
+        # 已加载的Bot ID，按最近被选中的顺序，最久未选中的在前
+        self._loaded: "OrderedDict[str, MaiBotInstance]" = OrderedDict()
+        # 当前的LLM接入设置（api_key/base_url/model_name）
+        self.llm: Dict[str, Any] = {}
         
-    async def _initialize_maibot_core(self, api_key: str):
+    async def _initialize_maibot_core(self, llm: Dict[str, Any]):
         """初始化MaiBot核心系统（只需执行一次）"""
         try:
             print("正在初始化MaiBot核心系统...")
             
             # 导入并初始化MaiBot核心组件
-            from config.config import global_config
-            from common.logger import initialize_logging, get_logger
-            from common.database.database import init_database
+            from src.config.config import global_config
+            from src.common.logger import initialize_logging, get_logger
+            from src.common.database.database import init_database
             
             # 初始化日志系统（简化版，适配Android）
             try:
@@ -269,9 +650,8 @@ class MaiBotBridge:
             os.makedirs(android_data_dir, exist_ok=True)
             
             # 配置全局设置
-            global_config.llm.api_key = api_key
-            global_config.llm.model_name = "deepseek-chat"
-            global_config.llm.base_url = "https://api.deepseek.com"
+            _apply_llm_settings(llm)
+            self.llm = dict(llm)
             global_config.llm.temperature = 0.8
             global_config.llm.max_tokens = 500
             
@@ -297,7 +677,7 @@ class MaiBotBridge:
             
             # 初始化插件系统（加载内置插件，跳过不兼容的）
             try:
-                from plugin_system.core.plugin_manager import plugin_manager
+                from src.plugin_system.core.plugin_manager import plugin_manager
                 await plugin_manager.load_builtin_plugins()
                 print("✓ 插件系统初始化完成")
             except Exception as e:
@@ -312,17 +692,29 @@ class MaiBotBridge:
             traceback.print_exc()
             return False
         
-    def initialize(self, api_key: str, bot_count: int, config: Dict[str, Any] = None):
-        """初始化Bot实例（同步接口）"""
-        loop = asyncio.new_event_loop()
-        asyncio.set_event_loop(loop)
-        try:
-            return loop.run_until_complete(self._initialize_async(api_key, bot_count, config))
-        finally:
-            loop.close()
+    def initialize(self, api_key: str, bot_count: int, config: Dict[str, Any] = None,
+                   on_done: Optional[Callable[[bool], None]] = None,
+                   on_bot_ready: Optional[Callable[[str, str, str], None]] = None):
+        """初始化Bot实例（在常驻事件循环上异步执行）
+        
+        每个Bot就绪时回调on_bot_ready(bot_id, name, color)，全部结束后回调on_done(success)
+        """
+        async def run():
+            success = await self._initialize_async(api_key, bot_count, config, on_bot_ready)
+            if on_done:
+                try:
+                    on_done(success)
+                except Exception as e:
+                    print(f"初始化回调失败: {e}")
+        
+        _runtime.spawn(run())
     
-    async def _initialize_async(self, api_key: str, bot_count: int, config: Dict[str, Any] = None):
-        """异步初始化Bot实例"""
+    async def _initialize_async(self, api_key: str, bot_count: int, config: Dict[str, Any] = None,
+                                on_bot_ready: Optional[Callable[[str, str, str], None]] = None):
+        """异步初始化：只初始化MaiBot核心，Bot在第一次被选中回复时才加载
+        
+        阵容由宿主在 config["roster"] 中传入（不限人数），没有时取内置人设的前 bot_count 个。
+        """
         if self._init_lock is None:
             self._init_lock = asyncio.Lock()
             
@@ -331,60 +723,32 @@ class MaiBotBridge:
                 return True
             
             try:
+                config = config or {}
+                # 所有Bot的LLM请求共用限流参数（由设置页配置）
+                rate_limit = config.get("rate_limit")
+                if rate_limit:
+                    from src.llm_models.admission import configure_defaults
+                    configure_defaults(rate_limit.get("requests_per_second", 3.0),
+                                       rate_limit.get("max_in_flight", 4))
+                self.max_loaded_bots = max(1, int(config.get("max_loaded_bots", DEFAULT_MAX_LOADED_BOTS)))
+                llm = dict(config.get("llm") or {})
+                llm.setdefault("api_key", api_key)
+                
                 # 初始化MaiBot核心系统
-                if not await self._initialize_maibot_core(api_key):
+                if not await self._initialize_maibot_core(llm):
                     return False
                 
-                # 预定义的Bot配置
-                bot_configs = [
-                    {
-                        "name": "麦麦",
-                        "personality": "活泼可爱、充满个性的少女，喜欢用可爱的语气词",
-                        "color": "#FF6B9D"
-                    },
-                    {
-                        "name": "小智",
-                        "personality": "理性严谨的技术专家，逻辑清晰，注重细节",
-                        "color": "#4A90E2"
-                    },
-                    {
-                        "name": "诗诗",
-                        "personality": "温柔文艺的诗人，优雅含蓄，富有诗意",
-                        "color": "#9B59B6"
-                    },
-                    {
-                        "name": "阿乐",
-                        "personality": "幽默风趣的段子手，善于活跃气氛",
-                        "color": "#F39C12"
-                    },
-                    {
-                        "name": "小月",
-                        "personality": "温暖贴心的倾听者，善于理解和安慰",
-                        "color": "#E91E63"
-                    }
-                ]
+                roster = config.get("roster")
+                if not roster:
+                    roster = [dict(item, id=f"bot_{i}") for i, item in enumerate(DEFAULT_BOT_CONFIGS[:bot_count])]
                 
-                # 创建Bot实例
+                # 创建Bot实例（暂不加载），创建后即可被选中
                 self.bot_instances = []
-                for i in range(min(bot_count, len(bot_configs))):
-                    config_item = bot_configs[i]
-                    
-                    bot = MaiBotInstance(
-                        bot_id=f"bot_{i}",
-                        name=config_item["name"],
-                        personality=config_item["personality"],
-                        color=config_item["color"],
-                        api_key=api_key
-                    )
-                    
-                    # 初始化每个Bot实例
-                    if await bot.initialize():
-                        self.bot_instances.append(bot)
-                    else:
-                        print(f"Bot {bot.name} 初始化失败")
+                for item in roster:
+                    self._add_bot(item, on_bot_ready)
                 
                 self.initialized = True
-                print(f"✓ 成功初始化 {len(self.bot_instances)} 个Bot实例")
+                print(f"✓ 阵容共 {len(self.bot_instances)} 个Bot，最多同时加载 {self.max_loaded_bots} 个")
                 return True
                 
             except Exception as e:
@@ -393,10 +757,85 @@ class MaiBotBridge:
                 traceback.print_exc()
                 return False
     
-    def get_bot_list(self) -> str:
-        """获取Bot列表"""
-        if not self.initialized:
-            return json.dumps([])
+    def _add_bot(self, item: Dict[str, Any], on_bot_ready: Optional[Callable[[str, str, str], None]] = None):
+        """按阵容条目创建Bot实例（暂不加载），创建后即可被选中"""
+        bot = MaiBotInstance(
+            bot_id=item["id"],
+            name=item["name"],
+            personality=item.get("personality", ""),
+            color=item.get("color", "#4A90E2")
+        )
+        self.bot_instances.append(bot)
+        if on_bot_ready:
+            try:
+                on_bot_ready(bot.bot_id, bot.name, bot.color)
+            except Exception as e:
+                print(f"Bot就绪回调失败: {e}")
+    
+    def update_llm(self, config: Dict[str, Any]):
+        """热更新LLM接入设置和限流参数：只替换变化的部分，Bot、聊天记录和插件都保留"""
+        rate_limit = config.get("rate_limit")
+        if rate_limit:
+            from src.llm_models.admission import configure_defaults
+            configure_defaults(rate_limit.get("requests_per_second", 3.0),
+                               rate_limit.get("max_in_flight", 4))
+        llm = config.get("llm")
+        if llm and llm != self.llm:
+            _apply_llm_settings(llm)
+            self.llm = dict(llm)
+            print(f"✓ LLM设置已更新: {llm.get('base_url')} / {llm.get('model_name')}")
+    
+    def update_roster(self, config: Dict[str, Any],
+                      on_bot_ready: Optional[Callable[[str, str, str], None]] = None):
+        """热更新阵容（在常驻事件循环上异步执行）：卸载 remove 中的Bot，创建 add 中的Bot，其余Bot不受影响"""
+        _runtime.spawn(self._update_roster_async(config.get("add") or [], config.get("remove") or [],
+                                                 on_bot_ready))
+    
+    async def _update_roster_async(self, add: List[Dict[str, Any]], remove: List[str],
+                                   on_bot_ready: Optional[Callable[[str, str, str], None]]):
+        if self._init_lock is None:
+            self._init_lock = asyncio.Lock()
+        
+        start = time.perf_counter()
+        # 与初始化互斥，初始化完成前收到的变更排在它后面
+        async with self._init_lock:
+            removed = set(remove)
+            for bot in [bot for bot in self.bot_instances if bot.bot_id in removed]:
+                self._loaded.pop(bot.bot_id, None)
+                try:
+                    async with bot._load_lock:
+                        await bot.unload()
+                except Exception as e:
+                    print(f"移除{bot.name}失败: {e}")
+            self.bot_instances = [bot for bot in self.bot_instances if bot.bot_id not in removed]
+            for item in add:
+                self._add_bot(item, on_bot_ready)
+        elapsed = (time.perf_counter() - start) * 1000
+        print(f"✓ 阵容已更新：移除 {len(removed)} 个、加入 {len(add)} 个Bot，耗时 {elapsed:.0f}ms")
+    
+    async def _ensure_loaded(self, bot: "MaiBotInstance") -> bool:
+        """确保Bot已加载，并把它记为最近被选中；加载后超出上限时卸载最久未选中的空闲Bot
+        
+        被进行中的回合选中的Bot（含正在加载的）都不是空闲的，全都忙时暂时超出上限。
+        """
+        async with bot._load_lock:
+            if not bot.initialized and not await bot.initialize():
+                print(f"Bot {bot.name} 加载失败")
+                return False
+        self._loaded[bot.bot_id] = bot
+        self._loaded.move_to_end(bot.bot_id)
+        
+        for bot_id, loaded in list(self._loaded.items()):
+            if len(self._loaded) <= self.max_loaded_bots:
+                break
+            if loaded is bot or loaded.busy:
+                continue
+            del self._loaded[bot_id]
+            async with loaded._load_lock:
+                await loaded.unload()
+        return True
+    
+    def _bot_records(self) -> List[Dict[str, str]]:
         
         bot_list = []
         for bot in self.bot_instances:
@@ -405,41 +844,96 @@ class MaiBotBridge:
                 "name": bot.name,
                 "color": bot.color
             })
-        
-        return json.dumps(bot_list, ensure_ascii=False)
+        return bot_list
     
-    def send_message(self, user_message: str, user_name: str = "用户"):
-        """发送消息到所有Bot（异步触发，不等待回复）"""
-        if not self.initialized:
-            print("Bot未初始化")
+    def get_bot_list(self) -> str:
+        """获取Bot列表"""
+        return json.dumps(self._bot_records(), ensure_ascii=False)
+    
+    def get_bot_list_packed(self) -> bytes:
+        """获取Bot列表（msgpack二进制载荷）"""
+        return _pack_records(self._bot_records(), BOT_INFO_FIELDS)
+    
+    def send_message(self, user_message: str, user_name: str = "用户", turn_id: Optional[str] = None,
+                     group_context: str = "", target_ids: Optional[List[str]] = None):
+        """发送消息给本回合选中的Bot（异步触发，不等待回复），group_context 由这些Bot共用
+        
+        target_ids 为空时发给阵容中的所有Bot；未加载的Bot在这里按需加载，其余Bot保持休眠。
+        """
+        if not self.bot_instances:
+            print("没有已就绪的Bot")
             return
         
-        # 在后台线程中运行异步任务
-        def run_async_tasks():
-            loop = asyncio.new_event_loop()
-            asyncio.set_event_loop(loop)
-            try:
-                # 为每个Bot创建异步任务
-                tasks = [bot.process_message(user_message, user_name) for bot in self.bot_instances]
-                loop.run_until_complete(asyncio.gather(*tasks))
-            finally:
-                loop.close()
+        if target_ids is None:
+            targets = list(self.bot_instances)
+        else:
+            wanted = set(target_ids)
+            targets = [bot for bot in self.bot_instances if bot.bot_id in wanted]
         
-        # 在新线程中运行，避免阻塞
-        import threading
-        thread = threading.Thread(target=run_async_tasks, daemon=True)
-        thread.start()
+        # 在常驻事件循环上为每个Bot创建异步任务，不等待回复
+        _runtime.spawn(self._broadcast(targets, user_message, user_name, turn_id, group_context))
+    
+    async def _broadcast(self, targets: List["MaiBotInstance"], user_message: str, user_name: str,
+                         turn_id: Optional[str], group_context: str):
+        # 先占用所有选中的Bot，之后某个Bot加载时不会卸载同一回合中还没轮到的Bot
+        for bot in targets:
+            bot.pin_turn(turn_id)
+        tasks = [self._deliver(bot, user_message, user_name, turn_id, group_context) for bot in targets]
+        await asyncio.gather(*tasks)
+    
+    async def _deliver(self, bot: "MaiBotInstance", user_message: str, user_name: str,
+                       turn_id: Optional[str], group_context: str):
+        if not await self._ensure_loaded(bot):
+            # 加载失败的Bot本回合不回复，告诉Java端不用再等它
+            if turn_id:
+                bot.finish_turn(turn_id)
+            return
+        await bot.process_message(user_message, user_name, turn_id, group_context)
+    
+    def cancel_turn(self, turn_id: str):
+        """取消指定回合在所有Bot上的处理"""
+        for bot in self.bot_instances:
+            try:
+                bot.cancel_turn(turn_id)
+            except Exception as e:
+                print(f"取消{bot.name}的回合失败: {e}")
     
     def get_pending_messages(self) -> str:
         """获取待处理的消息（轮询方式）"""
         messages = _android_sender.get_pending_messages()
         return json.dumps(messages, ensure_ascii=False)
     
-    def clear_history(self):
-        """清空所有Bot的历史"""
-        if not self.initialized:
-            return
+    def get_pending_messages_packed(self) -> bytes:
+        """获取待处理的消息（msgpack二进制载荷）"""
+        return _pack_records(_android_sender.get_pending_messages(), RESPONSE_FIELDS)
+    
+    def trim_memory(self, sleep_idle: bool = False):
+        """系统内存紧张时释放缓存（异步执行）：各Bot释放缓存后运行 gc.collect()
         
+        sleep_idle 为 True 时另外卸载所有空闲的已加载Bot，它们下次被选中时由 _ensure_loaded 重新加载
+        """
+        _runtime.spawn(self._trim_memory_async(sleep_idle))
+    
+    async def _trim_memory_async(self, sleep_idle: bool):
+        start = time.perf_counter()
+        slept = 0
+        for bot_id, bot in list(self._loaded.items()):
+            try:
+                if sleep_idle and not bot.busy:
+                    del self._loaded[bot_id]
+                    async with bot._load_lock:
+                        await bot.unload()
+                    slept += 1
+                else:
+                    bot.release_caches()
+            except Exception as e:
+                print(f"释放{bot.name}的缓存失败: {e}")
+        collected = gc.collect()
+        elapsed = (time.perf_counter() - start) * 1000
+        print(f"✓ 内存整理完成：休眠 {slept} 个Bot，回收 {collected} 个对象，耗时 {elapsed:.0f}ms")
+    
+    def clear_history(self):
+        """清空所有已就绪Bot的历史"""
         for bot in self.bot_instances:
             try:
                 bot.clear_history()
@@ -451,24 +945,81 @@ class MaiBotBridge:
 _bridge = MaiBotBridge()
 
 
-def initialize_bots(api_key: str, bot_count: int, config_json: str = "{}") -> bool:
-    """初始化Bot实例"""
+def run_event_loop():
+    """在调用线程上运行常驻事件循环（阻塞，直到 stop_event_loop 被调用）"""
+    _runtime.run_forever()
+
+
+def stop_event_loop():
+    """停止常驻事件循环"""
+    _runtime.stop()
+
+
+def submit_job(job):
+    """提交Java任务到事件循环线程执行"""
+    _runtime.submit_job(job)
+
+
+def initialize_bots(api_key: str, bot_count: int, listener=None, config_json: str = "{}") -> bool:
+    """初始化Bot实例（异步，每个Bot就绪时调用 listener.onBotReady，全部结束后调用 listener.onInitialized(success)）"""
     try:
         config = json.loads(config_json) if config_json else {}
-        return _bridge.initialize(api_key, bot_count, config)
+        on_done = listener.onInitialized if listener is not None else None
+        on_bot_ready = listener.onBotReady if listener is not None else None
+        _bridge.initialize(api_key, bot_count, config, on_done, on_bot_ready)
+        return True
     except Exception as e:
         print(f"初始化失败: {e}")
         return False
 
 
+def update_llm(config_json: str = "{}"):
+    """热更新LLM接入设置（config 中的 llm）和限流参数（rate_limit），在设置页保存后调用"""
+    _bridge.update_llm(json.loads(config_json) if config_json else {})
+
+
+def update_roster(config_json: str = "{}", listener=None):
+    """热更新阵容（异步）：config 中 remove 为要移除的Bot ID，add 为要加入的Bot，每个新Bot就绪时调用 listener.onBotReady"""
+    config = json.loads(config_json) if config_json else {}
+    on_bot_ready = listener.onBotReady if listener is not None else None
+    _bridge.update_roster(config, on_bot_ready)
+
+
 def get_bot_list() -> str:
     """获取Bot列表"""
     return _bridge.get_bot_list()
 
 
-def send_message(user_message: str, user_name: str = "用户"):
-    """发送消息（异步触发）"""
-    _bridge.send_message(user_message, user_name)
+def send_message(user_message: str, user_name: str = "用户", turn_id: Optional[str] = None,
+                 group_context: str = "", target_ids=None):
+    """发送消息（异步触发），turn_id 会随该回合的所有回复一起返回；group_context 是Java端生成的群聊上下文
+    
+    target_ids 是本回合选中的Bot ID（Java列表或Python列表），为None时发给所有Bot
+    """
+    targets = [str(bot_id) for bot_id in target_ids] if target_ids is not None else None
+    _bridge.send_message(user_message, user_name, turn_id, group_context, targets)
+
+
+def cancel_turn(turn_id: str):
+    """取消回合：中止各Bot的处理任务和进行中的LLM请求"""
+    _bridge.cancel_turn(turn_id)
+
+
+def set_reply_listener(listener):
+    """注册Java回复监听器（推送模式）
+    
+    Args:
+        listener: 实现了 PythonBotBackend.ReplyListener 的Java对象，传入None则退回轮询模式
+    """
+    if listener is None:
+        _android_sender.set_callback(None)
+    else:
+        _android_sender.set_callback(listener.onReply, listener.onDelta, listener.onTurnDone)
+
+
+def get_bot_list_packed() -> bytes:
+    """获取Bot列表（msgpack二进制载荷）"""
+    return _bridge.get_bot_list_packed()
 
 
 def get_pending_messages() -> str:
@@ -476,6 +1027,16 @@ def get_pending_messages() -> str:
     return _bridge.get_pending_messages()
 
 
+def get_pending_messages_packed() -> bytes:
+    """获取待处理的消息（msgpack二进制载荷）"""
+    return _bridge.get_pending_messages_packed()
+
+
 def clear_history():
     """清空历史"""
     _bridge.clear_history()
+
+
+def trim_memory(sleep_idle: bool = False):
+    """系统内存紧张时释放缓存，sleep_idle 为 True 时让空闲的Bot休眠"""
+    _bridge.trim_memory(bool(sleep_idle))
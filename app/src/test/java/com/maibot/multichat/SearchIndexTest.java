@@ -0,0 +1,96 @@
+package com.maibot.multichat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SearchIndex 的候选集合：原文中包含查询字串的消息都要在候选中（单字、单词的一部分），ID乱序写入时按ID排列
+ */
+public class SearchIndexTest {
+    private static final long TIMESTAMP = 1_700_000_000_000L;
+
+    private SearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SearchIndex();
+        index.add(1, "今天天气真不错", 0, TIMESTAMP);
+        index.add(2, "猫咪又在捣乱", 1, TIMESTAMP + 1);
+        index.add(3, "deepseek 的回复好快", 0, TIMESTAMP + 2);
+        index.add(4, "Python 写起来很舒服", 1, TIMESTAMP + 3);
+    }
+
+    private long[] search(String text) {
+        SearchIndex.Query query = new SearchIndex.Query();
+        query.text = text;
+        return index.search(query, 100);
+    }
+
+    @Test
+    public void singleChineseCharacterMatchesInsideLongerRun() {
+        assertArrayEquals(new long[]{2}, search("猫"));
+        assertArrayEquals(new long[]{1}, search("气"));
+    }
+
+    @Test
+    public void chineseRunMatchesByBigrams() {
+        assertArrayEquals(new long[]{1}, search("天气"));
+        assertArrayEquals(new long[]{2}, search("又在捣乱"));
+        assertArrayEquals(new long[0], search("火星"));
+    }
+
+    @Test
+    public void partialWordMatches() {
+        assertArrayEquals(new long[]{3}, search("deep"));
+        assertArrayEquals(new long[]{3}, search("seek"));
+        assertArrayEquals(new long[]{4}, search("pyth"));
+        assertArrayEquals(new long[]{4}, search("THON"));
+        assertArrayEquals(new long[0], search("deeq"));
+    }
+
+    @Test
+    public void mixedQueryNeedsEveryPart() {
+        assertArrayEquals(new long[]{3}, search("seek 回复"));
+        assertArrayEquals(new long[0], search("seek 猫"));
+    }
+
+    @Test
+    public void shortWordsAreNotIndexable() {
+        assertFalse(SearchIndex.isIndexable("de"));
+        assertFalse(SearchIndex.isIndexable("a 1 ?"));
+        assertTrue(SearchIndex.isIndexable("猫"));
+        assertTrue(SearchIndex.isIndexable("dee"));
+    }
+
+    @Test
+    public void outOfOrderIdsAreReturnedNewestFirst() {
+        // 流式回复完成后才保存，ID早于之后已写入的消息
+        index.add(10, "猫咪在睡觉", 0, TIMESTAMP + 10);
+        index.add(7, "猫咪醒了", 1, TIMESTAMP + 7);
+        index.add(12, "猫粮吃完了", 0, TIMESTAMP + 12);
+
+        assertArrayEquals(new long[]{12, 10, 7, 2}, search("猫"));
+    }
+
+    @Test
+    public void overwrittenMessageIsReturnedOnce() {
+        index.add(2, "猫咪又在捣乱了", 1, TIMESTAMP + 1);
+
+        assertArrayEquals(new long[]{2}, search("猫咪"));
+    }
+
+    @Test
+    public void filtersBySenderAndTime() {
+        SearchIndex.Query query = new SearchIndex.Query();
+        query.text = "";
+        query.senders = new int[]{1};
+        assertArrayEquals(new long[]{4, 2}, index.search(query, 100));
+
+        query.fromMillis = TIMESTAMP + 2;
+        assertArrayEquals(new long[]{4}, index.search(query, 100));
+    }
+}
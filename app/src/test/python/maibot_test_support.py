@@ -0,0 +1,132 @@
+"""
+在主机上运行Python单元测试的支持代码
+
+MaiBot源码依赖的部分第三方库（openai、pydantic等）在主机上不一定安装，日志、配置和数据库模块又需要
+完整的运行时环境，这里换成只保留被测代码用到的名字的替身模块。测试模块在导入被测代码之前调用 install()。
+
+运行：python3 -m unittest discover -s app/src/test/python
+"""
+
+import importlib.util
+import logging
+import os
+import sys
+import types
+import typing
+
+PYTHON_ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), "..", "..", "main", "python"))
+MAIBOT_ROOT = os.path.join(PYTHON_ROOT, "maibot")
+
+
+class FakeModelConfig:
+    """替代 src.config.config.model_config，测试直接设置提供商和模型列表"""
+
+    def __init__(self):
+        self.api_providers = []
+        self.models = []
+
+    def get_model_info(self, name):
+        for model in self.models:
+            if model.name == name:
+                return model
+        raise KeyError(name)
+
+    def get_provider(self, name):
+        for provider in self.api_providers:
+            if provider.name == name:
+                return provider
+        raise KeyError(name)
+
+
+model_config = FakeModelConfig()
+global_config = types.SimpleNamespace(
+    llm=types.SimpleNamespace(api_key="", model_name="", base_url=""),
+    bot=types.SimpleNamespace(nickname=""),
+)
+
+_installed = False
+
+
+def stub_module(name, **attrs):
+    """登记替身模块，替换同名的真实模块"""
+    module = types.ModuleType(name)
+    module.__dict__.update(attrs)
+    sys.modules[name] = module
+    return module
+
+
+def stub_package(name, **attrs):
+    """登记替身包，之后可在其下登记替身子模块"""
+    module = stub_module(name, **attrs)
+    module.__path__ = []
+    return module
+
+
+def _missing(name):
+    return name not in sys.modules and importlib.util.find_spec(name) is None
+
+
+def _stub_third_party():
+    """主机上缺少的第三方库换成替身，已安装的保持不变"""
+    if _missing("rich"):
+        stub_package("rich")
+        stub_module("rich.traceback", install=lambda **kwargs: None)
+    if _missing("PIL"):
+        stub_package("PIL")
+        stub_module("PIL.Image", Image=type("Image", (), {}))
+        sys.modules["PIL"].Image = sys.modules["PIL.Image"]
+    if _missing("pydantic"):
+        stub_module("pydantic", BaseModel=type("BaseModel", (), {}))
+    if _missing("typing_extensions"):
+        stub_module("typing_extensions", TypedDict=typing.TypedDict, Required=typing.Required)
+    if _missing("json_repair"):
+        stub_module("json_repair", repair_json=lambda text, **kwargs: text)
+    if _missing("msgpack"):
+        stub_module("msgpack", packb=lambda *args, **kwargs: b"", unpackb=lambda *args, **kwargs: None)
+    if _missing("openai"):
+        class APIStatusError(Exception):
+            def __init__(self, message="", response=None, body=None):
+                super().__init__(message)
+                self.response = response
+                self.status_code = getattr(response, "status_code", 0)
+
+        stub_package(
+            "openai",
+            AsyncOpenAI=type("AsyncOpenAI", (), {"__init__": lambda self, **kwargs: None}),
+            APIConnectionError=type("APIConnectionError", (Exception,), {}),
+            APIStatusError=APIStatusError,
+            NOT_GIVEN=object(),
+            AsyncStream=typing.AsyncIterator,
+        )
+        stub_package("openai.types")
+        stub_module(
+            "openai.types.chat",
+            ChatCompletion=object,
+            ChatCompletionChunk=object,
+            ChatCompletionMessageParam=dict,
+            ChatCompletionToolParam=dict,
+        )
+        stub_module("openai.types.chat.chat_completion_chunk", ChoiceDelta=object)
+
+
+def _stub_runtime():
+    """日志、配置和数据库换成替身，不读取配置文件也不创建数据库"""
+    stub_module("src.common.logger", get_logger=logging.getLogger)
+    stub_module("src.config.config", model_config=model_config, global_config=global_config)
+    stub_module("src.common.database.database", db=types.SimpleNamespace(create_tables=lambda models, **kwargs: None))
+    stub_module("src.common.database.database_model", LLMUsage=type("LLMUsage", (), {}))
+
+
+def install():
+    """登记 src 包并安装替身模块，可重复调用"""
+    global _installed
+    if _installed:
+        return
+    _installed = True
+    if PYTHON_ROOT not in sys.path:
+        sys.path.insert(0, PYTHON_ROOT)
+    if "src" not in sys.modules:
+        # 与 maibot_bridge 相同：MaiBot源码以 src 包导入自身（from src.xxx import ...）
+        stub_package("src").__path__ = [MAIBOT_ROOT]
+    _stub_third_party()
+    _stub_runtime()
@@ -0,0 +1,97 @@
+"""
+按需加载与卸载：同一回合选中的Bot在报告完成之前都不会被卸载，不能回复的Bot也要报告完成
+
+加载、卸载和消息处理换成替身，只验证桥接层的调度。
+"""
+
+import asyncio
+import unittest
+
+import maibot_test_support
+
+maibot_test_support.install()
+
+import maibot_bridge  # noqa: E402
+
+
+class FakeBot(maibot_bridge.MaiBotInstance):
+    """加载、卸载时让出事件循环，模拟真实加载期间其它Bot穿插执行"""
+
+    def __init__(self, bot_id, log):
+        super().__init__(bot_id, bot_id, "", "#4A90E2")
+        self.log = log
+
+    async def initialize(self):
+        await asyncio.sleep(0)
+        self.initialized = True
+        return True
+
+    async def unload(self):
+        await asyncio.sleep(0)
+        self.initialized = False
+        self.log.append(("unload", self.bot_id))
+
+    async def process_message(self, user_message, user_name="用户", turn_id=None, group_context=""):
+        self.log.append(("process", self.bot_id, self.initialized))
+
+
+class BridgeLoadingTest(unittest.TestCase):
+    def setUp(self):
+        self.turns_done = []
+        maibot_bridge._android_sender.set_callback(
+            lambda *args: None,
+            turn_done_callback=lambda bot_id, turn_id: self.turns_done.append((bot_id, turn_id)),
+        )
+        self.log = []
+        self.bridge = maibot_bridge.MaiBotBridge()
+        self.bridge.max_loaded_bots = 1
+
+    def tearDown(self):
+        maibot_bridge._android_sender.set_callback(None)
+
+    def _broadcast(self, bots, turn_id):
+        asyncio.run(self.bridge._broadcast(bots, "你好", "用户", turn_id, ""))
+
+    def test_bots_of_one_turn_do_not_evict_each_other(self):
+        bots = [FakeBot(f"bot_{i}", self.log) for i in range(3)]
+
+        self._broadcast(bots, "1")
+
+        self.assertEqual(sorted(self.log), [("process", bot.bot_id, True) for bot in bots])
+        self.assertTrue(all(bot.busy for bot in bots))
+
+    def test_finished_bots_can_be_evicted(self):
+        bots = [FakeBot(f"bot_{i}", self.log) for i in range(3)]
+        self._broadcast(bots[:2], "1")
+        for bot in bots[:2]:
+            bot.finish_turn("1")
+        self.log.clear()
+
+        self._broadcast(bots[2:], "2")
+
+        self.assertEqual(sorted(entry for entry in self.log if entry[0] == "unload"),
+                         [("unload", "bot_0"), ("unload", "bot_1")])
+        self.assertEqual(list(self.bridge._loaded), ["bot_2"])
+
+    def test_later_turn_done_releases_earlier_turns(self):
+        bot = FakeBot("bot_0", self.log)
+        bot.pin_turn("1")
+        bot.pin_turn("2")
+
+        bot.finish_turn("2")
+
+        self.assertFalse(bot.busy)
+        self.assertEqual(self.turns_done, [("bot_0", "2")])
+
+    def test_unloaded_bot_reports_turn_done(self):
+        bot = maibot_bridge.MaiBotInstance("bot_9", "小月", "", "#E91E63")
+        bot.pin_turn("3")
+
+        asyncio.run(bot.process_message("你好", turn_id="3"))
+
+        self.assertEqual(self.turns_done, [("bot_9", "3")])
+        self.assertFalse(bot.busy)
+
+
+if __name__ == "__main__":
+    unittest.main()
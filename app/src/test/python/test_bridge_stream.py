@@ -0,0 +1,157 @@
+"""
+桥接层流式回复：桥接层为Bot设置的流式监听器和回合作用域必须与MaiBot读取的是同一个 ContextVar，
+openai_client 收到的增量文本才能经 AndroidMessageSender 推送到Java端
+
+聊天循环换成替身：创建时继承 initialize() 设置的上下文，发起一次流式回复请求。
+"""
+
+import asyncio
+import types
+import unittest
+
+import maibot_test_support
+from maibot_test_support import stub_module, stub_package
+
+maibot_test_support.install()
+
+
+class FakeStream:
+    """按块返回增量文本的流式响应"""
+
+    def __init__(self, texts):
+        self._chunks = [
+            types.SimpleNamespace(
+                choices=[types.SimpleNamespace(delta=types.SimpleNamespace(content=text, tool_calls=None),
+                                               finish_reason=None)],
+                model="fake-model",
+                usage=None,
+            )
+            for text in texts
+        ]
+
+    def __aiter__(self):
+        return self._iterate()
+
+    async def _iterate(self):
+        for chunk in self._chunks:
+            yield chunk
+
+    async def close(self):
+        pass
+
+
+class FakeOpenAI:
+    def __init__(self, texts):
+        async def create(**kwargs):
+            return FakeStream(texts)
+
+        self.chat = types.SimpleNamespace(completions=types.SimpleNamespace(create=create))
+
+
+class FakeHeartFCChat:
+    """聊天循环替身：创建时启动回复任务，任务继承创建时的上下文"""
+
+    def __init__(self, reply):
+        self.history_loop = []
+        self.observed_scope = None
+        self.reply_task = asyncio.get_running_loop().create_task(self._reply(reply))
+
+    async def _reply(self, reply):
+        from src.llm_models.turn_scope import turn_scope
+
+        self.observed_scope = turn_scope.get()
+        return await reply()
+
+    async def _observe(self, *args, **kwargs):
+        pass
+
+
+class FakeHeartflow:
+    def __init__(self):
+        self.reply = None
+
+    async def get_or_create_heartflow_chat(self, stream_id):
+        return FakeHeartFCChat(self.reply)
+
+
+class FakeChatManager:
+    async def get_or_create_stream(self, platform, user_info, group_info):
+        return types.SimpleNamespace(stream_id=f"stream_{group_info.group_id}")
+
+
+class FakeChatBot:
+    async def _ensure_started(self):
+        pass
+
+
+class FakeUniMessageSender:
+    async def send_message(self, *args, **kwargs):
+        return True
+
+
+heartflow = FakeHeartflow()
+stub_package("src.chat")
+stub_package("src.chat.message_receive")
+stub_package("src.chat.heart_flow")
+stub_module("src.chat.message_receive.bot", ChatBot=FakeChatBot)
+stub_module("src.chat.message_receive.chat_stream", get_chat_manager=FakeChatManager)
+stub_module("src.chat.message_receive.uni_message_sender", UniMessageSender=FakeUniMessageSender)
+stub_module("src.chat.heart_flow.heartflow", heartflow=heartflow)
+stub_module("src.common.data_models.info_data_model", UserInfo=types.SimpleNamespace, GroupInfo=types.SimpleNamespace)
+
+import maibot_bridge  # noqa: E402
+from src.config.api_ada_configs import APIProvider, ModelInfo  # noqa: E402
+from src.llm_models.model_client.openai_client import OpenaiClient  # noqa: E402
+
+
+class BridgeStreamTest(unittest.TestCase):
+    def setUp(self):
+        self.deltas = []
+        maibot_bridge._android_sender.set_callback(
+            lambda *args: None,
+            delta_callback=lambda *args: self.deltas.append(args),
+        )
+        provider = APIProvider(name="fake", base_url="http://fake.invalid", api_key="k")
+        model_info = ModelInfo(model_identifier="fake-model", name="fake-model", api_provider="fake")
+
+        async def reply():
+            client = OpenaiClient(provider)
+            client.client = FakeOpenAI(["你", "好", "呀"])
+            return await client.get_response(model_info, [])
+
+        heartflow.reply = reply
+
+    def tearDown(self):
+        maibot_bridge._android_sender.set_callback(None)
+        maibot_bridge._bots_by_stream.clear()
+
+    def test_openai_delta_reaches_java_listener(self):
+        bot = maibot_bridge.MaiBotInstance("bot_0", "麦麦", "", "#FF6B9D")
+
+        async def run():
+            self.assertTrue(await bot.initialize())
+            return await bot.heartflow_chat.reply_task
+
+        response = asyncio.run(run())
+
+        self.assertEqual(response.content, "你好呀")
+        # Java端按 (bot_id, bot_name, color, reply_id, turn_id, text, reset) 收到每一段增量
+        self.assertEqual([delta[5] for delta in self.deltas], ["你", "好", "呀"])
+        self.assertEqual({delta[0] for delta in self.deltas}, {"bot_0"})
+        self.assertEqual(len({delta[3] for delta in self.deltas}), 1)
+        self.assertIsNotNone(self.deltas[0][3])
+
+    def test_chat_loop_sees_bot_turn_scope(self):
+        bot = maibot_bridge.MaiBotInstance("bot_1", "小智", "", "#4A90E2")
+
+        async def run():
+            self.assertTrue(await bot.initialize())
+            await bot.heartflow_chat.reply_task
+
+        asyncio.run(run())
+
+        self.assertIs(bot.heartflow_chat.observed_scope, bot.turn_scope)
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -0,0 +1,92 @@
+"""
+回合取消：所属回合已取消的请求直接放弃，不发出请求，也不切换到其它模型
+"""
+
+import asyncio
+import unittest
+
+import maibot_test_support
+
+maibot_test_support.install()
+
+from src.config.api_ada_configs import APIProvider, ModelInfo, TaskConfig  # noqa: E402
+from src.llm_models.exceptions import ReqAbortException  # noqa: E402
+from src.llm_models.model_client.base_client import APIResponse, BaseClient, client_registry  # noqa: E402
+from src.llm_models.turn_scope import TurnScope, turn_scope  # noqa: E402
+from src.llm_models.utils_model import LLMRequest, RequestType  # noqa: E402
+
+
+@client_registry.register_client_class("fake")
+class FakeClient(BaseClient):
+    """记录收到请求的模型，直接返回固定回复"""
+
+    requested = []
+
+    async def get_response(self, model_info, message_list, **kwargs):
+        FakeClient.requested.append(model_info.name)
+        return APIResponse(content="好的")
+
+    async def get_embedding(self, model_info, embedding_input, extra_params=None):
+        raise NotImplementedError
+
+    async def get_audio_transcriptions(self, model_info, audio_base64, max_tokens=None, extra_params=None):
+        raise NotImplementedError
+
+    def get_support_image_formats(self):
+        return []
+
+
+class TurnCancelTest(unittest.TestCase):
+    MODELS = ("m1", "m2")
+
+    def setUp(self):
+        FakeClient.requested = []
+        config = maibot_test_support.model_config
+        config.api_providers = [
+            APIProvider(name="fake", base_url="http://fake.invalid", api_key="k", client_type="fake", retry_interval=0)
+        ]
+        config.models = [ModelInfo(model_identifier=name, name=name, api_provider="fake") for name in self.MODELS]
+        client_registry.client_instance_cache.clear()
+
+        self.request = LLMRequest(TaskConfig(model_list=list(self.MODELS)), request_type="replyer")
+        self.selected = []
+        select_model = self.request._select_model
+
+        def record_selection(exclude_models=None):
+            selection = select_model(exclude_models)
+            self.selected.append(selection[0].name)
+            return selection
+
+        self.request._select_model = record_selection
+
+    def _request_in_turn(self, cancel: bool):
+        async def run():
+            scope = TurnScope("bot")
+            scope.begin("t1")
+            if cancel:
+                scope.cancel("t1")
+            token = turn_scope.set(scope)
+            try:
+                return await self.request._execute_request(RequestType.RESPONSE, message_factory=lambda client: [])
+            finally:
+                turn_scope.reset(token)
+
+        return asyncio.run(run())
+
+    def test_active_turn_reaches_model(self):
+        response, model_info = self._request_in_turn(cancel=False)
+
+        self.assertEqual(response.content, "好的")
+        self.assertEqual(FakeClient.requested, ["m1"])
+
+    def test_cancelled_turn_aborts_without_fallback(self):
+        with self.assertRaises(ReqAbortException):
+            self._request_in_turn(cancel=True)
+
+        # 只选了第一个模型就放弃，没有切换到备用模型，也没有发出请求
+        self.assertEqual(self.selected, ["m1"])
+        self.assertEqual(FakeClient.requested, [])
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -0,0 +1,43 @@
+"""
+回合上下文：同一个Bot有两个回合在进行时，聊天循环周期按开始时记下的回合取群聊上下文和中断信号量
+"""
+
+import asyncio
+import unittest
+
+import maibot_test_support
+
+maibot_test_support.install()
+
+from src.llm_models.turn_scope import TurnScope, cycle_turn  # noqa: E402
+
+
+class TurnContextTest(unittest.TestCase):
+    def test_cycle_keeps_its_turn_after_next_begin(self):
+        async def run():
+            scope = TurnScope("bot")
+            scope.begin("1", "用户：早上好")
+            token = cycle_turn.set(scope.turn_id)
+            try:
+                # 周期进行中，下一条消息开始了新的回合
+                scope.begin("2", "用户：早上好\n麦麦：早呀\n用户：今天吃什么")
+                self.assertEqual(scope.group_context(), "用户：早上好")
+                scope.cancel("2")
+                self.assertFalse(scope.interrupt_flag().is_set())
+            finally:
+                cycle_turn.reset(token)
+            # 周期之外取最近开始的回合
+            self.assertEqual(scope.group_context(), "用户：早上好\n麦麦：早呀\n用户：今天吃什么")
+            self.assertTrue(scope.interrupt_flag().is_set())
+
+        asyncio.run(run())
+
+    def test_no_context_before_first_turn(self):
+        scope = TurnScope("bot")
+
+        self.assertEqual(scope.group_context(), "")
+        self.assertIsNone(scope.interrupt_flag())
+
+
+if __name__ == "__main__":
+    unittest.main()
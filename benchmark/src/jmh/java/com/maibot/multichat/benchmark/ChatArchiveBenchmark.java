@@ -0,0 +1,98 @@
+package com.maibot.multichat.benchmark;
+
+import com.maibot.multichat.ChatArchive;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 聊天记录存档：messageCount 条消息写入临时文件、再完整读回一遍
+ *
+ * 只测存档编解码与文件IO，不含数据库读写。消息内容与 SearchIndexBenchmark 一样由常见短语拼接，
+ * 每次写入复用同一组字符串，结果中的分配主要来自读取时解码出的字符串。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChatArchiveBenchmark {
+    private static final String[] PHRASES = {
+            "今天天气真不错", "大家都在做什么呢", "我刚刚看完一本书", "晚饭吃什么好", "周末一起去爬山吧",
+            "这个问题有点难", "哈哈哈笑死我了", "最近在学吉他", "明天要早起上班", "猫咪又在捣乱"
+    };
+    private static final String[] SENDERS = {"我", "麦麦", "小智", "诗诗", "阿乐", "小月"};
+    private static final String[] COLORS = {"#000000", "#FF6B9D", "#4A90E2", "#9B59B6", "#F39C12", "#E91E63"};
+    private static final int DISTINCT_CONTENTS = 1024;
+
+    @Param({"10000", "100000"})
+    public int messageCount;
+
+    private String[] contents;
+    private File writeFile;
+    private File readFile;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        contents = new String[DISTINCT_CONTENTS];
+        for (int i = 0; i < contents.length; i++) {
+            StringBuilder text = new StringBuilder();
+            int phrases = 1 + random.nextInt(4);
+            for (int j = 0; j < phrases; j++) {
+                text.append(PHRASES[random.nextInt(PHRASES.length)]).append('，');
+            }
+            contents[i] = text.toString();
+        }
+
+        writeFile = File.createTempFile("archive_write", ChatArchive.FILE_EXTENSION);
+        readFile = File.createTempFile("archive_read", ChatArchive.FILE_EXTENSION);
+        writeArchive(readFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        writeFile.delete();
+        readFile.delete();
+    }
+
+    private long writeArchive(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try (ChatArchive.Writer writer = new ChatArchive.Writer(channel)) {
+            for (int i = 0; i < messageCount; i++) {
+                int sender = i % SENDERS.length;
+                writer.write(1_700_000_000_000_000L + i, contents[i % DISTINCT_CONTENTS],
+                        SENDERS[sender], sender == 0, COLORS[sender], 1_700_000_000_000L + i * 1000L);
+            }
+            return writer.count();
+        }
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return writeArchive(writeFile);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long checksum = 0;
+        try (ChatArchive.Reader reader = new ChatArchive.Reader(
+                FileChannel.open(readFile.toPath(), StandardOpenOption.READ))) {
+            while (reader.next()) {
+                checksum += reader.id + reader.content.length();
+            }
+        }
+        return checksum;
+    }
+}
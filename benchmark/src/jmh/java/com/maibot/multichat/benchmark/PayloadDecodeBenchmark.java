@@ -0,0 +1,86 @@
+package com.maibot.multichat.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.maibot.multichat.BotPayloadCodec;
+import com.maibot.multichat.BotResponse;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 回复批次解码：原有的 JSON字符串 + Gson TypeToken 路径 对比 msgpack 直接解码
+ *
+ * 两条路径的载荷都按 maibot_bridge.py 的实际输出格式构造。
+ * JSON路径从字符串开始计时，对应 PyObject.toString() 之后的开销；
+ * msgpack路径从字节数组开始计时，对应 PyObject.toJava(byte[].class) 之后的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PayloadDecodeBenchmark {
+    private static final String[] NAMES = {"麦麦", "小智", "诗诗", "阿乐", "小月"};
+    private static final String[] COLORS = {"#FF6B9D", "#4A90E2", "#9B59B6", "#F39C12", "#E91E63"};
+
+    @Param({"1", "10", "100"})
+    public int batchSize;
+
+    private final Gson gson = new Gson();
+    private String json;
+    private byte[] packed;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Map<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            Map<String, String> record = new LinkedHashMap<>();
+            record.put("bot_id", "bot_" + (i % NAMES.length));
+            record.put("bot_name", NAMES[i % NAMES.length]);
+            record.put("color", COLORS[i % COLORS.length]);
+            record.put("content", "今天天气真不错呀，大家都在做什么呢？我刚刚看完一本书，想和你们分享一下～ #" + i);
+            record.put("reply_id", String.valueOf(1_700_000_000_000_000L + i));
+            record.put("turn_id", "1700000000000001");
+            records.add(record);
+        }
+
+        json = gson.toJson(records);
+
+        // 与 maibot_bridge._pack_records 相同的布局：每条记录按 RESPONSE_FIELDS 的顺序排列
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(records.size());
+        for (Map<String, String> record : records) {
+            packer.packArrayHeader(record.size());
+            for (String value : record.values()) {
+                packer.packString(value);
+            }
+        }
+        packer.close();
+        packed = packer.toByteArray();
+    }
+
+    @Benchmark
+    public List<BotResponse> gsonTypeToken() {
+        // 与原轮询代码一致：每次都新建匿名TypeToken
+        Type listType = new TypeToken<List<BotResponse>>(){}.getType();
+        return gson.fromJson(json, listType);
+    }
+
+    @Benchmark
+    public List<BotResponse> msgpackCodec() throws IOException {
+        return BotPayloadCodec.decodeResponses(packed);
+    }
+}
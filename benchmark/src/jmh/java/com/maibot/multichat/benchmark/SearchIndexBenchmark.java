@@ -0,0 +1,100 @@
+package com.maibot.multichat.benchmark;
+
+import com.maibot.multichat.SearchIndex;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 聊天记录检索：在 messageCount 条合成的中文群聊消息上查询候选
+ *
+ * 消息由常见短语随机拼接而成，6个发送者轮流发言，时间跨度约100天。
+ * 常见词查询命中很多，测的是收集到 limit 条就停止的路径；罕见词查询测的是倒排表求交集的路径；
+ * 过滤查询测的是命中很多、但大部分被发送者或时间条件排除的路径。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchIndexBenchmark {
+    private static final String[] PHRASES = {
+            "今天天气真不错", "大家都在做什么呢", "我刚刚看完一本书", "晚饭吃什么好", "周末一起去爬山吧",
+            "这个问题有点难", "哈哈哈笑死我了", "最近在学吉他", "明天要早起上班", "猫咪又在捣乱",
+            "推荐一部电影给你们", "咖啡喝多了睡不着", "下雨了记得带伞", "期末考试终于结束了", "有人玩原神吗",
+            "python 写起来很舒服", "deepseek 的回复好快", "刚买了新耳机", "地铁上人好多", "想去海边看日落"
+    };
+    private static final String RARE_PHRASE = "量子纠缠的猫";
+    private static final int SENDERS = 6;
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final long STEP_MILLIS = 90_000L; // 10万条约跨100天
+    private static final int LIMIT = 2000;
+
+    @Param({"10000", "100000"})
+    public int messageCount;
+
+    private SearchIndex index;
+    private SearchIndex.Query commonQuery;
+    private SearchIndex.Query rareQuery;
+    private SearchIndex.Query filteredQuery;
+    private SearchIndex.Query missingQuery;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new SearchIndex();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < messageCount; i++) {
+            text.setLength(0);
+            int phrases = 1 + random.nextInt(3);
+            for (int j = 0; j < phrases; j++) {
+                text.append(PHRASES[random.nextInt(PHRASES.length)]).append('，');
+            }
+            if (random.nextInt(1000) == 0) {
+                text.append(RARE_PHRASE);
+            }
+            index.add(i + 1, text.toString(), i % SENDERS, START_MILLIS + i * STEP_MILLIS);
+        }
+
+        commonQuery = query("天气");
+        rareQuery = query("量子纠缠");
+        missingQuery = query("火星移民");
+
+        // 一个发送者、最早的十分之一时间段：常见词的大部分命中被过滤掉
+        filteredQuery = query("天气");
+        filteredQuery.senders = new int[]{3};
+        filteredQuery.fromMillis = START_MILLIS;
+        filteredQuery.toMillis = START_MILLIS + (messageCount / 10) * STEP_MILLIS;
+    }
+
+    private static SearchIndex.Query query(String text) {
+        SearchIndex.Query query = new SearchIndex.Query();
+        query.text = text;
+        return query;
+    }
+
+    @Benchmark
+    public long[] commonTerm() {
+        return index.search(commonQuery, LIMIT);
+    }
+
+    @Benchmark
+    public long[] rareTerm() {
+        return index.search(rareQuery, LIMIT);
+    }
+
+    @Benchmark
+    public long[] senderAndTimeFilter() {
+        return index.search(filteredQuery, LIMIT);
+    }
+
+    @Benchmark
+    public long[] missingTerm() {
+        return index.search(missingQuery, LIMIT);
+    }
+}